@@ -0,0 +1,104 @@
+package benchmarks;
+
+import io.InputOperations;
+
+import travel.SingleTravel;
+import travel.TravelType;
+
+import users.RegisteredUser;
+import users.UserType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing the flight and client files that administrators upload.
+ * The files are generated once and read from the page cache afterwards, so
+ * this measures parsing rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBenchmark {
+  /**
+   * The amount of lines in each file.
+   */
+  @Param({ "1000", "10000" })
+  public int lines;
+
+  /**
+   * The generated flight file.
+   */
+  private Path flights;
+  /**
+   * The generated client file.
+   */
+  private Path clients;
+
+  /**
+   * Generates the files.
+   *
+   * @throws IOException
+   *           if a file could not be written
+   */
+  @Setup
+  public void setUp() throws IOException {
+    flights = Files.createTempFile("flights", ".txt");
+    clients = Files.createTempFile("clients", ".txt");
+    // 100 cities with 10 departures a day
+    NetworkGenerator.writeFlights(NetworkGenerator.generate(NetworkGenerator.Shape.MESH, 100,
+        10, Math.max(1, lines / 1000), 42), flights);
+    NetworkGenerator.writeClients(lines, clients);
+  }
+
+  /**
+   * Deletes the files.
+   *
+   * @throws IOException
+   *           if a file could not be deleted
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(flights);
+    Files.deleteIfExists(clients);
+  }
+
+  /**
+   * Parses the flight file.
+   *
+   * @return the flights parsed
+   */
+  @Benchmark
+  public Set<SingleTravel> parseFlights() {
+    return InputOperations.parseData(flights.toString(), TravelType.Flight);
+  }
+
+  /**
+   * Parses the client file.
+   *
+   * @return the clients parsed
+   */
+  @Benchmark
+  public Set<RegisteredUser> parseClients() {
+    return InputOperations.parseData(clients.toString(), UserType.Client);
+  }
+}
@@ -0,0 +1,181 @@
+package benchmarks;
+
+import travel.Flight;
+import travel.SingleTravel;
+import travel.TravelType;
+
+import util.Constants;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic travel networks and client lists for the benchmarks. The
+ * same seed always generates the same network.
+ */
+public final class NetworkGenerator {
+  /**
+   * The first day of every generated network.
+   */
+  public static final String FIRST_DAY = "2016-10-01";
+
+  /**
+   * The shapes of network that can be generated.
+   */
+  public enum Shape {
+    /**
+     * A few hub cities connected to each other, with every other city only
+     * connected to the hubs. Most itineraries change at a hub.
+     */
+    HUB_AND_SPOKE,
+    /**
+     * Every city connected to random other cities.
+     */
+    MESH
+  }
+
+  /**
+   * Default empty constructor.
+   */
+  private NetworkGenerator() {
+  }
+
+  /**
+   * Gets the name of a generated city.
+   *
+   * @param index
+   *          the number of the city
+   * @return the name of the city
+   */
+  public static String city(int index) {
+    return "City" + index;
+  }
+
+  /**
+   * Gets the amount of hubs of a hub-and-spoke network.
+   *
+   * @param cities
+   *          the amount of cities in the network
+   * @return the amount of hubs; the first cities are the hubs
+   */
+  public static int hubs(int cities) {
+    return Math.max(1, cities / 10);
+  }
+
+  /**
+   * Generates the flights of a network. Each city has a number of departures
+   * spread over each day, lasting one to four hours.
+   *
+   * @param shape
+   *          the shape of the network
+   * @param cities
+   *          the amount of cities, at least 2
+   * @param density
+   *          the amount of flights departing each city each day
+   * @param days
+   *          the amount of days with flights
+   * @param seed
+   *          the seed of the random generator
+   * @return the flights of the network
+   */
+  public static List<SingleTravel> generate(Shape shape, int cities, int density, int days,
+      long seed) {
+    Random rand = new Random(seed);
+    Calendar cal = Calendar.getInstance();
+    List<SingleTravel> flights = new ArrayList<>(cities * density * days);
+    int hubs = hubs(cities);
+    int id = 0;
+    for (int day = 0; day < days; day++) {
+      for (int origin = 0; origin < cities; origin++) {
+        for (int i = 0; i < density; i++) {
+          int destination = destination(shape, origin, cities, hubs, rand);
+          cal.set(2016, Calendar.OCTOBER, 1 + day, rand.nextInt(22), rand.nextInt(60), 0);
+          cal.set(Calendar.MILLISECOND, 0);
+          Date start = cal.getTime();
+          Date end = new Date(start.getTime() + (60 + rand.nextInt(180)) * 60L * 1000L);
+          double cost = 50 + rand.nextInt(50000) / 100.0;
+          flights.add(new Flight(TravelType.Flight, Integer.toString(id++), start, end,
+              city(origin), city(destination), cost, "Airline" + rand.nextInt(5)));
+        }
+      }
+    }
+    return flights;
+  }
+
+  /**
+   * Picks the destination of a flight.
+   *
+   * @param shape
+   *          the shape of the network
+   * @param origin
+   *          the origin city of the flight
+   * @param cities
+   *          the amount of cities
+   * @param hubs
+   *          the amount of hubs, for hub-and-spoke networks
+   * @param rand
+   *          the random generator
+   * @return a destination city other than the origin
+   */
+  private static int destination(Shape shape, int origin, int cities, int hubs, Random rand) {
+    int destination;
+    do {
+      if (shape == Shape.MESH || (origin < hubs && rand.nextBoolean())) {
+        destination = rand.nextInt(cities);
+      } else { // spokes only fly to hubs, and hubs half of the time
+        destination = rand.nextInt(hubs == 1 && origin == 0 ? cities : hubs);
+      }
+    } while (destination == origin);
+    return destination;
+  }
+
+  /**
+   * Writes flights to a file, one per line, in the format read by TravelType.
+   *
+   * @param flights
+   *          the flights to write
+   * @param file
+   *          the file to write to
+   * @throws IOException
+   *           if the file could not be written
+   */
+  public static void writeFlights(List<SingleTravel> flights, Path file) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file,
+        Charset.forName(Constants.FILE_ENCODING))) {
+      for (SingleTravel st : flights) {
+        writer.write(st.toString());
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Writes clients to a file, one per line, in the format read by UserType.
+   *
+   * @param count
+   *          the amount of clients to write
+   * @param file
+   *          the file to write to
+   * @throws IOException
+   *           if the file could not be written
+   */
+  public static void writeClients(int count, Path file) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file,
+        Charset.forName(Constants.FILE_ENCODING))) {
+      for (int i = 0; i < count; i++) {
+        // LastName,FirstNames,Email,Address,CreditCardNumber,ExpiryDate
+        writer.write(String.format("Last%d,First%d,client%d@email.com,%d Main Street,"
+            + "%016d,2018-08-24", i, i, i, i, i));
+        writer.newLine();
+      }
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import database.MainDatabase;
+
+import io.SaveOperations;
+
+import travel.Itinerary;
+import travel.SingleTravel;
+import travel.TravelType;
+
+import users.Client;
+import users.RegisteredUser;
+import users.UserType;
+
+import util.Constants;
+import util.TimeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks saving the database to the encrypted save file and reading it
+ * back. The save file is written to the working directory, as the application
+ * does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+  /**
+   * The amount of cities in the network.
+   */
+  private static final int CITIES = 40;
+
+  /**
+   * The amount of flights departing each city each day.
+   */
+  @Param({ "2", "8" })
+  public int density;
+  /**
+   * The amount of days with flights.
+   */
+  @Param({ "7" })
+  public int days;
+  /**
+   * The amount of clients, each booking one flight.
+   */
+  @Param({ "1000" })
+  public int clients;
+
+  /**
+   * The database saved.
+   */
+  private MainDatabase database;
+
+  /**
+   * Generates the database and saves it once, so that there is a file to read.
+   *
+   * @throws ParseException
+   *           never; the dates are constants
+   */
+  @Setup
+  public void setUp() throws ParseException {
+    database = new MainDatabase();
+    database.addTravels(NetworkGenerator.generate(NetworkGenerator.Shape.MESH, CITIES,
+        density, days, 42));
+
+    List<SingleTravel> flights = new ArrayList<>(database.getAllTravels(TravelType.Flight));
+    Random rand = new Random(7);
+    Date expiry = TimeFormat.DATE.parseString("2018-08-24");
+    for (int i = 0; i < clients; i++) {
+      RegisteredUser client = new Client("client" + i + "@email.com", UserType.Client,
+          "First" + i, "Last" + i, i + " Main Street", String.format("%016d", i), expiry);
+      // searching for itineraries of dense networks is too slow for a setup
+      client.bookItinerary(new Itinerary(flights.get(rand.nextInt(flights.size()))));
+      database.addUser(client);
+    }
+    SaveOperations.serializeDatabase(database);
+  }
+
+  /**
+   * Deletes the save file.
+   */
+  @TearDown
+  public void tearDown() {
+    new File(Constants.SAVE_FILE).delete();
+  }
+
+  /**
+   * Saves the database.
+   */
+  @Benchmark
+  public void serialize() {
+    SaveOperations.serializeDatabase(database);
+  }
+
+  /**
+   * Reads the database back.
+   *
+   * @return the database read
+   */
+  @Benchmark
+  public MainDatabase deserialize() {
+    return SaveOperations.deserializeDatabase();
+  }
+}
@@ -0,0 +1,167 @@
+package benchmarks;
+
+import database.MainDatabase;
+
+import travel.TravelComparator;
+import travel.TravelType;
+
+import util.TimeFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks searching the database for single travels and for itineraries.
+ * Each invocation runs the same fixed set of searches, spread over every day
+ * and city of the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+  /**
+   * The amount of searches in each invocation.
+   */
+  private static final int QUERIES = 16;
+
+  /**
+   * The shape of the network.
+   */
+  @Param({ "HUB_AND_SPOKE", "MESH" })
+  public NetworkGenerator.Shape shape;
+  /**
+   * The amount of cities in the network.
+   */
+  @Param({ "40" })
+  public int cities;
+  /**
+   * The amount of flights departing each city each day.
+   */
+  @Param({ "2", "8" })
+  public int density;
+  /**
+   * The amount of days with flights.
+   */
+  @Param({ "1", "7" })
+  public int days;
+
+  /**
+   * The database searched.
+   */
+  private MainDatabase database;
+  /**
+   * The date of each search.
+   */
+  private Date[] dates;
+  /**
+   * The origin of each search.
+   */
+  private String[] origins;
+  /**
+   * The destination of each search, never the same as the origin.
+   */
+  private String[] destinations;
+
+  /**
+   * Generates the network and picks the searches.
+   *
+   * @throws ParseException
+   *           never; the first day is a constant
+   */
+  @Setup
+  public void setUp() throws ParseException {
+    database = new MainDatabase();
+    database.addTravels(NetworkGenerator.generate(shape, cities, density, days, 42));
+
+    Random rand = new Random(7);
+    long first = TimeFormat.DATE.parseString(NetworkGenerator.FIRST_DAY).getTime();
+    dates = new Date[QUERIES];
+    origins = new String[QUERIES];
+    destinations = new String[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      int origin = rand.nextInt(cities);
+      int destination = (origin + 1 + rand.nextInt(cities - 1)) % cities;
+      dates[i] = new Date(first + rand.nextInt(days) * TimeUnit.DAYS.toMillis(1));
+      origins[i] = NetworkGenerator.city(origin);
+      destinations[i] = NetworkGenerator.city(destination);
+    }
+  }
+
+  /**
+   * Searches for single flights.
+   *
+   * @param bh
+   *          consumes the results
+   */
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void searchTravels(Blackhole bh) {
+    for (int i = 0; i < QUERIES; i++) {
+      bh.consume(database.searchTravels(dates[i], origins[i], destinations[i],
+          TravelType.Flight));
+    }
+  }
+
+  /**
+   * Searches for itineraries, in no particular order.
+   *
+   * @param bh
+   *          consumes the results
+   */
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void searchItineraries(Blackhole bh) {
+    for (int i = 0; i < QUERIES; i++) {
+      bh.consume(database.searchItineraries(dates[i], origins[i], destinations[i]));
+    }
+  }
+
+  /**
+   * Searches for itineraries, cheapest first.
+   *
+   * @param bh
+   *          consumes the results
+   */
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void searchItinerariesByCost(Blackhole bh) {
+    for (int i = 0; i < QUERIES; i++) {
+      bh.consume(database.searchItineraries(dates[i], origins[i], destinations[i],
+          TravelComparator.Cost));
+    }
+  }
+
+  /**
+   * Searches for itineraries, shortest first.
+   *
+   * @param bh
+   *          consumes the results
+   */
+  @Benchmark
+  @OperationsPerInvocation(QUERIES)
+  public void searchItinerariesByTime(Blackhole bh) {
+    for (int i = 0; i < QUERIES; i++) {
+      bh.consume(database.searchItineraries(dates[i], origins[i], destinations[i],
+          TravelComparator.Time));
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package csc.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.support.test.InstrumentationRegistry;
+
+import csc.database.MainDatabase;
+import csc.project.UserControl;
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.UserType;
+import csc.util.Constants;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests saving and loading the database in every version of the save, and
+ * replaying the journal over a snapshot. The tests take over the database and
+ * files of the application under test.
+ */
+public class PersistenceTests {
+
+  public static final int TIMEOUT = 60000;
+
+  private static final int[] VERSIONS = { SaveOperations.SERIALIZED_VERSION,
+      SaveOperations.COMPACT_VERSION, SaveOperations.STREAMED_VERSION,
+      SaveOperations.CATALOG_VERSION };
+
+  @Test(timeout = TIMEOUT)
+  public void testEveryVersionLoadsWhatItSaved() throws Exception {
+    for (int version : VERSIONS) {
+      UserControl uc = emptyApplication();
+      MainDatabase md = uc.getDatabase();
+      md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "2"));
+      md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "1"));
+      md.addTravel(TravelType.Railroad.create("3", "2016-10-01 09:00", "2016-10-01 12:00",
+          "Rail", "Cc", "Aa", "15.50", "40"));
+      RegisteredUser booker = client(md, "u@x.com");
+      client(md, "v@x.com").setPassword("secret");
+      Itinerary it = new Itinerary(md.getTravel(TravelType.Flight, "1"));
+      it.add(md.getTravel(TravelType.Flight, "2"));
+      assertTrue(md.bookItinerary(booker, it));
+      uc.setUser(booker);
+
+      DatabaseSnapshot snapshot = new DatabaseSnapshot(uc.getUser(), md, new Journal(uc));
+      String catalog = version == SaveOperations.CATALOG_VERSION
+          ? SaveOperations.writeCatalog(uc, snapshot) : null;
+      byte[] bytes = SaveOperations.serializeToBytes(snapshot, catalog, version);
+      String expected = fingerprint(uc);
+
+      uc.setUser(null);
+      load(uc, bytes);
+      assertEquals("Version " + version, expected, fingerprint(uc));
+      if (catalog != null) {
+        uc.deleteFile(catalog);
+      }
+    }
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testJournalKeepsChangesMadeDuringSnapshot() throws Exception {
+    UserControl uc = emptyApplication();
+    MainDatabase md = uc.getDatabase();
+    Journal journal = new Journal(uc);
+    md.setListener(journal);
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "2"));
+    RegisteredUser ru = client(md, "u@x.com");
+    DatabaseSnapshot snapshot = new DatabaseSnapshot(null, md, journal);
+
+    // changes made while the snapshot is written
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "1"));
+    md.removeTravel(TravelType.Flight, "1");
+    assertTrue(md.bookItinerary(ru, new Itinerary(md.getTravel(TravelType.Flight, "2"))));
+    byte[] bytes = SaveOperations.serializeToBytes(snapshot, null,
+        SaveOperations.STREAMED_VERSION);
+    journal.reset(snapshot.getJournaled());
+    journal.flush();
+    String expected = fingerprint(uc);
+
+    load(uc, bytes);
+    new Journal(uc).replay(uc);
+    assertEquals(expected, fingerprint(uc));
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testReplayStopsAtDamagedRecord() throws Exception {
+    UserControl uc = emptyApplication();
+    MainDatabase md = uc.getDatabase();
+    Journal journal = new Journal(uc);
+    md.setListener(journal);
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "2"));
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "2"));
+    md.addTravel(flight("3", "09:00", "10:00", "Cc", "Dd", "2"));
+    journal.flush();
+    damageSecondRecord(uc);
+
+    md.setListener(null);
+    md.clear();
+    Journal replayed = new Journal(uc);
+    replayed.replay(uc);
+    assertTrue("The record before the damaged one was lost",
+        md.getTravel(TravelType.Flight, "1") != null);
+    assertTrue("The damaged record was applied", md.getTravel(TravelType.Flight, "2") == null);
+    assertTrue("A record after the damaged one was applied",
+        md.getTravel(TravelType.Flight, "3") == null);
+    assertFalse("A damaged journal was appended to", replayed.canAppend());
+  }
+
+  /**
+   * Gets the application under test with no user, an empty database that
+   * tells no listener of its changes, and no journal file.
+   */
+  private static UserControl emptyApplication() {
+    UserControl uc = (UserControl) InstrumentationRegistry.getTargetContext()
+        .getApplicationContext();
+    uc.setUser(null);
+    uc.getDatabase().setListener(null);
+    uc.getDatabase().clear();
+    uc.deleteFile(Constants.JOURNAL_FILE);
+    return uc;
+  }
+
+  /**
+   * Replaces the database of the application with a save.
+   */
+  private static void load(UserControl uc, byte[] bytes) throws Exception {
+    uc.getDatabase().setListener(null);
+    uc.getDatabase().clear();
+    SaveOperations.deserializeFromStream(uc, new ByteArrayInputStream(bytes));
+  }
+
+  /**
+   * Flips the last bit of the second record of the journal file, so that it
+   * no longer decrypts.
+   */
+  private static void damageSecondRecord(UserControl uc) throws Exception {
+    try (RandomAccessFile file = new RandomAccessFile(
+        uc.getFileStreamPath(Constants.JOURNAL_FILE), "rw")) {
+      file.seek(1);
+      long first = 2 + file.read(); // after the version, salt length and salt
+      file.seek(first);
+      long second = first + 4 + file.readInt();
+      file.seek(second);
+      long end = second + 4 + file.readInt();
+      file.seek(end - 1);
+      int last = file.read();
+      file.seek(end - 1);
+      file.write(last ^ 1);
+    }
+  }
+
+  /**
+   * Describes everything that is saved: the travels with their seats, the
+   * users with their passwords and bookings, and the current user.
+   */
+  private static String fingerprint(UserControl uc) {
+    MainDatabase md = uc.getDatabase();
+    List<String> lines = new ArrayList<>();
+    for (TravelType tt : TravelType.values()) {
+      for (SingleTravel st : md.getAllTravels(tt)) {
+        lines.add(tt + " " + st + " " + st.getAvailableCapacity());
+      }
+    }
+    for (RegisteredUser ru : md.getAllUsers()) {
+      lines.add(ru.getType() + " " + ru + " " + ru.getPassword() + " "
+          + ru.getBookedItineraries());
+    }
+    Collections.sort(lines);
+    lines.add(uc.getUser() == null ? "no user" : "user " + uc.getUser().getIdentifier());
+    return lines.toString();
+  }
+
+  private static SingleTravel flight(String id, String start, String end, String origin,
+      String destination, String seats) throws Exception {
+    return TravelType.Flight.create(id, "2016-10-01 " + start, "2016-10-01 " + end, "P",
+        origin, destination, "10.00", seats);
+  }
+
+  private static RegisteredUser client(MainDatabase md, String email) throws Exception {
+    md.addUser(UserType.Client.create("Last", "First", email, "Address", "1234",
+        "2020-01-01"));
+    return md.getUser(email);
+  }
+}
@@ -0,0 +1,101 @@
+package csc.database;
+
+/**
+ * The amounts of travels or users given to a database to add, by what became
+ * of each of them. Several batches can be summed into one.
+ */
+public class AddCounts {
+  /**
+   * The amount that were new.
+   */
+  private int added;
+  /**
+   * The amount that replaced different ones with the same id.
+   */
+  private int updated;
+  /**
+   * The amount that were the same as the ones already there.
+   */
+  private int unchanged;
+  /**
+   * The amount that had invalid data.
+   */
+  private int skipped;
+
+  /**
+   * Gets the amount that were new.
+   *
+   * @return the amount added
+   */
+  public int getAdded() {
+    return added;
+  }
+
+  /**
+   * Gets the amount that replaced different ones with the same id.
+   *
+   * @return the amount updated
+   */
+  public int getUpdated() {
+    return updated;
+  }
+
+  /**
+   * Gets the amount that were the same as the ones already there.
+   *
+   * @return the amount unchanged
+   */
+  public int getUnchanged() {
+    return unchanged;
+  }
+
+  /**
+   * Gets the amount that had invalid data, and were not added.
+   *
+   * @return the amount skipped
+   */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Adds the amounts of another batch to these.
+   *
+   * @param other
+   *          the amounts to add
+   */
+  public void addAll(AddCounts other) {
+    added += other.added;
+    updated += other.updated;
+    unchanged += other.unchanged;
+    skipped += other.skipped;
+  }
+
+  /**
+   * Counts one that was new.
+   */
+  void countAdded() {
+    added++;
+  }
+
+  /**
+   * Counts one that replaced a different one.
+   */
+  void countUpdated() {
+    updated++;
+  }
+
+  /**
+   * Counts one that was the same as the one already there.
+   */
+  void countUnchanged() {
+    unchanged++;
+  }
+
+  /**
+   * Counts one that had invalid data.
+   */
+  void countSkipped() {
+    skipped++;
+  }
+}
@@ -0,0 +1,254 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+import csc.travel.LocationRegistry;
+import csc.travel.SingleTravel;
+import csc.travel.Travel;
+import csc.travel.TravelComparator;
+import csc.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single best-first search for the cheapest or shortest itineraries between
+ * two locations. Partial itineraries are expanded in order of total cost or
+ * travel time; since neither can decrease as travels are added, complete
+ * itineraries are found in sorted order and the search stops once enough are
+ * found. Travels to locations that cannot reach the destination in time, or
+ * within the hops left, are never added. Each search is used once.
+ */
+class BestFirstSearch {
+  /**
+   * The amount of partial itineraries polled between checks of the deadline.
+   */
+  private static final int DEADLINE_INTERVAL = 64;
+
+  /**
+   * Orders partial itineraries by total cost, smallest first.
+   */
+  private static final Comparator<PartialItinerary> COST_ORDER =
+      new Comparator<PartialItinerary>() {
+        @Override
+        public int compare(PartialItinerary lhs, PartialItinerary rhs) {
+          return Double.compare(lhs.getCost(), rhs.getCost());
+        }
+      };
+
+  /**
+   * Orders partial itineraries by travel time, shortest first.
+   */
+  private static final Comparator<PartialItinerary> TIME_ORDER =
+      new Comparator<PartialItinerary>() {
+        @Override
+        public int compare(PartialItinerary lhs, PartialItinerary rhs) {
+          return Long.compare(lhs.getEndTime() - lhs.getStartTime(),
+              rhs.getEndTime() - rhs.getStartTime());
+        }
+      };
+
+  /**
+   * The database to search in.
+   */
+  private final MainDatabase database;
+  /**
+   * The location id to end the itineraries at.
+   */
+  private final int destinationId;
+  /**
+   * How every location can reach the destination.
+   */
+  private final ConnectionGraph.Reach reach;
+  /**
+   * The order to find the itineraries in.
+   */
+  private final TravelComparator order;
+  /**
+   * The limits of this search; the maximum results is the amount to find.
+   */
+  private final SearchLimits limits;
+  /**
+   * The amount of partial itineraries expanded.
+   */
+  private int expanded;
+  /**
+   * The amount of travels not added because the destination cannot be reached
+   * from them.
+   */
+  private int pruned;
+  /**
+   * Whether a limit other than the amount of results was reached.
+   */
+  private boolean truncated;
+  /**
+   * Whether the search stopped because its time ran out.
+   */
+  private boolean timedOut;
+
+  /**
+   * Creates a new search.
+   *
+   * @param database
+   *          the database to search in
+   * @param destinationId
+   *          the location id to end the itineraries at
+   * @param reach
+   *          how every location can reach the destination
+   * @param order
+   *          the order to find the itineraries in; either Total_Cost or
+   *          Total_Travel_Time
+   * @param limits
+   *          the limits of this search
+   */
+  BestFirstSearch(MainDatabase database, int destinationId, ConnectionGraph.Reach reach,
+      TravelComparator order, SearchLimits limits) {
+    if (!supports(order)) {
+      throw new IllegalArgumentException("Best-first search cannot order by " + order);
+    }
+    this.database = database;
+    this.destinationId = destinationId;
+    this.reach = reach;
+    this.order = order;
+    this.limits = limits;
+  }
+
+  /**
+   * Gets whether itineraries can be found in the given order.
+   *
+   * @param order
+   *          the order to check
+   * @return True if the order is by ascending total cost or travel time
+   */
+  static boolean supports(Comparator<Travel> order) {
+    return order == TravelComparator.Total_Cost || order == TravelComparator.Total_Travel_Time;
+  }
+
+  /**
+   * Finds the first itineraries, in order, departing from origin on the given
+   * date.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param originId
+   *          the location id to start the sequence
+   * @return a list of the itineraries found, in order
+   */
+  ArrayList<Itinerary> run(Date date, int originId) {
+    long deadline = 0;
+    if (limits.getTimeout() > 0) {
+      deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getTimeout());
+    }
+    ArrayList<Itinerary> results = new ArrayList<>();
+    if (reach.getHops(originId) == ConnectionGraph.UNREACHABLE) {
+      return results;
+    }
+    int steps = 0; // counts every poll, as many are not expanded
+    PriorityQueue<PartialItinerary> frontier = new PriorityQueue<>(16,
+        order == TravelComparator.Total_Cost ? COST_ORDER : TIME_ORDER);
+    for (SingleTravel st : database.listTravels(date, null, originId,
+        LocationRegistry.UNKNOWN, false)) {
+      if (!isDeadEnd(st, 1)) {
+        frontier.add(PartialItinerary.start(st));
+      }
+    }
+
+    while (!frontier.isEmpty() && results.size() < limits.getMaxResults()) {
+      if (deadline != 0 && ++steps % DEADLINE_INTERVAL == 0 && System.nanoTime() > deadline) {
+        truncated = true;
+        timedOut = true;
+        break;
+      }
+      PartialItinerary next = frontier.poll();
+      if (next.getDestinationId() == destinationId) {
+        results.add(next.toItinerary());
+        continue;
+      }
+      if (next.size() >= limits.getMaxHops()) {
+        truncated = true;
+        continue;
+      }
+      expanded++;
+
+      long arrival = next.getEndTime();
+      Date lower = new Date(arrival + Constants.MIN_STOPOVER);
+      Date upper = new Date(arrival + Constants.MAX_STOPOVER);
+      for (SingleTravel st : database.listTravels(lower, upper, next.getDestinationId(),
+          LocationRegistry.UNKNOWN, false)) {
+        // if we haven't visited this location...
+        if (!next.containsOrigin(st.getDestinationId()) && !isDeadEnd(st, next.size() + 1)) {
+          frontier.add(next.extend(st));
+        }
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Checks whether the destination cannot be reached after a travel, in time
+   * or within the hops left.
+   *
+   * @param st
+   *          the travel to check
+   * @param hops
+   *          the amount of travels taken, including st
+   * @return True if st should not be followed
+   */
+  private boolean isDeadEnd(SingleTravel st, int hops) {
+    int locationId = st.getDestinationId();
+    if (locationId == destinationId) {
+      return false;
+    }
+    if (!reach.canReach(locationId, st.getEndTime().getTime())) {
+      pruned++;
+      return true;
+    }
+    if (hops + reach.getHops(locationId) > limits.getMaxHops()) {
+      pruned++;
+      truncated = true; // it might reach the destination with more hops
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Gets whether a limit other than the amount of results was reached.
+   *
+   * @return True if the results may be missing better itineraries
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Gets whether the search stopped because its time ran out. Unlike the
+   * other limits, this depends on how busy the device was, so the same
+   * search may find more itineraries next time.
+   *
+   * @return True if the timeout was reached
+   */
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  /**
+   * Gets the amount of partial itineraries expanded during the search.
+   *
+   * @return the amount of expansions
+   */
+  int getExpanded() {
+    return expanded;
+  }
+
+  /**
+   * Gets the amount of travels not added because the destination cannot be
+   * reached from them.
+   *
+   * @return the amount of travels pruned
+   */
+  int getPruned() {
+    return pruned;
+  }
+}
@@ -0,0 +1,370 @@
+package csc.database;
+
+import csc.travel.LocationRegistry;
+import csc.travel.SingleTravel;
+import csc.util.Constants;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The locations connected by at least one travel, for ruling out partial
+ * itineraries that can never reach their destination. Each connection keeps
+ * its shortest travel and latest arrival, so that the reach of a destination
+ * gives, for every location, the fewest travels and the least time needed to
+ * get there. The graph ignores the stopover windows and seats left, so the
+ * reach is a bound: a location it rules out can never reach the destination,
+ * but one it allows might not either.
+ */
+class ConnectionGraph implements Serializable {
+  /**
+   * Serializable implementation.
+   */
+  private static final long serialVersionUID = -4419405672264915937L;
+  /**
+   * The amount of travels of a location that cannot reach the destination.
+   */
+  static final int UNREACHABLE = Integer.MAX_VALUE;
+  /**
+   * Orders the locations of a backwards search by their time to the
+   * destination, soonest first.
+   */
+  private static final Comparator<long[]> EARLIEST = new Comparator<long[]>() {
+    @Override
+    public int compare(long[] lhs, long[] rhs) {
+      return Long.compare(lhs[0], rhs[0]);
+    }
+  };
+
+  /**
+   * The connections arriving at each location, by the location they depart
+   * from.
+   */
+  private final Map<Integer, Map<Integer, Connection>> arriving;
+  /**
+   * The version of the connections, changed whenever a connection is added or
+   * removed, or its bounds are loosened.
+   */
+  private long version;
+
+  /**
+   * Creates a new empty ConnectionGraph.
+   */
+  ConnectionGraph() {
+    this.arriving = new HashMap<>();
+    this.version = 0;
+  }
+
+  /**
+   * Gets the version of the connections. A reach computed at the current
+   * version is up to date.
+   *
+   * @return the version
+   */
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * Adds the connection of a travel.
+   *
+   * @param travel
+   *          the travel to add
+   */
+  void add(SingleTravel travel) {
+    add(travel.getOriginId(), travel.getDestinationId(), travel.getStartTime().getTime(),
+        travel.getEndTime().getTime());
+  }
+
+  /**
+   * Adds the connection of a travel by its locations and times, as when
+   * reading a catalog without creating its travels.
+   *
+   * @param originId
+   *          the location id of the origin
+   * @param destinationId
+   *          the location id of the destination
+   * @param departure
+   *          the departure time, in milliseconds
+   * @param arrival
+   *          the arrival time, in milliseconds
+   */
+  void add(int originId, int destinationId, long departure, long arrival) {
+    Map<Integer, Connection> into = arriving.get(destinationId);
+    if (into == null) {
+      into = new HashMap<>();
+      arriving.put(destinationId, into);
+    }
+    Connection connection = into.get(originId);
+    if (connection == null) {
+      connection = new Connection();
+      into.put(originId, connection);
+    }
+    long duration = arrival - departure;
+    if (connection.travels == 0) {
+      connection.shortest = duration;
+      connection.latestArrival = arrival;
+      version++; // a new connection
+    } else if (duration < connection.shortest || arrival > connection.latestArrival) {
+      connection.shortest = Math.min(connection.shortest, duration);
+      connection.latestArrival = Math.max(connection.latestArrival, arrival);
+      version++; // a looser bound
+    }
+    connection.travels++;
+  }
+
+  /**
+   * Removes every connection. The version keeps counting up, so that no reach
+   * computed before is taken as up to date.
+   */
+  void clear() {
+    arriving.clear();
+    version++;
+  }
+
+  /**
+   * Removes the connection of a travel. The travel must still have the times
+   * and locations it was added with. The shortest travel and latest arrival of
+   * its connection are kept as they are, which only makes them looser bounds.
+   *
+   * @param travel
+   *          the travel to remove
+   */
+  void remove(SingleTravel travel) {
+    Map<Integer, Connection> into = arriving.get(travel.getDestinationId());
+    if (into == null) {
+      return;
+    }
+    Connection connection = into.get(travel.getOriginId());
+    if (connection == null) {
+      return;
+    }
+    if (--connection.travels == 0) {
+      into.remove(travel.getOriginId());
+      if (into.isEmpty()) {
+        arriving.remove(travel.getDestinationId());
+      }
+      version++;
+    }
+  }
+
+  /**
+   * Computes how every location can reach a destination: the fewest travels
+   * by a search backwards from the destination, and the least time by the
+   * same search ordered by the time of each connection and its stopover.
+   *
+   * @param destinationId
+   *          the location id of the destination
+   * @return the reach of the destination
+   */
+  Reach reach(int destinationId) {
+    int size = Math.max(destinationId, LocationRegistry.maxId()) + 1;
+    int[] hops = new int[size];
+    Arrays.fill(hops, UNREACHABLE);
+    hops[destinationId] = 0;
+    Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(destinationId);
+    while (!queue.isEmpty()) {
+      int location = queue.poll();
+      Map<Integer, Connection> into = arriving.get(location);
+      if (into == null) {
+        continue;
+      }
+      for (Integer from : into.keySet()) {
+        if (hops[from] == UNREACHABLE) {
+          hops[from] = hops[location] + 1;
+          queue.add(from);
+        }
+      }
+    }
+
+    long[] time = new long[size];
+    Arrays.fill(time, Long.MAX_VALUE);
+    time[destinationId] = 0;
+    PriorityQueue<long[]> frontier = new PriorityQueue<>(16, EARLIEST);
+    frontier.add(new long[] { 0, destinationId });
+    while (!frontier.isEmpty()) {
+      long[] next = frontier.poll();
+      int location = (int) next[1];
+      Map<Integer, Connection> into = arriving.get(location);
+      if (next[0] > time[location] || into == null) {
+        continue; // already reached sooner
+      }
+      for (Map.Entry<Integer, Connection> entry : into.entrySet()) {
+        // wait at least the shortest stopover, then take the shortest travel
+        long through = next[0] + Constants.MIN_STOPOVER + entry.getValue().shortest;
+        int from = entry.getKey();
+        if (through < time[from]) {
+          time[from] = through;
+          frontier.add(new long[] { through, from });
+        }
+      }
+    }
+
+    long latestArrival = Long.MIN_VALUE;
+    Map<Integer, Connection> into = arriving.get(destinationId);
+    if (into != null) {
+      for (Connection connection : into.values()) {
+        latestArrival = Math.max(latestArrival, connection.latestArrival);
+      }
+    }
+    return new Reach(hops, time, latestArrival);
+  }
+
+  /**
+   * Finds the locations that a search from an origin to the destination of a
+   * reach may continue from: the origin, and every location the origin
+   * connects to that can still reach the destination within the travels
+   * left. Other locations are never continued from by any search.
+   *
+   * @param originId
+   *          the location id of the origin
+   * @param reach
+   *          the reach of the destination
+   * @param maxHops
+   *          the most travels in an itinerary
+   * @return the location ids; empty if the origin cannot reach the
+   *         destination
+   */
+  Set<Integer> between(int originId, Reach reach, int maxHops) {
+    Set<Integer> found = new HashSet<>();
+    if (reach.getHops(originId) == UNREACHABLE) {
+      return found;
+    }
+    Map<Integer, List<Integer>> departing = new HashMap<>();
+    for (Map.Entry<Integer, Map<Integer, Connection>> entry : arriving.entrySet()) {
+      for (Integer from : entry.getValue().keySet()) {
+        List<Integer> to = departing.get(from);
+        if (to == null) {
+          to = new ArrayList<>();
+          departing.put(from, to);
+        }
+        to.add(entry.getKey());
+      }
+    }
+    // a search forward from the origin, by the fewest travels to each location
+    Map<Integer, Integer> depth = new HashMap<>();
+    depth.put(originId, 0);
+    found.add(originId);
+    Deque<Integer> queue = new ArrayDeque<>();
+    queue.add(originId);
+    while (!queue.isEmpty()) {
+      int location = queue.poll();
+      List<Integer> to = departing.get(location);
+      if (to == null) {
+        continue;
+      }
+      int taken = depth.get(location) + 1;
+      for (Integer next : to) {
+        int left = reach.getHops(next);
+        // the destination itself is never continued from
+        if (left == 0 || left > maxHops - taken || found.contains(next)) {
+          continue;
+        }
+        found.add(next);
+        depth.put(next, taken);
+        queue.add(next);
+      }
+    }
+    return found;
+  }
+
+  /**
+   * How every location can reach one destination. Immutable, so it can be
+   * shared by searches running together.
+   */
+  static final class Reach {
+    /**
+     * The fewest travels from each location to the destination, by location
+     * id; UNREACHABLE if there are none.
+     */
+    private final int[] hops;
+    /**
+     * The least time from arriving at each location to arriving at the
+     * destination, in milliseconds, by location id; Long.MAX_VALUE if the
+     * destination cannot be reached.
+     */
+    private final long[] time;
+    /**
+     * The latest time any travel arrives at the destination, in milliseconds.
+     */
+    private final long latestArrival;
+
+    /**
+     * Creates a reach.
+     *
+     * @param hops
+     *          the fewest travels from each location, by location id
+     * @param time
+     *          the least time from each location, by location id
+     * @param latestArrival
+     *          the latest time any travel arrives at the destination
+     */
+    private Reach(int[] hops, long[] time, long latestArrival) {
+      this.hops = hops;
+      this.time = time;
+      this.latestArrival = latestArrival;
+    }
+
+    /**
+     * Gets the fewest travels needed to reach the destination from a location.
+     *
+     * @param locationId
+     *          the location id to start from
+     * @return the amount of travels; UNREACHABLE if the destination cannot be
+     *         reached
+     */
+    int getHops(int locationId) {
+      return locationId < hops.length ? hops[locationId] : UNREACHABLE;
+    }
+
+    /**
+     * Checks whether the destination might still be reached after arriving at
+     * a location.
+     *
+     * @param locationId
+     *          the location id arrived at
+     * @param arrival
+     *          the time of arrival, in milliseconds
+     * @return False if no travels can reach the destination in time
+     */
+    boolean canReach(int locationId, long arrival) {
+      if (locationId >= time.length || time[locationId] == Long.MAX_VALUE) {
+        return false;
+      }
+      return arrival + time[locationId] <= latestArrival;
+    }
+  }
+
+  /**
+   * The travels from one location to another.
+   */
+  private static final class Connection implements Serializable {
+    /**
+     * Serializable implementation.
+     */
+    private static final long serialVersionUID = 3605187541377312063L;
+    /**
+     * The amount of travels.
+     */
+    private int travels;
+    /**
+     * The shortest travel time of any of the travels, in milliseconds.
+     */
+    private long shortest;
+    /**
+     * The latest arrival of any of the travels, in milliseconds.
+     */
+    private long latestArrival;
+  }
+}
@@ -0,0 +1,388 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.util.Constants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An itinerary search that scans every travel once, in order of departure,
+ * rather than following each itinerary from the origin. A travel can be taken
+ * if it departs from the origin on the search date, or departs within the
+ * stopover window of a travel that can be taken arriving at its origin. Since
+ * a travel always arrives at the same time, a way to take it is only dropped
+ * for a cheaper one with no more travels that visited none of the locations it
+ * did not, so the work grows with the amount of travels rather than the amount
+ * of itineraries. Full travels are skipped.
+ * Each search is used once.
+ */
+class ConnectionScan {
+  /**
+   * Orders travels by their departure time.
+   */
+  private static final Comparator<SingleTravel> BY_TIME = new Comparator<SingleTravel>() {
+    @Override
+    public int compare(SingleTravel first, SingleTravel second) {
+      return first.getStartTime().compareTo(second.getStartTime());
+    }
+  };
+  /**
+   * Orders partial itineraries by their arrival time.
+   */
+  private static final Comparator<PartialItinerary> BY_ARRIVAL =
+      new Comparator<PartialItinerary>() {
+        @Override
+        public int compare(PartialItinerary first, PartialItinerary second) {
+          return Long.compare(first.getEndTime(), second.getEndTime());
+        }
+      };
+  /**
+   * Orders partial itineraries by their arrival time, then their cost, then
+   * their amount of travels.
+   */
+  private static final Comparator<PartialItinerary> BY_ARRIVAL_COST_HOPS =
+      new Comparator<PartialItinerary>() {
+        @Override
+        public int compare(PartialItinerary first, PartialItinerary second) {
+          if (first.getEndTime() != second.getEndTime()) {
+            return first.getEndTime() < second.getEndTime() ? -1 : 1;
+          }
+          if (first.getCost() != second.getCost()) {
+            return Double.compare(first.getCost(), second.getCost());
+          }
+          return Integer.compare(first.size(), second.size());
+        }
+      };
+
+  /**
+   * Every travel, in order of departure.
+   */
+  private final SingleTravel[] timetable;
+  /**
+   * The location id to end the itineraries at.
+   */
+  private final int destinationId;
+  /**
+   * Whether only the earliest arrival is wanted, so the scan can stop once no
+   * travel can arrive sooner.
+   */
+  private final boolean earliestOnly;
+  /**
+   * The limits of this search. There is no timeout, as the scan is bounded by
+   * the amount of travels.
+   */
+  private final SearchLimits limits;
+  /**
+   * The partial itineraries whose stopover has not started yet, soonest
+   * arrival first.
+   */
+  private final PriorityQueue<PartialItinerary> arriving;
+  /**
+   * The partial itineraries within their stopover, by the location id they
+   * are at, then by their amount of travels less one. Each queue is in order
+   * of arrival, as an itinerary that arrives later and costs no more replaces
+   * the ones before it that visited the same locations.
+   */
+  private final Map<Integer, List<ArrayDeque<PartialItinerary>>> waiting;
+  /**
+   * The partial itineraries continued with the travel being scanned.
+   */
+  private final List<PartialItinerary> continued;
+  /**
+   * The itineraries that arrived at the destination.
+   */
+  private final List<PartialItinerary> arrived;
+  /**
+   * The earliest of the itineraries that arrived, then the cheapest; null if
+   * none did.
+   */
+  private PartialItinerary earliest;
+  /**
+   * The latest departure that can still be taken, in milliseconds. Grows as
+   * travels are reached.
+   */
+  private long horizon;
+  /**
+   * The amount of travels scanned.
+   */
+  private int scanned;
+  /**
+   * Whether a limit was reached, so the results may be incomplete.
+   */
+  private boolean truncated;
+
+  /**
+   * Creates a new search.
+   *
+   * @param timetable
+   *          every travel, in order of departure, from timetable()
+   * @param destinationId
+   *          the location id to end the itineraries at
+   * @param earliestOnly
+   *          whether only the earliest arrival is wanted
+   * @param limits
+   *          the limits of this search
+   */
+  ConnectionScan(SingleTravel[] timetable, int destinationId, boolean earliestOnly,
+      SearchLimits limits) {
+    this.timetable = timetable;
+    this.destinationId = destinationId;
+    this.earliestOnly = earliestOnly;
+    this.limits = limits;
+    this.arriving = new PriorityQueue<>(16, BY_ARRIVAL);
+    this.waiting = new HashMap<>();
+    this.arrived = new ArrayList<>();
+    this.continued = new ArrayList<>();
+  }
+
+  /**
+   * Sorts travels into a timetable for scanning.
+   *
+   * @param travels
+   *          the travels to sort
+   * @return the travels, in order of departure
+   */
+  static SingleTravel[] timetable(Collection<SingleTravel> travels) {
+    SingleTravel[] sorted = travels.toArray(new SingleTravel[travels.size()]);
+    Arrays.sort(sorted, BY_TIME);
+    return sorted;
+  }
+
+  /**
+   * Scans the travels departing from the start of the search onwards. The
+   * caller must keep the database from changing until this returns.
+   *
+   * @param lower
+   *          the earliest departure from the origin, in milliseconds
+   * @param upper
+   *          the latest departure from the origin, in milliseconds
+   * @param originId
+   *          the location id to start the itineraries at
+   */
+  void run(long lower, long upper, int originId) {
+    horizon = upper;
+    for (int i = firstDeparting(lower); i < timetable.length; i++) {
+      SingleTravel st = timetable[i];
+      long departure = st.getStartTime().getTime();
+      if (departure > horizon
+          || (earliestOnly && earliest != null && departure > earliest.getEndTime())) {
+        break; // nothing departing now can be taken, or arrive any sooner
+      }
+      scanned++;
+      if (st.getAvailableCapacity() <= 0) {
+        continue;
+      }
+      startStopovers(departure);
+      if (st.getOriginId() == originId) {
+        if (departure <= upper) {
+          reach(PartialItinerary.start(st));
+        }
+        continue; // the origin is never returned to
+      }
+      List<ArrayDeque<PartialItinerary>> byHops = waiting.get(st.getOriginId());
+      if (byHops != null) {
+        continueWith(byHops, st, departure);
+      }
+    }
+  }
+
+  /**
+   * Finds the first travel departing at or after a time.
+   *
+   * @param time
+   *          the earliest departure, in milliseconds
+   * @return the index of the travel in the timetable
+   */
+  private int firstDeparting(long time) {
+    int low = 0;
+    int high = timetable.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timetable[mid].getStartTime().getTime() < time) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Moves the partial itineraries whose minimum stopover has passed by a time
+   * to the queues of the locations they are at.
+   *
+   * @param time
+   *          the current departure time, in milliseconds
+   */
+  private void startStopovers(long time) {
+    while (!arriving.isEmpty()
+        && arriving.peek().getEndTime() + Constants.MIN_STOPOVER <= time) {
+      PartialItinerary path = arriving.poll();
+      List<ArrayDeque<PartialItinerary>> byHops = waiting.get(path.getDestinationId());
+      if (byHops == null) {
+        byHops = new ArrayList<>();
+        waiting.put(path.getDestinationId(), byHops);
+      }
+      while (byHops.size() < path.size()) {
+        byHops.add(new ArrayDeque<PartialItinerary>());
+      }
+      ArrayDeque<PartialItinerary> queue = byHops.get(path.size() - 1);
+      // an earlier arrival that costs as much or more is never better again,
+      // unless it visited other locations, which limit where each can go
+      Iterator<PartialItinerary> it = queue.iterator();
+      while (it.hasNext()) {
+        PartialItinerary before = it.next();
+        if (before.getCost() >= path.getCost() && path.visitsOnlyOriginsOf(before)) {
+          it.remove();
+        }
+      }
+      queue.addLast(path);
+    }
+  }
+
+  /**
+   * Continues the partial itineraries waiting at the origin of a travel with
+   * it, dropping the ones whose maximum stopover has passed. One is skipped if
+   * a partial itinerary already continued costs no more and visited none of
+   * the locations it did not, as that one can go wherever it can.
+   *
+   * @param byHops
+   *          the partial itineraries at the origin of the travel, by their
+   *          amount of travels less one
+   * @param st
+   *          the travel to continue with
+   * @param departure
+   *          the departure time of the travel, in milliseconds
+   */
+  private void continueWith(List<ArrayDeque<PartialItinerary>> byHops, SingleTravel st,
+      long departure) {
+    continued.clear();
+    for (ArrayDeque<PartialItinerary> queue : byHops) { // fewer travels first
+      while (!queue.isEmpty()
+          && queue.peekFirst().getEndTime() + Constants.MAX_STOPOVER < departure) {
+        queue.pollFirst();
+      }
+      for (PartialItinerary before : queue) {
+        if (before.containsOrigin(st.getDestinationId()) || isCovered(before)) {
+          continue;
+        }
+        if (before.size() >= limits.getMaxHops()) {
+          truncated = true;
+          return;
+        }
+        continued.add(before);
+        reach(before.extend(st));
+      }
+    }
+  }
+
+  /**
+   * Gets whether a partial itinerary continued with the current travel costs
+   * no more than another and visited none of the locations it did not.
+   *
+   * @param path
+   *          the partial itinerary to check
+   * @return True if continuing the partial itinerary is not needed
+   */
+  private boolean isCovered(PartialItinerary path) {
+    for (PartialItinerary other : continued) {
+      if (other.getCost() <= path.getCost() && other.visitsOnlyOriginsOf(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Records that a partial itinerary can be taken, continuing it later unless
+   * it arrived at the destination.
+   *
+   * @param path
+   *          the partial itinerary
+   */
+  private void reach(PartialItinerary path) {
+    if (path.getDestinationId() != destinationId) {
+      arriving.add(path);
+      horizon = Math.max(horizon, path.getEndTime() + Constants.MAX_STOPOVER);
+      return;
+    }
+    if (earliest == null || BY_ARRIVAL_COST_HOPS.compare(path, earliest) < 0) {
+      earliest = path;
+    }
+    if (!earliestOnly) {
+      arrived.add(path);
+    }
+  }
+
+  /**
+   * Gets the itinerary arriving at the destination the earliest, and the
+   * cheapest of those, then with the fewest travels.
+   *
+   * @return the itinerary; null if the destination cannot be reached
+   */
+  Itinerary getEarliest() {
+    return earliest == null ? null : earliest.toItinerary();
+  }
+
+  /**
+   * Gets the itineraries arriving at the destination, leaving out every one
+   * that another arrives no later than, costs no more than and has no more
+   * travels than. The search must not be earliest only.
+   *
+   * @return the itineraries, earliest arrival first
+   */
+  ArrayList<Itinerary> getParetoFront() {
+    Collections.sort(arrived, BY_ARRIVAL_COST_HOPS);
+    List<PartialItinerary> front = new ArrayList<>();
+    for (PartialItinerary path : arrived) {
+      boolean dominated = false;
+      for (PartialItinerary kept : front) { // each kept one arrives no later
+        if (kept.getCost() <= path.getCost() && kept.size() <= path.size()) {
+          dominated = true;
+          break;
+        }
+      }
+      if (!dominated) {
+        front.add(path);
+      }
+    }
+    if (front.size() > limits.getMaxResults()) {
+      front = front.subList(0, limits.getMaxResults());
+      truncated = true;
+    }
+    ArrayList<Itinerary> ret = new ArrayList<>(front.size());
+    for (PartialItinerary path : front) {
+      ret.add(path.toItinerary());
+    }
+    return ret;
+  }
+
+  /**
+   * Gets the amount of travels scanned.
+   *
+   * @return the amount of travels
+   */
+  int getScanned() {
+    return scanned;
+  }
+
+  /**
+   * Gets whether a limit was reached during the search.
+   *
+   * @return True if the results may be incomplete
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+}
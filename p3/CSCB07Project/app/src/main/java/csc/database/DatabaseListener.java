@@ -0,0 +1,69 @@
+package csc.database;
+
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+
+/**
+ * A listener that is told of every change made to a MainDatabase, after it is
+ * made. Listeners are called on the thread making the change, and should not
+ * change the database themselves.
+ */
+public interface DatabaseListener {
+
+  /**
+   * Called when a travel is added or replaced.
+   *
+   * @param travel
+   *          the travel, as stored in the database
+   */
+  public void travelAdded(SingleTravel travel);
+
+  /**
+   * Called when a travel is removed.
+   *
+   * @param type
+   *          the type of the travel
+   * @param id
+   *          the id of the travel
+   */
+  public void travelRemoved(TravelType type, String id);
+
+  /**
+   * Called when the id of a travel is changed.
+   *
+   * @param type
+   *          the type of the travel
+   * @param oldId
+   *          the id the travel had
+   * @param newId
+   *          the id the travel has now
+   */
+  public void travelRenamed(TravelType type, String oldId, String newId);
+
+  /**
+   * Called when a user is added, or its information or bookings change.
+   *
+   * @param user
+   *          the user, as stored in the database
+   */
+  public void userChanged(RegisteredUser user);
+
+  /**
+   * Called when a user is removed.
+   *
+   * @param email
+   *          the email of the user
+   */
+  public void userRemoved(String email);
+
+  /**
+   * Called when the email of a user is changed.
+   *
+   * @param oldEmail
+   *          the email the user had
+   * @param newEmail
+   *          the email the user has now
+   */
+  public void userRenamed(String oldEmail, String newEmail);
+}
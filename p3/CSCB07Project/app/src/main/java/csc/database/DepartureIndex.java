@@ -0,0 +1,168 @@
+package csc.database;
+
+import csc.travel.LocationRegistry;
+import csc.travel.SingleTravel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * An index of the travels departing from a single location, sorted by their
+ * departure time. Finding the travels that depart in a time window is a range
+ * query rather than a scan of every travel from the location.
+ */
+class DepartureIndex implements Serializable {
+  /**
+   * Serializable implementation.
+   */
+  private static final long serialVersionUID = -3150733457826017514L;
+  /**
+   * The travels from this location, grouped by departure time in milliseconds.
+   */
+  private final NavigableMap<Long, List<SingleTravel>> departures;
+  /**
+   * The amount of travels in this index.
+   */
+  private int size;
+
+  /**
+   * Creates a new empty DepartureIndex.
+   */
+  DepartureIndex() {
+    this.departures = new TreeMap<>();
+    this.size = 0;
+  }
+
+  /**
+   * Indexes a travel by its current departure time.
+   *
+   * @param travel
+   *          the travel to index
+   */
+  void add(SingleTravel travel) {
+    Long key = travel.getStartTime().getTime();
+    List<SingleTravel> sameTime = departures.get(key);
+    if (sameTime == null) {
+      sameTime = new ArrayList<>(1);
+      departures.put(key, sameTime);
+    }
+    sameTime.add(travel);
+    size++;
+  }
+
+  /**
+   * Indexes several travels by their current departure times. Travels sorted
+   * by departure time share a single lookup for each departure time.
+   *
+   * @param travels
+   *          the travels to index, best sorted by departure time
+   */
+  void addAll(List<SingleTravel> travels) {
+    List<SingleTravel> sameTime = null;
+    long last = 0;
+    for (SingleTravel travel : travels) {
+      long key = travel.getStartTime().getTime();
+      if (sameTime == null || key != last) {
+        sameTime = departures.get(key);
+        if (sameTime == null) {
+          sameTime = new ArrayList<>(1);
+          departures.put(key, sameTime);
+        }
+        last = key;
+      }
+      sameTime.add(travel);
+    }
+    size += travels.size();
+  }
+
+  /**
+   * Removes a travel from this index. The travel must still have the departure
+   * time it was indexed with.
+   *
+   * @param travel
+   *          the travel to remove
+   * @return True if the travel was found and removed
+   */
+  boolean remove(SingleTravel travel) {
+    Long key = travel.getStartTime().getTime();
+    List<SingleTravel> sameTime = departures.get(key);
+    if (sameTime == null || !sameTime.remove(travel)) {
+      return false;
+    }
+    if (sameTime.isEmpty()) {
+      departures.remove(key);
+    }
+    size--;
+    return true;
+  }
+
+  /**
+   * Gets whether this index has no travels.
+   *
+   * @return True if this index is empty
+   */
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Gets the amount of travels in this index.
+   *
+   * @return the amount of travels
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Adds the travels departing between two times, inclusively, to a list.
+   *
+   * @param lower
+   *          the earliest departure time, in milliseconds
+   * @param upper
+   *          the latest departure time, in milliseconds
+   * @param destinationId
+   *          the location id of the destination to match; UNKNOWN will match
+   *          all
+   * @param includeFull
+   *          whether to include full travels or not
+   * @param out
+   *          the list to add the matching travels to
+   */
+  void collect(long lower, long upper, int destinationId, boolean includeFull,
+      Collection<SingleTravel> out) {
+    if (lower > upper) {
+      return;
+    }
+    for (Map.Entry<Long, List<SingleTravel>> entry : departures.subMap(lower, true, upper, true)
+        .entrySet()) {
+      for (SingleTravel travel : entry.getValue()) {
+        if ((destinationId == LocationRegistry.UNKNOWN
+            || travel.getDestinationId() == destinationId)
+            && (includeFull || travel.getAvailableCapacity() > 0)) {
+          out.add(travel);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds every travel in this index to a list, in order of departure.
+   *
+   * @param destinationId
+   *          the location id of the destination to match; UNKNOWN will match
+   *          all
+   * @param includeFull
+   *          whether to include full travels or not
+   * @param out
+   *          the list to add the matching travels to
+   */
+  void collectAll(int destinationId, boolean includeFull, Collection<SingleTravel> out) {
+    collect(Long.MIN_VALUE, Long.MAX_VALUE, destinationId, includeFull, out);
+  }
+}
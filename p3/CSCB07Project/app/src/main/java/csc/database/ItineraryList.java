@@ -0,0 +1,52 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The itineraries found by a search, along with whether the search stopped
+ * early at one of its limits, so that the itineraries may not be all of them.
+ */
+public class ItineraryList extends ArrayList<Itinerary> {
+  /**
+   * Serializable implementation.
+   */
+  private static final long serialVersionUID = 6119042873360217734L;
+
+  /**
+   * Whether the search stopped early.
+   */
+  private final boolean truncated;
+
+  /**
+   * Creates an empty list, of a search that found everything.
+   */
+  public ItineraryList() {
+    this.truncated = false;
+  }
+
+  /**
+   * Creates a list of the itineraries found by a search.
+   *
+   * @param itineraries
+   *          the itineraries found
+   * @param truncated
+   *          whether the search stopped early
+   */
+  public ItineraryList(Collection<Itinerary> itineraries, boolean truncated) {
+    super(itineraries);
+    this.truncated = truncated;
+  }
+
+  /**
+   * Gets whether the search stopped early at one of its limits, so that more
+   * itineraries may match.
+   *
+   * @return True if the itineraries may be incomplete
+   */
+  public boolean isTruncated() {
+    return truncated;
+  }
+}
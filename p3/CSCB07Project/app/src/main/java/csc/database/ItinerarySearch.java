@@ -0,0 +1,366 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+import csc.travel.LocationRegistry;
+import csc.travel.SingleTravel;
+import csc.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single depth-first search for the itineraries between two locations,
+ * bounded by a set of SearchLimits. Travels to locations that cannot reach the
+ * destination in time, or within the hops left, are never followed. Each
+ * search is used once, by one thread.
+ */
+class ItinerarySearch {
+  /**
+   * The amount of travels looked at between checks of the deadline and of
+   * interruption.
+   */
+  private static final int DEADLINE_INTERVAL = 64;
+
+  /**
+   * The database to search in.
+   */
+  private final MainDatabase database;
+  /**
+   * The location id to end the itineraries at.
+   */
+  private final int destinationId;
+  /**
+   * How every location can reach the destination.
+   */
+  private final ConnectionGraph.Reach reach;
+  /**
+   * The limits of this search.
+   */
+  private final SearchLimits limits;
+  /**
+   * The itineraries found so far.
+   */
+  private final ArrayList<Itinerary> results;
+  /**
+   * The arrival time and cost of the best partial itineraries reaching each
+   * location. Only used when pruning dominated itineraries.
+   */
+  private final Map<Integer, List<Label>> labels;
+  /**
+   * The time at which the search stops, from System.nanoTime(); 0 is never.
+   */
+  private final long deadline;
+  /**
+   * The amount of partial itineraries expanded.
+   */
+  private int expanded;
+  /**
+   * The amount of travels looked at, whether or not they were followed, for
+   * checking the deadline.
+   */
+  private int steps;
+  /**
+   * The amount of travels not followed because the destination cannot be
+   * reached from them.
+   */
+  private int pruned;
+  /**
+   * Whether a limit was reached, so the results may be incomplete.
+   */
+  private boolean truncated;
+  /**
+   * Whether the search stopped because its time ran out, or its thread was
+   * interrupted.
+   */
+  private boolean timedOut;
+  /**
+   * Whether the search should stop immediately.
+   */
+  private boolean stopped;
+
+  /**
+   * Creates a new search.
+   *
+   * @param database
+   *          the database to search in
+   * @param destinationId
+   *          the location id to end the itineraries at
+   * @param reach
+   *          how every location can reach the destination
+   * @param limits
+   *          the limits of this search
+   */
+  ItinerarySearch(MainDatabase database, int destinationId, ConnectionGraph.Reach reach,
+      SearchLimits limits) {
+    this.database = database;
+    this.destinationId = destinationId;
+    this.reach = reach;
+    this.limits = limits;
+    this.results = new ArrayList<>();
+    this.labels = new HashMap<>();
+    if (limits.getTimeout() > 0) {
+      this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(limits.getTimeout());
+    } else {
+      this.deadline = 0;
+    }
+  }
+
+  /**
+   * Finds the itineraries departing from origin on the given date.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param originId
+   *          the location id to start the sequence
+   * @return a list of the itineraries found, in the order found
+   */
+  ArrayList<Itinerary> run(Date date, int originId) {
+    if (reach.getHops(originId) != ConnectionGraph.UNREACHABLE) {
+      expand(date, null, originId, null);
+    }
+    return results;
+  }
+
+  /**
+   * Finds the itineraries that start with a non-empty partial itinerary.
+   *
+   * @param prefix
+   *          the partial itinerary to continue from
+   * @return a list of the itineraries found, in the order found
+   */
+  ArrayList<Itinerary> run(PartialItinerary prefix) {
+    visit(prefix);
+    return results;
+  }
+
+  /**
+   * Gets the itineraries found by the search.
+   *
+   * @return a list of the itineraries found, in the order found
+   */
+  ArrayList<Itinerary> getResults() {
+    return results;
+  }
+
+  /**
+   * Gets whether a limit was reached during the search.
+   *
+   * @return True if the results may be incomplete
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Gets whether the search stopped because its time ran out, or its thread
+   * was interrupted. Unlike the other limits, this depends on how busy the
+   * device was, so the same search may find more itineraries next time.
+   *
+   * @return True if the timeout was reached
+   */
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  /**
+   * Gets the amount of partial itineraries expanded during the search.
+   *
+   * @return the amount of expansions
+   */
+  int getExpanded() {
+    return expanded;
+  }
+
+  /**
+   * Gets the amount of travels not followed because the destination cannot be
+   * reached from them.
+   *
+   * @return the amount of travels pruned
+   */
+  int getPruned() {
+    return pruned;
+  }
+
+  /**
+   * Finds all itineraries that start with path and arrive at the destination,
+   * and adds them to the results.
+   *
+   * @param path
+   *          the running itinerary
+   */
+  private void visit(PartialItinerary path) {
+    if (path.getDestinationId() == destinationId) {
+      // no more itineraries should be made, we've reached the destination
+      if (results.size() >= limits.getMaxResults()) {
+        stop(); // only now is there one more than the limit
+        return;
+      }
+      results.add(path.toItinerary());
+      return;
+    }
+    if (path.size() >= limits.getMaxHops()) {
+      truncated = true;
+      return;
+    }
+    // repeat process with new date range and origin
+    long arrival = path.getEndTime();
+    Date lower = new Date(arrival + Constants.MIN_STOPOVER);
+    Date upper = new Date(arrival + Constants.MAX_STOPOVER);
+    expand(lower, upper, path.getDestinationId(), path);
+  }
+
+  /**
+   * Continues path with every travel departing from origin in the time range.
+   *
+   * @param lower
+   *          the date to start the sequence
+   * @param upper
+   *          the date to start the sequence, upper bound; null will only match
+   *          the same day as lower
+   * @param originId
+   *          the location id to start the sequence
+   * @param path
+   *          the running itinerary; null if none has been started
+   */
+  private void expand(Date lower, Date upper, int originId, PartialItinerary path) {
+    // get all travels originating from origin and in the appropriate time range
+    List<SingleTravel> found = database.listTravels(lower, upper, originId,
+        LocationRegistry.UNKNOWN, false);
+
+    for (SingleTravel st : found) {
+      if (stopped || isExpired()) {
+        return;
+      }
+      int nextId = st.getDestinationId();
+      if (isDeadEnd(st, path == null ? 1 : path.size() + 1)) {
+        continue;
+      }
+      // if we haven't visited this location...
+      if (path == null || !path.containsOrigin(nextId)) {
+        PartialItinerary next = path == null ? PartialItinerary.start(st) : path.extend(st);
+        if (limits.isPruningDominated() && nextId != destinationId && isDominated(next)) {
+          truncated = true;
+          continue;
+        }
+        expanded++;
+        visit(next);
+      }
+    }
+    // if no travels are found, an itinerary from this location cannot be made
+  }
+
+  /**
+   * Checks whether the destination cannot be reached after a travel, in time
+   * or within the hops left.
+   *
+   * @param st
+   *          the travel to check
+   * @param hops
+   *          the amount of travels taken, including st
+   * @return True if st should not be followed
+   */
+  private boolean isDeadEnd(SingleTravel st, int hops) {
+    int locationId = st.getDestinationId();
+    if (locationId == destinationId) {
+      return false;
+    }
+    if (!reach.canReach(locationId, st.getEndTime().getTime())) {
+      pruned++;
+      return true;
+    }
+    if (hops + reach.getHops(locationId) > limits.getMaxHops()) {
+      pruned++;
+      truncated = true; // it might reach the destination with more hops
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether another partial itinerary has reached the same location no
+   * later and no more expensively than path. If not, path is recorded as one
+   * of the best ways to reach the location.
+   *
+   * @param path
+   *          the partial itinerary to check
+   * @return True if path is dominated and should be dropped
+   */
+  private boolean isDominated(PartialItinerary path) {
+    long arrival = path.getEndTime();
+    double cost = path.getCost();
+
+    List<Label> best = labels.get(path.getDestinationId());
+    if (best == null) {
+      best = new ArrayList<>(2);
+      labels.put(path.getDestinationId(), best);
+    }
+    Iterator<Label> iter = best.iterator();
+    while (iter.hasNext()) {
+      Label label = iter.next();
+      if (label.arrival <= arrival && label.cost <= cost) {
+        return true;
+      }
+      if (arrival <= label.arrival && cost <= label.cost) {
+        iter.remove(); // the new itinerary is better
+      }
+    }
+    best.add(new Label(arrival, cost));
+    return false;
+  }
+
+  /**
+   * Checks whether the deadline has passed or the thread was interrupted,
+   * stopping the search if either happened.
+   *
+   * @return True if the search should stop
+   */
+  private boolean isExpired() {
+    if (++steps % DEADLINE_INTERVAL == 0
+        && ((deadline != 0 && System.nanoTime() > deadline)
+            || Thread.currentThread().isInterrupted())) {
+      timedOut = true;
+      stop();
+    }
+    return stopped;
+  }
+
+  /**
+   * Stops the search, marking the results as incomplete.
+   */
+  private void stop() {
+    stopped = true;
+    truncated = true;
+  }
+
+  /**
+   * The arrival time and cost of a partial itinerary at a location.
+   */
+  private static final class Label {
+    /**
+     * The arrival time, in milliseconds.
+     */
+    private final long arrival;
+    /**
+     * The total cost so far.
+     */
+    private final double cost;
+
+    /**
+     * Creates a new label.
+     *
+     * @param arrival
+     *          the arrival time, in milliseconds
+     * @param cost
+     *          the total cost so far
+     */
+    private Label(long arrival, double cost) {
+      this.arrival = arrival;
+      this.cost = cost;
+    }
+  }
+}
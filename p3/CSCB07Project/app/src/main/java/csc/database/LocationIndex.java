@@ -0,0 +1,210 @@
+package csc.database;
+
+import csc.travel.SingleTravel;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * An index of every location that travels depart from or arrive at, sorted by
+ * name, for completing a location as it is typed. The locations starting with
+ * a prefix are a range of the index, and are ranked by how many travels
+ * depart from them.
+ */
+class LocationIndex implements Serializable {
+  /**
+   * Serializable implementation.
+   */
+  private static final long serialVersionUID = 2930586713962154170L;
+  /**
+   * Ranks the locations with the most departures first, then by name.
+   */
+  private static final Comparator<Location> BY_RANK = new Comparator<Location>() {
+    @Override
+    public int compare(Location first, Location second) {
+      if (first.departures != second.departures) {
+        return first.departures > second.departures ? -1 : 1;
+      }
+      return first.key.compareTo(second.key);
+    }
+  };
+
+  /**
+   * The locations, by their lower case name.
+   */
+  private final NavigableMap<String, Location> locations;
+
+  /**
+   * Creates a new empty LocationIndex.
+   */
+  LocationIndex() {
+    this.locations = new TreeMap<>();
+  }
+
+  /**
+   * Counts the origin and destination of a travel.
+   *
+   * @param travel
+   *          the travel to count
+   */
+  void add(SingleTravel travel) {
+    count(travel.getOrigin(), 1, 1);
+    count(travel.getDestination(), 1, 0);
+  }
+
+  /**
+   * Counts several travels at a location at once, as when reading a catalog
+   * without creating its travels.
+   *
+   * @param name
+   *          the name of the location
+   * @param travels
+   *          the amount of travels departing from or arriving at the location
+   * @param departures
+   *          the amount of those travels departing from the location
+   */
+  void add(String name, int travels, int departures) {
+    count(name, travels, departures);
+  }
+
+  /**
+   * Stops counting the origin and destination of a travel. The travel must
+   * still have the locations it was counted with.
+   *
+   * @param travel
+   *          the travel to stop counting
+   */
+  void remove(SingleTravel travel) {
+    uncount(travel.getOrigin(), 1);
+    uncount(travel.getDestination(), 0);
+  }
+
+  /**
+   * Counts travels at a location, adding the location if it is new.
+   *
+   * @param name
+   *          the name of the location
+   * @param travels
+   *          the amount of travels
+   * @param departures
+   *          the amount of those travels departing from the location
+   */
+  private void count(String name, int travels, int departures) {
+    String key = name.toLowerCase();
+    Location location = locations.get(key);
+    if (location == null) {
+      location = new Location(key, name);
+      locations.put(key, location);
+    }
+    location.travels += travels;
+    location.departures += departures;
+  }
+
+  /**
+   * Stops counting a travel at a location, removing the location once no
+   * travels are left there.
+   *
+   * @param name
+   *          the name of the location
+   * @param departures
+   *          1 if the travel departs from the location, otherwise 0
+   */
+  private void uncount(String name, int departures) {
+    String key = name.toLowerCase();
+    Location location = locations.get(key);
+    if (location == null) {
+      return;
+    }
+    location.departures -= departures;
+    if (--location.travels == 0) {
+      locations.remove(key);
+    }
+  }
+
+  /**
+   * Gets the amount of locations in this index.
+   *
+   * @return the amount of locations
+   */
+  int size() {
+    return locations.size();
+  }
+
+  /**
+   * Gets the locations starting with a prefix, ignoring case, with the most
+   * departures first.
+   *
+   * @param prefix
+   *          the start of the location names
+   * @param max
+   *          the maximum amount of locations to get
+   * @return the names of the locations, as first added
+   */
+  List<String> complete(String prefix, int max) {
+    String from = prefix.toLowerCase();
+    // every name with the prefix sorts before the prefix followed by the last char
+    String to = from + Character.MAX_VALUE;
+    PriorityQueue<Location> best = new PriorityQueue<>(max + 1,
+        Collections.reverseOrder(BY_RANK)); // the worst kept location at the head
+    for (Location location : locations.subMap(from, true, to, false).values()) {
+      best.add(location);
+      if (best.size() > max) {
+        best.poll();
+      }
+    }
+    List<Location> ranked = new ArrayList<>(best);
+    Collections.sort(ranked, BY_RANK);
+    List<String> names = new ArrayList<>(ranked.size());
+    for (Location location : ranked) {
+      names.add(location.name);
+    }
+    return names;
+  }
+
+  /**
+   * A location and its travels.
+   */
+  private static final class Location implements Serializable {
+    /**
+     * Serializable implementation.
+     */
+    private static final long serialVersionUID = -6164284468025335263L;
+    /**
+     * The lower case name of this location.
+     */
+    private final String key;
+    /**
+     * The name of this location, as first added.
+     */
+    private final String name;
+    /**
+     * The amount of travels departing from or arriving at this location.
+     */
+    private int travels;
+    /**
+     * The amount of travels departing from this location.
+     */
+    private int departures;
+
+    /**
+     * Creates a location with no travels.
+     *
+     * @param key
+     *          the lower case name of the location
+     * @param name
+     *          the name of the location
+     */
+    Location(String key, String name) {
+      this.key = key;
+      this.name = name;
+      this.travels = 0;
+      this.departures = 0;
+    }
+  }
+}
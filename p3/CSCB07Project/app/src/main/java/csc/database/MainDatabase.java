@@ -1,22 +1,41 @@
 package csc.database;
 
 import csc.travel.Itinerary;
+import csc.travel.LocationRegistry;
 import csc.travel.SingleTravel;
 import csc.travel.Travel;
+import csc.travel.TravelComparator;
 import csc.travel.TravelType;
+import csc.metrics.Counter;
+import csc.metrics.Gauge;
+import csc.metrics.Histogram;
+import csc.metrics.Metrics;
 import csc.users.RegisteredUser;
 import csc.util.Constants;
+import csc.util.TimeFormat;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +51,98 @@ public class MainDatabase implements Serializable {
    * Serializable implmentation.
    */
   private static final long serialVersionUID = 6719754597423119338L;
+  /**
+   * Orders travels by their origin, then by their departure time.
+   */
+  private static final Comparator<SingleTravel> BY_DEPARTURE = new Comparator<SingleTravel>() {
+    @Override
+    public int compare(SingleTravel first, SingleTravel second) {
+      if (first.getOriginId() != second.getOriginId()) {
+        return first.getOriginId() < second.getOriginId() ? -1 : 1;
+      }
+      return first.getStartTime().compareTo(second.getStartTime());
+    }
+  };
+  /**
+   * The time taken by travel searches answered from the cache, in nanoseconds.
+   */
+  private static final Histogram TRAVEL_SEARCH_CACHED =
+      Metrics.histogram("search.travels.cached.nanos");
+  /**
+   * The time taken by travel searches of one type, in nanoseconds.
+   */
+  private static final Histogram TRAVEL_SEARCH_TYPED =
+      Metrics.histogram("search.travels.typed.nanos");
+  /**
+   * The time taken by travel searches of every type that filter by provider or
+   * have no origin, so that every travel is checked, in nanoseconds.
+   */
+  private static final Histogram TRAVEL_SEARCH_SCAN =
+      Metrics.histogram("search.travels.scan.nanos");
+  /**
+   * The time taken by travel searches of every type that use the departure
+   * index, in nanoseconds.
+   */
+  private static final Histogram TRAVEL_SEARCH_INDEXED =
+      Metrics.histogram("search.travels.indexed.nanos");
+  /**
+   * The amount of travels returned by each travel search.
+   */
+  private static final Histogram TRAVEL_RESULTS = Metrics.histogram("search.travels.results");
+  /**
+   * The time taken by itinerary searches answered from the cache, in
+   * nanoseconds.
+   */
+  private static final Histogram ITINERARY_SEARCH_CACHED =
+      Metrics.histogram("search.itineraries.cached.nanos");
+  /**
+   * The time taken by depth-first itinerary searches, in nanoseconds.
+   */
+  private static final Histogram ITINERARY_SEARCH_EXHAUSTIVE =
+      Metrics.histogram("search.itineraries.exhaustive.nanos");
+  /**
+   * The time taken by depth-first itinerary searches split across threads, in
+   * nanoseconds.
+   */
+  private static final Histogram ITINERARY_SEARCH_PARALLEL =
+      Metrics.histogram("search.itineraries.parallel.nanos");
+  /**
+   * The time taken by best-first itinerary searches, in nanoseconds.
+   */
+  private static final Histogram ITINERARY_SEARCH_BEST_FIRST =
+      Metrics.histogram("search.itineraries.bestFirst.nanos");
+  /**
+   * The time taken by itinerary searches scanning the timetable, in
+   * nanoseconds.
+   */
+  private static final Histogram ITINERARY_SEARCH_SCAN =
+      Metrics.histogram("search.itineraries.scan.nanos");
+  /**
+   * The amount of travels scanned by each timetable scan.
+   */
+  private static final Histogram ITINERARY_SCANNED =
+      Metrics.histogram("search.itineraries.scanned");
+  /**
+   * The amount of partial itineraries expanded by each itinerary search.
+   */
+  private static final Histogram ITINERARY_EXPANDED =
+      Metrics.histogram("search.itineraries.expanded");
+  /**
+   * The amount of itineraries found by each itinerary search.
+   */
+  private static final Histogram ITINERARY_RESULTS =
+      Metrics.histogram("search.itineraries.results");
+  /**
+   * The amount of travels ruled out by the connection graph in each itinerary
+   * search.
+   */
+  private static final Histogram ITINERARY_PRUNED =
+      Metrics.histogram("search.itineraries.pruned");
+  /**
+   * The amount of itinerary searches stopped early by their limits.
+   */
+  private static final Counter ITINERARY_TRUNCATED =
+      Metrics.counter("search.itineraries.truncated");
 
   /**
    * A collection of the users in this database.
@@ -43,17 +154,88 @@ public class MainDatabase implements Serializable {
    */
   private final Map<TravelType, TravelDatabase> travels;
   /**
-   * An indexed collection of the travels originating from each location. Used
-   * for searching.
+   * An indexed collection of the travels originating from each location,
+   * sorted by departure time and stored by location id. Used for searching.
+   */
+  private DepartureIndex[] travelSearch;
+  /**
+   * The locations of the travels, for completing them as they are typed.
+   */
+  private LocationIndex locations;
+  /**
+   * The locations connected by the travels, for ruling out partial
+   * itineraries that cannot reach their destination.
+   */
+  private final ConnectionGraph connections;
+  /**
+   * The version of the travels, changed whenever a travel is added, changed or
+   * removed.
+   */
+  private final AtomicLong travelVersion;
+  /**
+   * The version of the seats left on the travels, changed whenever the travels
+   * change or an itinerary is booked or unbooked.
    */
-  private final Map<String, List<SingleTravel>> travelSearch;
+  private final AtomicLong seatVersion;
+  /**
+   * The results of recent travel searches, valid while travelVersion is.
+   */
+  private transient SearchCache<List<SingleTravel>> travelCache;
+  /**
+   * The results of recent itinerary searches, valid while seatVersion is.
+   */
+  private transient SearchCache<ItineraryList> itineraryCache;
+  /**
+   * The reach of recent destinations, by location id, valid while the version
+   * of the connections is.
+   */
+  private transient SearchCache<ConnectionGraph.Reach> reachCache;
+  /**
+   * Every travel in order of departure, for scanning; null until the next scan
+   * after the travels change.
+   */
+  private transient volatile SingleTravel[] timetable;
+  /**
+   * The lock guarding the users, the travels and their indexes. Every change
+   * holds the write lock; searches, lookups and saves hold the read lock, so
+   * they run together but never see a change half made.
+   */
+  private final ReentrantReadWriteLock lock;
+  /**
+   * The listener told of every change to this database; null if none.
+   */
+  private transient DatabaseListener listener;
+  /**
+   * The catalog that the travels not created yet are read from; null if every
+   * travel of it was created.
+   */
+  private transient volatile TravelCatalog catalog;
+  /**
+   * The travels of the catalog that were created, by their number.
+   */
+  private transient BitSet taken;
+  /**
+   * The origins with travels in the catalog that were not all created yet, by
+   * location id, named as in the catalog.
+   */
+  private transient Map<Integer, String> pendingOrigins;
+  /**
+   * The amount of travels in the catalog that were not created yet.
+   */
+  private transient int remaining;
 
   /**
    * Creates a new empty main database.
    */
   public MainDatabase() {
     this.users = new UserDatabase();
-    this.travelSearch = new HashMap<>();
+    this.travelSearch = new DepartureIndex[0];
+    this.locations = new LocationIndex();
+    this.connections = new ConnectionGraph();
+    this.lock = new ReentrantReadWriteLock();
+    this.travelVersion = new AtomicLong();
+    this.seatVersion = new AtomicLong();
+    createCaches();
 
     // initialize completely and make final
     Map<TravelType, TravelDatabase> travel = new EnumMap<>(TravelType.class);
@@ -63,6 +245,419 @@ public class MainDatabase implements Serializable {
     this.travels = Collections.unmodifiableMap(travel);
   }
 
+  /**
+   * Creates empty caches of search results.
+   */
+  private void createCaches() {
+    this.travelCache = new SearchCache<>(Constants.SEARCH_CACHE_SIZE,
+        Constants.SEARCH_CACHE_TTL);
+    this.itineraryCache = new SearchCache<>(Constants.SEARCH_CACHE_SIZE,
+        Constants.SEARCH_CACHE_TTL);
+    this.reachCache = new SearchCache<>(Constants.SEARCH_CACHE_SIZE,
+        Constants.SEARCH_CACHE_TTL);
+  }
+
+  /**
+   * Records that travels were added, changed or removed, so that the cached
+   * search results are no longer used.
+   */
+  private void travelsChanged() {
+    travelVersion.incrementAndGet();
+    seatsChanged();
+  }
+
+  /**
+   * Records that the seats left on travels changed, so that the cached
+   * itinerary search results are no longer used.
+   */
+  private void seatsChanged() {
+    seatVersion.incrementAndGet();
+  }
+
+  /**
+   * Gets the amount of searches answered with a cached result.
+   *
+   * @return the amount of cache hits
+   */
+  public long getSearchCacheHits() {
+    return travelCache.getHits() + itineraryCache.getHits();
+  }
+
+  /**
+   * Gets the amount of searches that were run, having no cached result.
+   *
+   * @return the amount of cache misses
+   */
+  public long getSearchCacheMisses() {
+    return travelCache.getMisses() + itineraryCache.getMisses();
+  }
+
+  /**
+   * Gets the amount of cached search results dropped for being out of date or
+   * too old, or to make room.
+   *
+   * @return the amount of cache evictions
+   */
+  public long getSearchCacheEvictions() {
+    return travelCache.getEvictions() + itineraryCache.getEvictions();
+  }
+
+  /**
+   * Reports the sizes of the indexes and the use of the search caches of this
+   * database as gauges, replacing those of any database reported before.
+   */
+  public void registerMetrics() {
+    for (final TravelType tt : TravelType.values()) {
+      Metrics.gauge("index.travels." + tt.name().toLowerCase(), new Gauge() {
+        @Override
+        public long getValue() {
+          return travels.get(tt).getValues().size();
+        }
+      });
+    }
+    Metrics.gauge("index.users", new Gauge() {
+      @Override
+      public long getValue() {
+        return users.getValues().size();
+      }
+    });
+    Metrics.gauge("index.locations", new Gauge() {
+      @Override
+      public long getValue() {
+        return locations.size();
+      }
+    });
+    Metrics.gauge("index.departures", new Gauge() {
+      @Override
+      public long getValue() {
+        long count = 0;
+        for (DepartureIndex index : travelSearch) {
+          count += index == null ? 0 : index.size();
+        }
+        return count;
+      }
+    });
+    Metrics.gauge("index.catalog.remaining", new Gauge() {
+      @Override
+      public long getValue() {
+        return catalog == null ? 0 : remaining;
+      }
+    });
+    Metrics.gauge("cache.search.hits", new Gauge() {
+      @Override
+      public long getValue() {
+        return getSearchCacheHits();
+      }
+    });
+    Metrics.gauge("cache.search.misses", new Gauge() {
+      @Override
+      public long getValue() {
+        return getSearchCacheMisses();
+      }
+    });
+    Metrics.gauge("cache.search.evictions", new Gauge() {
+      @Override
+      public long getValue() {
+        return getSearchCacheEvictions();
+      }
+    });
+  }
+
+  /**
+   * Sets the listener to tell of every change to this database.
+   *
+   * @param listener
+   *          the listener to set; null removes it
+   */
+  public void setListener(DatabaseListener listener) {
+    lock.writeLock().lock();
+    try {
+      this.listener = listener;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Stops this database from changing until unlockChanges is called, so that
+   * it can be read whole, as when saving. Lookups and searches still run
+   * meanwhile. No travels of the catalog are created while changes are
+   * locked; getCatalogTravels gets the ones not created yet.
+   */
+  public void lockChanges() {
+    lock.readLock().lock();
+  }
+
+  /**
+   * Lets this database change again after lockChanges.
+   */
+  public void unlockChanges() {
+    lock.readLock().unlock();
+  }
+
+  /**
+   * Backs this database with a catalog of travels. The travels are only
+   * created once they are needed: by id, by origin, or when a search matches
+   * or may follow them. Their locations and connections are counted at once,
+   * from the catalog in place, so that completions and the connection graph
+   * cover them. They are trusted to be valid, and are not told to the
+   * listener; any changes to them are.
+   *
+   * @param catalog
+   *          the catalog to read travels from
+   */
+  public void setCatalog(TravelCatalog catalog) {
+    lock.writeLock().lock();
+    try {
+      this.taken = new BitSet(catalog.size());
+      this.pendingOrigins = new HashMap<>();
+      this.remaining = catalog.size();
+      this.catalog = remaining == 0 ? null : catalog;
+      indexCatalog(catalog);
+      travelsChanged();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Counts the locations and connections of every travel of a catalog without
+   * creating the travels. The travels are not counted again when they are
+   * created. The write lock must be held.
+   *
+   * @param from
+   *          the catalog to count the travels of
+   */
+  private void indexCatalog(TravelCatalog from) {
+    // the catalog shares its strings, so each one is registered once; each
+    // count holds the location id, the travels and the departures
+    Map<String, int[]> counts = new IdentityHashMap<>();
+    for (int i = 0; i < from.size(); i++) {
+      String name = from.getOrigin(i);
+      int[] origin = countOf(counts, name);
+      int[] destination = countOf(counts, from.getDestination(i));
+      if (origin[2]++ == 0) {
+        pendingOrigins.put(origin[0], name);
+      }
+      origin[1]++;
+      destination[1]++;
+      connections.add(origin[0], destination[0], from.getStartTime(i), from.getEndTime(i));
+    }
+    for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+      locations.add(entry.getKey(), entry.getValue()[1], entry.getValue()[2]);
+    }
+  }
+
+  /**
+   * Gets the count of a location while counting a catalog, registering the
+   * location the first time.
+   *
+   * @param counts
+   *          the counts so far, by location name
+   * @param name
+   *          the name of the location
+   * @return the location id, the amount of travels and the amount of
+   *         departures of the location
+   */
+  private static int[] countOf(Map<String, int[]> counts, String name) {
+    int[] count = counts.get(name);
+    if (count == null) {
+      count = new int[] { LocationRegistry.register(name), 0, 0 };
+      counts.put(name, count);
+    }
+    return count;
+  }
+
+  /**
+   * Creates a travel of the catalog and puts it into this database, unless it
+   * was created before. The write lock must be held.
+   *
+   * @param index
+   *          the number of the travel in the catalog
+   */
+  private void take(int index) {
+    if (taken.get(index)) {
+      return;
+    }
+    taken.set(index);
+    SingleTravel travel = catalog.getTravel(index);
+    // its locations and connection were counted when the catalog was set
+    addDeparture(travels.get(travel.getType()).add(travel));
+    if (--remaining == 0) { // every travel was created
+      catalog = null;
+      taken = null;
+      pendingOrigins = null;
+    }
+  }
+
+  /**
+   * Creates every travel of the catalog departing from a location. Called
+   * before searches from the location, without holding a lock.
+   *
+   * @param origin
+   *          the location, ignoring case
+   */
+  private void takeFrom(String origin) {
+    takeFrom(Collections.singletonList(LocationRegistry.lookup(origin)));
+  }
+
+  /**
+   * Creates every travel of the catalog departing from several locations.
+   * Called without holding a lock.
+   *
+   * @param origins
+   *          the location ids of the locations
+   */
+  private void takeFrom(Collection<Integer> origins) {
+    if (catalog == null || origins.isEmpty()) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      for (Integer id : origins) {
+        TravelCatalog from = catalog;
+        String origin = from == null ? null : pendingOrigins.remove(id);
+        if (origin == null) {
+          continue;
+        }
+        int end = from.endFrom(origin);
+        for (int i = from.firstFrom(origin); i < end && catalog != null; i++) {
+          take(i);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Creates the travels of the catalog that an itinerary search may follow:
+   * those departing from the locations that the connection graph puts between
+   * the origin and the destination. The rest are never followed, since the
+   * graph counts every travel of the catalog. Called without holding a lock.
+   *
+   * @param originId
+   *          the location id of the origin
+   * @param destinationId
+   *          the location id of the destination
+   * @param maxHops
+   *          the most travels in an itinerary
+   */
+  private void takeBetween(int originId, int destinationId, int maxHops) {
+    if (catalog == null) {
+      return;
+    }
+    List<Integer> origins = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      if (catalog == null) {
+        return;
+      }
+      for (Integer id : connections.between(originId, reachOf(destinationId), maxHops)) {
+        if (pendingOrigins.containsKey(id)) {
+          origins.add(id);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    takeFrom(origins);
+  }
+
+  /**
+   * Creates the travels of the catalog that match a search without an
+   * origin. The others are only read in place. Called without holding a lock;
+   * if the thread holds the read lock, as while changes are locked, nothing is
+   * created, since a read lock cannot be upgraded.
+   *
+   * @param date
+   *          the date the travels depart on; null matches all
+   * @param destination
+   *          the destination of the travels, ignoring case; null matches all
+   * @param provider
+   *          the provider of the travels; null matches all
+   * @param type
+   *          the type of the travels; null matches all
+   */
+  private void takeMatching(Date date, String destination, String provider, TravelType type) {
+    if (catalog == null || lock.getReadHoldCount() > 0) {
+      return;
+    }
+    long lower = date == null ? 0 : date.getTime();
+    int day = date == null ? 0 : TimeFormat.toEpochDay(lower);
+    List<Integer> matching = new ArrayList<>();
+    TravelCatalog from;
+    lock.readLock().lock();
+    try {
+      from = catalog;
+      if (from == null) {
+        return;
+      }
+      for (int i = taken.nextClearBit(0); i < from.size(); i = taken.nextClearBit(i + 1)) {
+        long departure = from.getStartTime(i);
+        if ((type == null || from.getType(i) == type)
+            && (date == null
+                || (departure >= lower && TimeFormat.toEpochDay(departure) == day))
+            && (destination == null || destination.equalsIgnoreCase(from.getDestination(i)))
+            && (provider == null || provider.equals(from.getProvider(i)))) {
+          matching.add(i);
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    if (matching.isEmpty()) {
+      return;
+    }
+    lock.writeLock().lock();
+    try {
+      for (int i = 0; i < matching.size() && catalog == from; i++) {
+        take(matching.get(i));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the travels of a type in the catalog that were not created yet. They
+   * are as the catalog holds them, since a travel is created before it is
+   * changed or removed. The list can be read after changes are unlocked, and
+   * creates a new travel, which is not part of this database, on every read.
+   *
+   * @param type
+   *          the type of the travels
+   * @return the travels not created yet
+   */
+  public List<SingleTravel> getCatalogTravels(TravelType type) {
+    lock.readLock().lock();
+    try {
+      final TravelCatalog from = catalog;
+      if (from == null) {
+        return Collections.emptyList();
+      }
+      final List<Integer> pending = new ArrayList<>();
+      for (int i = taken.nextClearBit(0); i < from.size(); i = taken.nextClearBit(i + 1)) {
+        if (from.getType(i) == type) {
+          pending.add(i);
+        }
+      }
+      return new AbstractList<SingleTravel>() {
+        @Override
+        public SingleTravel get(int index) {
+          return from.getTravel(pending.get(index));
+        }
+
+        @Override
+        public int size() {
+          return pending.size();
+        }
+      };
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
   /**
    * Changes the email of a user.
    * 
@@ -72,7 +667,16 @@ public class MainDatabase implements Serializable {
    *          the email to change to
    */
   public void changeEmail(RegisteredUser ru, String email) {
-    users.changeId(ru, email);
+    lock.writeLock().lock();
+    try {
+      String oldEmail = ru.getIdentifier();
+      users.changeId(ru, email);
+      if (listener != null && !oldEmail.equals(ru.getIdentifier())) {
+        listener.userRenamed(oldEmail, ru.getIdentifier());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -84,7 +688,18 @@ public class MainDatabase implements Serializable {
    *          the id to change to
    */
   public void changeIdentifier(SingleTravel st, String id) {
-    travels.get(st.getType()).changeId(st, id);
+    lock.writeLock().lock();
+    try {
+      String oldId = st.getIdentifier();
+      getTravel(st.getType(), id); // so that a travel of the catalog with the id is seen
+      travels.get(st.getType()).changeId(st, id);
+      travelsChanged();
+      if (listener != null && !oldId.equals(st.getIdentifier())) {
+        listener.travelRenamed(st.getType(), oldId, st.getIdentifier());
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -94,23 +709,7 @@ public class MainDatabase implements Serializable {
    *          the travel to add to this database.
    */
   public void addTravel(SingleTravel travel) {
-    // it's invalid if it's expired, or cyclic, or has invalid time
-    if (travel.isInvalid()) {
-      log.log(Level.INFO, "A travel of ID {0} and type {1} has invalid data. Skipping.",
-          new Object[] { travel.getIdentifier(), travel.getType() });
-      return;
-    }
-    SingleTravel old = getTravel(travel.getType(), travel.getIdentifier());
-    if (old != null) {
-      if (old.equals(travel)) { // nothing updated
-        return;
-      }
-      removeTravelIndex(old);
-    }
-    travel.resetUsers();
-    // get the persisting object, then add it
-    // if there exists one, it will be updated and gotten
-    addTravelIndex(travels.get(travel.getType()).add(travel));
+    addTravels(Collections.singletonList(travel));
   }
 
   /**
@@ -122,10 +721,19 @@ public class MainDatabase implements Serializable {
    *          the id of the travel
    */
   public void removeTravel(TravelType type, String id) {
-    SingleTravel old = getTravel(type, id);
-    if (old != null) {
-      removeTravelIndex(old);
-      travels.get(type).remove(id);
+    lock.writeLock().lock();
+    try {
+      SingleTravel old = getTravel(type, id);
+      if (old != null) {
+        removeTravelIndex(old);
+        travels.get(type).remove(id);
+        travelsChanged();
+        if (listener != null) {
+          listener.travelRemoved(type, id);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
@@ -136,69 +744,403 @@ public class MainDatabase implements Serializable {
    *          the travel object to remove
    */
   private void removeTravelIndex(SingleTravel travel) {
-    // if first occurrence, add an empty set
-    String origin = travel.getOrigin().toLowerCase();
-    if (travelSearch.containsKey(origin)) {
-      List<SingleTravel> index = travelSearch.get(origin);
+    removeDeparture(travel);
+
+    // to remove this travel completely, we remove it from the itineraries as
+    // well (thus making the itinerary invalid and needed to be replaced)
+    removeBookings(Collections.singletonList(travel));
+    travel.resetUsers();
+  }
+
+  /**
+   * Removes a travel from the index of the travels departing from its origin.
+   *
+   * @param travel
+   *          the travel object to remove
+   */
+  private void removeDeparture(SingleTravel travel) {
+    locations.remove(travel);
+    connections.remove(travel);
+    timetable = null;
+    DepartureIndex index = getDepartures(travel.getOriginId());
+    if (index != null) {
       index.remove(travel);
       if (index.isEmpty()) { // remove it altogether
-        travelSearch.remove(origin);
+        travelSearch[travel.getOriginId()] = null;
       }
     }
+  }
 
-    // to remove this travel completely, we remove it from the itineraries as
-    // well (thus making the itinerary invalid and needed to be replaced)
-    for (RegisteredUser ru : users.getValues()) {
-      ru.removeTravel(travel);
+  /**
+   * Removes the itineraries that contain any of several travels, visiting only
+   * the users who booked them, once each.
+   *
+   * @param changed
+   *          the travels to remove from the itineraries
+   */
+  private void removeBookings(Collection<SingleTravel> changed) {
+    Set<SingleTravel> removed = Collections.newSetFromMap(
+        new IdentityHashMap<SingleTravel, Boolean>());
+    Set<RegisteredUser> affected = Collections.newSetFromMap(
+        new IdentityHashMap<RegisteredUser, Boolean>());
+    for (SingleTravel travel : changed) {
+      removed.add(travel);
+      affected.addAll(travel.getBookings());
+    }
+    for (RegisteredUser ru : affected) {
+      ru.removeTravels(removed);
     }
-    travel.resetUsers();
   }
 
+
   /**
    * Indexes a travel for searching.
    *
-   * @param travel
-   *          the travel object to index
+   * @param travel
+   *          the travel object to index
+   */
+  private void addTravelIndex(SingleTravel travel) {
+    addDeparture(travel);
+    locations.add(travel);
+    connections.add(travel);
+  }
+
+  /**
+   * Indexes a travel by its departure only, for a travel of the catalog whose
+   * locations and connection are already counted.
+   *
+   * @param travel
+   *          the travel object to index
+   */
+  private void addDeparture(SingleTravel travel) {
+    // if first occurrence, add an empty set
+    int origin = travel.getOriginId();
+    DepartureIndex index = getDepartures(origin);
+    if (index == null) {
+      if (origin >= travelSearch.length) { // grow to fit every location so far
+        travelSearch = Arrays.copyOf(travelSearch,
+            Math.max(origin + 1, LocationRegistry.maxId() + 1));
+      }
+      index = new DepartureIndex();
+      travelSearch[origin] = index;
+    }
+    index.add(travel);
+    timetable = null;
+  }
+
+  /**
+   * Indexes several travels for searching, sorting them so that each location
+   * and departure time is looked up once.
+   *
+   * @param added
+   *          the travel objects to index
+   */
+  private void addTravelIndexes(List<SingleTravel> added) {
+    if (added.isEmpty()) {
+      return;
+    }
+    if (LocationRegistry.maxId() >= travelSearch.length) { // grow to fit every location
+      travelSearch = Arrays.copyOf(travelSearch, LocationRegistry.maxId() + 1);
+    }
+    for (SingleTravel travel : added) {
+      locations.add(travel);
+      connections.add(travel);
+    }
+    timetable = null;
+    SingleTravel[] sorted = added.toArray(new SingleTravel[added.size()]);
+    Arrays.sort(sorted, BY_DEPARTURE);
+    List<SingleTravel> all = Arrays.asList(sorted);
+    for (int from = 0; from < sorted.length;) {
+      int origin = sorted[from].getOriginId();
+      int to = from + 1;
+      while (to < sorted.length && sorted[to].getOriginId() == origin) {
+        to++;
+      }
+      if (travelSearch[origin] == null) {
+        travelSearch[origin] = new DepartureIndex();
+      }
+      travelSearch[origin].addAll(all.subList(from, to));
+      from = to;
+    }
+  }
+
+  /**
+   * Gets the index of the travels originating from a location.
+   *
+   * @param originId
+   *          the location id of the origin
+   * @return the index; null if no travels originate from the location
+   */
+  private DepartureIndex getDepartures(int originId) {
+    if (originId <= LocationRegistry.UNKNOWN || originId >= travelSearch.length) {
+      return null;
+    }
+    return travelSearch[originId];
+  }
+
+  /**
+   * Adds travel info to this database in one batch. Duplicates in the batch
+   * are resolved first, with later travels replacing earlier ones, so each id
+   * is only looked up once. The itineraries booked with any changed travel are
+   * removed in one pass over the users who booked them, and the new travels are
+   * indexed for searching together.
+   *
+   * @param toAdd
+   *          the travels to add to this database.
+   * @return the amounts of travels added, updated, unchanged and skipped for
+   *         invalid data; a travel replaced later in the batch is not counted
+   */
+  public AddCounts addTravels(Iterable<SingleTravel> toAdd) {
+    AddCounts counts = new AddCounts();
+    Map<TravelType, Map<String, SingleTravel>> staged = new EnumMap<>(TravelType.class);
+    for (SingleTravel travel : toAdd) {
+      // it's invalid if it's expired, or cyclic, or has invalid time
+      if (travel.isInvalid()) {
+        counts.countSkipped();
+        if (log.isLoggable(Level.INFO)) { // don't build the parameters for nothing
+          log.log(Level.INFO, "A travel of ID {0} and type {1} has invalid data. Skipping.",
+              new Object[] { travel.getIdentifier(), travel.getType() });
+        }
+        continue;
+      }
+      Map<String, SingleTravel> ofType = staged.get(travel.getType());
+      if (ofType == null) {
+        ofType = new LinkedHashMap<>();
+        staged.put(travel.getType(), ofType);
+      }
+      ofType.put(travel.getIdentifier(), travel);
+    }
+    if (staged.isEmpty()) {
+      return counts;
+    }
+
+    lock.writeLock().lock();
+    try {
+      List<SingleTravel> pending = new ArrayList<>();
+      List<SingleTravel> changed = new ArrayList<>();
+      for (Map<String, SingleTravel> ofType : staged.values()) {
+        for (SingleTravel travel : ofType.values()) {
+          SingleTravel old = getTravel(travel.getType(), travel.getIdentifier());
+          if (old == null) {
+            counts.countAdded();
+          } else if (old.equals(travel)) { // nothing updated
+            counts.countUnchanged();
+            continue;
+          } else {
+            counts.countUpdated();
+            changed.add(old);
+          }
+          pending.add(travel);
+        }
+      }
+
+      // unbook before the old travels are updated, while they still match;
+      // seats claimed by bookings not made yet stay counted until given back
+      removeBookings(changed);
+      for (SingleTravel old : changed) {
+        removeDeparture(old);
+      }
+
+      List<SingleTravel> added = new ArrayList<>(pending.size());
+      for (SingleTravel travel : pending) {
+        travel.resetUsers();
+        // get the persisting object, then add it
+        // if there exists one, it will be updated and gotten
+        added.add(travels.get(travel.getType()).add(travel));
+      }
+      addTravelIndexes(added);
+      if (!added.isEmpty()) {
+        travelsChanged();
+      }
+      if (listener != null) {
+        for (SingleTravel travel : added) {
+          listener.travelAdded(travel);
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return counts;
+  }
+
+  /**
+   * Adds user info to this database.
+   *
+   * @param user
+   *          the user to add to this database. Existing ones are replaced.
+   */
+  public void addUser(RegisteredUser user) {
+    lock.writeLock().lock();
+    try {
+      RegisteredUser added = users.add(user);
+      if (listener != null) {
+        listener.userChanged(added);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds user info to this database.
+   *
+   * @param user
+   *          the users to add to this database. Existing ones are replaced.
+   * @return the amounts of users added and updated; a user given again later
+   *         in the batch is counted once
+   */
+  public AddCounts addUsers(Iterable<RegisteredUser> user) {
+    AddCounts counts = new AddCounts();
+    Set<String> seen = new HashSet<>();
+    lock.writeLock().lock();
+    try {
+      for (RegisteredUser ru : user) {
+        // a user given again replaces the one counted earlier in the batch
+        if (seen.add(ru.getIdentifier())) {
+          if (users.get(ru.getIdentifier()) == null) {
+            counts.countAdded();
+          } else {
+            counts.countUpdated();
+          }
+        }
+        addUser(ru);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return counts;
+  }
+
+  /**
+   * Removes a user from this database, along with their bookings.
+   *
+   * @param email
+   *          the email of the user
+   */
+  public void removeUser(String email) {
+    lock.writeLock().lock();
+    try {
+      RegisteredUser ru = users.get(email);
+      if (ru == null) {
+        return;
+      }
+      for (Itinerary it : new ArrayList<>(ru.getBookedItineraries())) {
+        ru.removeItinerary(it);
+      }
+      seatsChanged();
+      users.remove(email);
+      if (listener != null) {
+        listener.userRemoved(email);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Books an itinerary for a user. The seats are claimed on every travel of it
+   * before the lock is taken, so bookings of a popular travel only contend on
+   * its seat count, and fail at once when it is full.
+   *
+   * @param ru
+   *          the user to book for
+   * @param it
+   *          the itinerary to book
+   * @return True if the itinerary was booked; false if a travel was full,
+   *         changed meanwhile, or the user booked it already
    */
-  private void addTravelIndex(SingleTravel travel) {
-    // if first occurrence, add an empty set
-    String origin = travel.getOrigin().toLowerCase();
-    if (!travelSearch.containsKey(origin)) {
-      travelSearch.put(origin, new ArrayList<SingleTravel>());
+  public boolean bookItinerary(RegisteredUser ru, Itinerary it) {
+    if (!it.book()) {
+      seatsChanged(); // searches may have seen the seats given back
+      return false;
+    }
+    lock.writeLock().lock();
+    try {
+      seatsChanged();
+      // a travel may have been changed or removed while the seats were claimed
+      if (!isCurrent(it) || !ru.addBooked(it)) {
+        it.unbook();
+        return false;
+      }
+      if (listener != null) {
+        listener.userChanged(ru);
+      }
+      return true;
+    } finally {
+      lock.writeLock().unlock();
     }
-    travelSearch.get(origin).add(travel);
   }
 
   /**
-   * Adds travel info to this database.
+   * Restores a booking of a user that was saved. Unlike bookItinerary, the
+   * seats are claimed even on full travels, as they were free when it was
+   * booked, and the listener is not told, as the booking is saved already.
    *
-   * @param toAdd
-   *          the travels to add to this database.
+   * @param ru
+   *          the user to book for
+   * @param it
+   *          the itinerary to book
+   * @return True if the itinerary was booked; false if the user booked it
+   *         already
    */
-  public void addTravels(Iterable<SingleTravel> toAdd) {
-    for (SingleTravel tr : toAdd) {
-      addTravel(tr);
+  public boolean restoreItinerary(RegisteredUser ru, Itinerary it) {
+    lock.writeLock().lock();
+    try {
+      if (!ru.addBooked(it)) {
+        log.log(Level.WARNING, "An itinerary booked twice by " + ru.getIdentifier()
+            + " was saved. Skipping.");
+        return false;
+      }
+      for (SingleTravel st : it) {
+        if (st.isFull()) {
+          log.log(Level.WARNING, "The travel of ID " + st.getIdentifier() + " and type "
+              + st.getType() + " has more bookings than seats.");
+        }
+      }
+      it.restore();
+      seatsChanged();
+      return true;
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
   /**
-   * Adds user info to this database.
+   * Gets whether every travel of an itinerary is still in this database, and
+   * still connects to the next. The write lock must be held.
    *
-   * @param user
-   *          the user to add to this database. Existing ones are replaced.
+   * @param it
+   *          the itinerary to check
+   * @return True if the itinerary can be booked
    */
-  public void addUser(RegisteredUser user) {
-    users.add(user);
+  private boolean isCurrent(Itinerary it) {
+    for (SingleTravel st : it) {
+      if (travels.get(st.getType()).get(st.getIdentifier()) != st) {
+        return false;
+      }
+    }
+    return it.isSequential();
   }
 
   /**
-   * Adds user info to this database.
+   * Removes a booked itinerary of a user.
    *
-   * @param user
-   *          the users to add to this database. Existing ones are replaced.
+   * @param ru
+   *          the user to remove the booking of
+   * @param it
+   *          the itinerary to remove
    */
-  public void addUsers(Iterable<RegisteredUser> user) {
-    users.addAll(user);
+  public void removeItinerary(RegisteredUser ru, Itinerary it) {
+    lock.writeLock().lock();
+    try {
+      ru.removeItinerary(it);
+      seatsChanged();
+      if (listener != null) {
+        listener.userChanged(ru);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
@@ -208,27 +1150,44 @@ public class MainDatabase implements Serializable {
    *          the identifier to look for
    */
   public RegisteredUser getUser(String id) {
-    return users.get(id);
+    lock.readLock().lock();
+    try {
+      return users.get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
    * Gets all users from this database.
    *
-   * @return a collection of all the users
+   * @return a copy of the collection of all the users
    */
   public Collection<RegisteredUser> getAllUsers() {
-    return users.getValues();
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(users.getValues());
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
-   * Gets all travels in the database.
+   * Gets all travels in the database. While changes are locked, the travels of
+   * the catalog not created yet are left out; getCatalogTravels gets them.
    *
    * @param type
    *          the type to get all travels for
-   * @return a collection of all the travels
+   * @return a copy of the collection of all the travels
    */
   public Collection<SingleTravel> getAllTravels(TravelType type) {
-    return travels.get(type).getValues();
+    takeMatching(null, null, null, type);
+    lock.readLock().lock();
+    try {
+      return new ArrayList<>(travels.get(type).getValues());
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -241,18 +1200,91 @@ public class MainDatabase implements Serializable {
    * @return the travel with the respective data
    */
   public SingleTravel getTravel(TravelType tt, String id) {
-    return travels.get(tt).get(id);
+    SingleTravel travel;
+    lock.readLock().lock();
+    try {
+      travel = travels.get(tt).get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+    // a read lock cannot be upgraded, so readers only see created travels
+    if (travel != null || id == null || catalog == null || lock.getReadHoldCount() > 0) {
+      return travel;
+    }
+    lock.writeLock().lock();
+    try {
+      TravelCatalog from = catalog;
+      if (from != null) {
+        int index = from.find(tt, id);
+        if (index >= 0) {
+          take(index);
+        }
+      }
+      return travels.get(tt).get(id);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the time zone of the device again, and indexes the travels by their
+   * day of departure in it. The cached search results are dropped, as the days
+   * they were searched on now start at other times.
+   */
+  public void refreshTimeZone() {
+    lock.writeLock().lock();
+    try {
+      TimeFormat.refreshTimeZone();
+      for (TravelType tt : TravelType.values()) {
+        travels.get(tt).refreshDays();
+      }
+      travelsChanged();
+    } finally {
+      lock.writeLock().unlock();
+    }
   }
 
   /**
    * Clears all information from this database.
    */
   public void clear() {
-    users.clear();
-    for (TravelType tt : TravelType.values()) {
-      travels.get(tt).clear();
+    lock.writeLock().lock();
+    try {
+      users.clear();
+      for (TravelType tt : TravelType.values()) {
+        travels.get(tt).clear();
+      }
+      travelSearch = new DepartureIndex[0];
+      locations = new LocationIndex();
+      connections.clear();
+      timetable = null;
+      travelsChanged();
+      catalog = null;
+      taken = null;
+      pendingOrigins = null;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Gets the locations that travels depart from or arrive at, starting with a
+   * prefix, for completing a location as it is typed. The locations that the
+   * most travels depart from come first.
+   *
+   * @param prefix
+   *          the start of the location, ignoring case
+   * @param max
+   *          the maximum amount of locations to get
+   * @return the names of the locations
+   */
+  public List<String> completeLocation(String prefix, int max) {
+    lock.readLock().lock();
+    try {
+      return locations.complete(prefix, max);
+    } finally {
+      lock.readLock().unlock();
     }
-    travelSearch.clear();
   }
 
   /**
@@ -265,7 +1297,12 @@ public class MainDatabase implements Serializable {
    * @return a set of the users that contain the names provided
    */
   public ArrayList<RegisteredUser> searchUsers(String name, String email) {
-    return users.searchUsers(name, email);
+    lock.readLock().lock();
+    try {
+      return users.searchUsers(name, email);
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
@@ -308,58 +1345,161 @@ public class MainDatabase implements Serializable {
    */
   public ArrayList<SingleTravel> searchTravels(Date date, String origin, String destination,
       TravelType type, Comparator<Travel> order) {
+    return searchTravels(date, origin, destination, null, type, order);
+  }
+
+  /**
+   * Returns all travels that depart from origin and arrive at destination on
+   * the given date, by the given provider, in the order specified.
+   *
+   * @param date
+   *          the date to start the travel; a null value will return all travels
+   * @param origin
+   *          the location to start the travel; a null value will return all
+   *          travels
+   * @param destination
+   *          the location to end the travel; a null value will not search
+   * @param provider
+   *          the provider of the travel; a null value will return all travels
+   * @param type
+   *          the type of travel; a null value will return all travels
+   * @param order
+   *          the order to set the travels in; a null value will do nothing
+   * @return a set of the travels that match the specifications
+   */
+  public ArrayList<SingleTravel> searchTravels(Date date, String origin, String destination,
+      String provider, TravelType type, Comparator<Travel> order) {
+    long start = Metrics.now();
+    // read before searching, so a change during the search makes the result stale
+    long version = travelVersion.get();
+    List<Object> key = Arrays.<Object>asList(date == null ? null : date.getTime(),
+        origin == null ? null : origin.toLowerCase(),
+        destination == null ? null : destination.toLowerCase(), provider, type, order);
+    List<SingleTravel> cached = travelCache.get(key, version);
+    if (cached != null) {
+      TRAVEL_SEARCH_CACHED.recordSince(start);
+      TRAVEL_RESULTS.record(cached.size());
+      return new ArrayList<>(cached);
+    }
+    ArrayList<SingleTravel> ret = findTravels(date, origin, destination, provider, type, order);
+    travelCache.put(key, version, new ArrayList<>(ret));
+    TRAVEL_RESULTS.record(ret.size());
+    return ret;
+  }
+
+  /**
+   * Finds all travels that depart from origin and arrive at destination on the
+   * given date, by the given provider, in the order specified.
+   *
+   * @param date
+   *          the date to start the travel; a null value will return all travels
+   * @param origin
+   *          the location to start the travel; a null value will return all
+   *          travels
+   * @param destination
+   *          the location to end the travel; a null value will not search
+   * @param provider
+   *          the provider of the travel; a null value will return all travels
+   * @param type
+   *          the type of travel; a null value will return all travels
+   * @param order
+   *          the order to set the travels in; a null value will do nothing
+   * @return a set of the travels that match the specifications
+   */
+  private ArrayList<SingleTravel> findTravels(Date date, String origin, String destination,
+      String provider, TravelType type, Comparator<Travel> order) {
+    long start = Metrics.now();
+    if (origin != null) {
+      takeFrom(origin);
+    } else {
+      takeMatching(date, destination, provider, type);
+    }
     ArrayList<SingleTravel> ret;
-    if (type != null) { // search only type
-      ret = travels.get(type).searchTravels(date, origin, destination, true);
-    } else if (origin == null) {
-      // we can't use the index; just search all types
-      ret = new ArrayList<>();
-      for (TravelType typ : TravelType.values()) {
-        ret.addAll(travels.get(typ).searchTravels(date, null, destination, true));
+    Histogram shape = TRAVEL_SEARCH_INDEXED;
+    lock.readLock().lock();
+    try {
+      if (type != null) { // search only type
+        shape = TRAVEL_SEARCH_TYPED;
+        ret = travels.get(type).searchTravels(date, origin, destination, provider, true);
+      } else if (origin == null || provider != null) {
+        // the departure index can't help; use the indexes of each type
+        shape = TRAVEL_SEARCH_SCAN;
+        ret = new ArrayList<>();
+        for (TravelType typ : TravelType.values()) {
+          ret.addAll(travels.get(typ).searchTravels(date, origin, destination, provider, true));
+        }
+      } else { // search all
+        int destinationId = LocationRegistry.lookup(destination);
+        if (destination != null && destinationId == LocationRegistry.UNKNOWN) {
+          ret = new ArrayList<>(); // no travels go there
+        } else {
+          ret = listTravels(date, null, LocationRegistry.lookup(origin), destinationId, true);
+        }
       }
-    } else { // search all
-      ret = listTravels(date, null, origin, destination, true);
+    } finally {
+      lock.readLock().unlock();
     }
     if (order != null) {
       Collections.sort(ret, order);
     }
+    shape.recordSince(start);
     return ret;
   }
 
   /**
    * Finds travel information matching the specified arguments, and puts them
-   * into a list. THe list is then copied if needed.
+   * into a list, in order of departure. Only the travels departing within the
+   * time range are visited.
    *
    * @param lower
    *          the date to start the travel; lower bound; a null value will
    *          return all travels
    * @param upper
-   *          the date to start the travel; upper bound; null value skips check
-   * @param origin
-   *          the location to start the travel
-   * @param destination
-   *          the destination to match; null will match all
+   *          the date to start the travel; upper bound; null value only
+   *          matches travels on the same day as lower
+   * @param originId
+   *          the location id to start the travel
+   * @param destinationId
+   *          the location id of the destination to match; UNKNOWN will match
+   *          all
    * @param includeFull
    *          whether to include full travels or not
    * @return a list containing the travel information matched.
    */
-  private ArrayList<SingleTravel> listTravels(Date lower, Date upper, String origin,
-      String destination, boolean includeFull) {
+  ArrayList<SingleTravel> listTravels(Date lower, Date upper, int originId, int destinationId,
+      boolean includeFull) {
 
     ArrayList<SingleTravel> ret = new ArrayList<>();
-    if (travelSearch.containsKey(origin.toLowerCase())) {
-      for (SingleTravel travel : travelSearch.get(origin.toLowerCase())) {
-        if ((destination == null || travel.getDestination().equalsIgnoreCase(destination))
-            && (includeFull || travel.getAvailableCapacity() > 0)
-            && (lower == null || travel.startsWithin(lower, upper))) {
-          ret.add(travel);
-        }
+    DepartureIndex index = getDepartures(originId);
+    if (index != null) {
+      if (lower == null) {
+        index.collectAll(destinationId, includeFull, ret);
+      } else {
+        long upperTime = upper == null ? endOfDay(lower) : upper.getTime();
+        index.collect(lower.getTime(), upperTime, destinationId, includeFull, ret);
       }
-      return ret;
     }
     return ret;
   }
 
+  /**
+   * Gets the last millisecond of the day that a date is on.
+   *
+   * @param date
+   *          the date to check
+   * @return the last millisecond of the same day, in milliseconds
+   */
+  private static long endOfDay(Date date) {
+    Calendar cal = Calendar.getInstance();
+    cal.setTime(date);
+    cal.set(Calendar.HOUR_OF_DAY, 0);
+    cal.set(Calendar.MINUTE, 0);
+    cal.set(Calendar.SECOND, 0);
+    cal.set(Calendar.MILLISECOND, 0);
+    cal.add(Calendar.DAY_OF_MONTH, 1);
+    return cal.getTimeInMillis() - 1;
+  }
+
   /**
    * Returns all itineraries that depart from origin and arrive at destination
    * on the given date.
@@ -392,11 +1532,35 @@ public class MainDatabase implements Serializable {
    */
   public ArrayList<Itinerary> searchItineraries(Date date, String origin, String destination,
       Comparator<Travel> order) {
+    return searchItineraries(date, origin, destination, order, SearchLimits.UNBOUNDED);
+  }
+
+  /**
+   * Returns the itineraries that depart from origin and arrive at destination
+   * on the given date, in the order specified. The search stops early once any
+   * of the limits are reached; only the itineraries found until then are
+   * ordered and returned.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param order
+   *          the order to set the itineraries in; a null value will do nothing
+   * @param limits
+   *          the limits to bound the search by
+   * @return a set of the itineraries that match the specifications, and
+   *         whether the search stopped early
+   */
+  public ItineraryList searchItineraries(Date date, String origin, String destination,
+      Comparator<Travel> order, SearchLimits limits) {
     if (origin.equalsIgnoreCase(destination)) {
       log.log(Level.WARNING, "Incorrect input. origin and destination are the same.");
-      return new ArrayList<>();
+      return new ItineraryList();
     }
-    ArrayList<Itinerary> ret = generateItineraries(date, origin, destination);
+    ItineraryList ret = generateItineraries(date, origin, destination, limits, false);
 
     if (order != null) {
       Collections.sort(ret, order);
@@ -405,8 +1569,9 @@ public class MainDatabase implements Serializable {
   }
 
   /**
-   * Generates all itineraries that depart from origin and arrive at destination
-   * on the given date.
+   * Returns the same itineraries as searchItineraries, in the same order, but
+   * splits the search across several threads. Travels cannot be added or
+   * removed until the search is done.
    *
    * @param date
    *          the date to start the sequence
@@ -414,57 +1579,415 @@ public class MainDatabase implements Serializable {
    *          the location to start the sequence
    * @param destination
    *          the location to end the sequence
-   * @return a list of the itineraries that match the specifications
+   * @param order
+   *          the order to set the itineraries in; a null value will do nothing
+   * @param limits
+   *          the limits to bound the search by; each thread prunes dominated
+   *          itineraries separately, so pruned results may differ
+   * @return a set of the itineraries that match the specifications, and
+   *         whether the search stopped early
    */
-  private ArrayList<Itinerary> generateItineraries(Date date, String origin,
-      String destination) {
-    ArrayList<Itinerary> list = new ArrayList<>();
-    generateItineraries(date, null, origin, destination, list, new Itinerary());
-    return list;
+  public ItineraryList searchItinerariesParallel(Date date, String origin,
+      String destination, Comparator<Travel> order, SearchLimits limits) {
+    if (origin.equalsIgnoreCase(destination)) {
+      log.log(Level.WARNING, "Incorrect input. origin and destination are the same.");
+      return new ItineraryList();
+    }
+    ItineraryList ret = generateItineraries(date, origin, destination, limits, true);
+
+    if (order != null) {
+      Collections.sort(ret, order);
+    }
+    return ret;
   }
 
   /**
-   * Generates all itineraries that start with itin and arrive at destination on
-   * the given date, and adds them to an existing list.
+   * Returns the first itineraries, in the order specified, that depart from
+   * origin and arrive at destination on the given date.
    *
-   * @param lower
+   * @param date
    *          the date to start the sequence
-   * @param upper
-   *          the date to start the sequence, upper bound; null will skip check
    * @param origin
    *          the location to start the sequence
    * @param destination
    *          the location to end the sequence
-   * @param list
-   *          the list to add to
-   * @param itin
-   *          the running itinerary
+   * @param order
+   *          the order to set the itineraries in
+   * @param count
+   *          the maximum amount of itineraries to return
+   * @return the first count itineraries that match the specifications
    */
-  private void generateItineraries(Date lower, Date upper, String origin, String destination,
-      List<Itinerary> list, Itinerary itin) {
+  public ArrayList<Itinerary> searchTopItineraries(Date date, String origin,
+      String destination, Comparator<Travel> order, int count) {
+    return searchTopItineraries(date, origin, destination, order,
+        new SearchLimits(Integer.MAX_VALUE, count, 0L, false));
+  }
 
+  /**
+   * Returns the first itineraries, in the order specified, that depart from
+   * origin and arrive at destination on the given date. Ordering by ascending
+   * total cost or travel time expands the cheapest or shortest partial
+   * itineraries first and stops once enough are found, assuming travels never
+   * have a negative cost; other orders search every itinerary and sort them.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param order
+   *          the order to set the itineraries in
+   * @param limits
+   *          the limits to bound the search by; the maximum results is the
+   *          amount of itineraries to return
+   * @return the first itineraries that match the specifications, and whether
+   *         the search stopped early, before finding every one that might come
+   *         first
+   */
+  public ItineraryList searchTopItineraries(Date date, String origin,
+      String destination, Comparator<Travel> order, SearchLimits limits) {
     if (origin.equalsIgnoreCase(destination)) {
-      // no more itineraries should be made, we've reached the destination
-      list.add(itin);
-      return;
+      log.log(Level.WARNING, "Incorrect input. origin and destination are the same.");
+      return new ItineraryList();
     }
-    // get all travels originating from origin and in the appropriate time range
-    List<SingleTravel> found = listTravels(lower, upper, origin, null, false);
+    if (BestFirstSearch.supports(order)) {
+      long start = Metrics.now();
+      long version = seatVersion.get();
+      int originId = LocationRegistry.lookup(origin);
+      int destinationId = LocationRegistry.lookup(destination);
+      if (originId == LocationRegistry.UNKNOWN || destinationId == LocationRegistry.UNKNOWN) {
+        return new ItineraryList(); // no travels go there
+      }
+      List<Object> key = Arrays.<Object>asList(date == null ? null : date.getTime(), originId,
+          destinationId, order, limits);
+      ItineraryList cached = itineraryCache.get(key, version);
+      if (cached != null) {
+        ITINERARY_SEARCH_CACHED.recordSince(start);
+        ITINERARY_RESULTS.record(cached.size());
+        return new ItineraryList(cached, cached.isTruncated());
+      }
+      takeBetween(originId, destinationId, limits.getMaxHops());
+      BestFirstSearch search;
+      ItineraryList ret;
+      lock.readLock().lock();
+      try {
+        search = new BestFirstSearch(this, destinationId, reachOf(destinationId),
+            (TravelComparator) order, limits);
+        ret = new ItineraryList(search.run(date, originId), search.isTruncated());
+      } finally {
+        lock.readLock().unlock();
+      }
+      ITINERARY_SEARCH_BEST_FIRST.recordSince(start);
+      ITINERARY_EXPANDED.record(search.getExpanded());
+      ITINERARY_PRUNED.record(search.getPruned());
+      ITINERARY_RESULTS.record(ret.size());
+      if (search.isTruncated()) {
+        ITINERARY_TRUNCATED.increment();
+        if (log.isLoggable(Level.FINE)) {
+          log.log(Level.FINE,
+              "Itinerary search from {0} to {1} stopped early after {2} expansions.",
+              new Object[] { origin, destination, search.getExpanded() });
+        }
+      }
+      if (!search.isTimedOut()) { // a partial list would be served until it expires
+        itineraryCache.put(key, version, new ItineraryList(ret, ret.isTruncated()));
+      }
+      return ret;
+    }
+    // the order cannot guide the search; find every itinerary within limits
+    ItineraryList ret = generateItineraries(date, origin, destination,
+        new SearchLimits(limits.getMaxHops(), Integer.MAX_VALUE, limits.getTimeout(),
+            limits.isPruningDominated()), false);
+    if (order != null) {
+      Collections.sort(ret, order);
+    }
+    if (ret.size() > limits.getMaxResults()) {
+      ret = new ItineraryList(ret.subList(0, limits.getMaxResults()), ret.isTruncated());
+    }
+    return ret;
+  }
+
+  /**
+   * Returns the itinerary that departs from origin on the given date and
+   * arrives at destination the earliest, and the cheapest of those. Every
+   * travel is scanned at most once, rather than every itinerary followed.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @return the earliest itinerary; null if none arrive at destination
+   */
+  public Itinerary searchFastestItinerary(Date date, String origin, String destination) {
+    return searchFastestItinerary(date, origin, destination, SearchLimits.UNBOUNDED);
+  }
+
+  /**
+   * Returns the itinerary that departs from origin on the given date and
+   * arrives at destination the earliest, and the cheapest of those, within
+   * the maximum amount of travels.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param limits
+   *          the limits to bound the search by; there is no timeout
+   * @return the earliest itinerary; null if none arrive at destination
+   */
+  public Itinerary searchFastestItinerary(Date date, String origin, String destination,
+      SearchLimits limits) {
+    List<Itinerary> ret = scanItineraries(date, origin, destination, limits, true);
+    return ret.isEmpty() ? null : ret.get(0);
+  }
+
+  /**
+   * Returns the itineraries that depart from origin on the given date and
+   * arrive at destination, leaving out every itinerary that another one
+   * arrives no later than, costs no more than and has no more travels than.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @return the itineraries, earliest arrival first
+   */
+  public ArrayList<Itinerary> searchParetoItineraries(Date date, String origin,
+      String destination) {
+    return searchParetoItineraries(date, origin, destination, SearchLimits.UNBOUNDED);
+  }
 
-    for (SingleTravel st : found) {
-      // if we haven't visited this location...
-      if (!itin.containsOrigin(st.getDestination())) {
-        // repeat process with new date range and origin
-        Date newLower = new Date(st.getEndTime().getTime() + Constants.MIN_STOPOVER);
-        Date newUpper = new Date(st.getEndTime().getTime() + Constants.MAX_STOPOVER);
+  /**
+   * Returns the itineraries that depart from origin on the given date and
+   * arrive at destination, leaving out every itinerary that another one
+   * arrives no later than, costs no more than and has no more travels than.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param limits
+   *          the limits to bound the search by; there is no timeout
+   * @return the itineraries, earliest arrival first, and whether the scan
+   *         stopped early
+   */
+  public ItineraryList searchParetoItineraries(Date date, String origin,
+      String destination, SearchLimits limits) {
+    return scanItineraries(date, origin, destination, limits, false);
+  }
+
+  /**
+   * Scans the timetable for the itineraries that depart from origin on the
+   * given date and arrive at destination.
+   *
+   * @param date
+   *          the date to start the sequence; null will match any date
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param limits
+   *          the limits to bound the search by
+   * @param earliestOnly
+   *          whether only the earliest itinerary is wanted
+   * @return the earliest itinerary, or the itineraries no other one is better
+   *         than in every way
+   */
+  private ItineraryList scanItineraries(Date date, String origin, String destination,
+      SearchLimits limits, boolean earliestOnly) {
+    if (origin.equalsIgnoreCase(destination)) {
+      log.log(Level.WARNING, "Incorrect input. origin and destination are the same.");
+      return new ItineraryList();
+    }
+    long start = Metrics.now();
+    long version = seatVersion.get();
+    int originId = LocationRegistry.lookup(origin);
+    int destinationId = LocationRegistry.lookup(destination);
+    if (originId == LocationRegistry.UNKNOWN || destinationId == LocationRegistry.UNKNOWN) {
+      return new ItineraryList(); // no travels go there
+    }
+    List<Object> key = Arrays.<Object>asList(date == null ? null : date.getTime(), originId,
+        destinationId, limits, earliestOnly ? "earliest" : "pareto");
+    ItineraryList cached = itineraryCache.get(key, version);
+    if (cached != null) {
+      ITINERARY_SEARCH_CACHED.recordSince(start);
+      ITINERARY_RESULTS.record(cached.size());
+      return new ItineraryList(cached, cached.isTruncated());
+    }
+    takeBetween(originId, destinationId, limits.getMaxHops());
+    ConnectionScan scan;
+    lock.readLock().lock();
+    try {
+      scan = new ConnectionScan(getTimetable(), destinationId, earliestOnly, limits);
+      scan.run(date == null ? Long.MIN_VALUE : date.getTime(),
+          date == null ? Long.MAX_VALUE : endOfDay(date), originId);
+    } finally {
+      lock.readLock().unlock();
+    }
+    ArrayList<Itinerary> found = new ArrayList<>();
+    if (!earliestOnly) {
+      found = scan.getParetoFront();
+    } else if (scan.getEarliest() != null) {
+      found.add(scan.getEarliest());
+    }
+    ItineraryList ret = new ItineraryList(found, scan.isTruncated());
+    ITINERARY_SEARCH_SCAN.recordSince(start);
+    ITINERARY_SCANNED.record(scan.getScanned());
+    ITINERARY_RESULTS.record(ret.size());
+    if (scan.isTruncated()) {
+      ITINERARY_TRUNCATED.increment();
+    }
+    // the scan has no timeout, so the same scan always finds the same itineraries
+    itineraryCache.put(key, version, new ItineraryList(ret, ret.isTruncated()));
+    return ret;
+  }
 
-        Itinerary itinCopy = itin.copy();
-        itinCopy.add(st);
+  /**
+   * Gets every travel in order of departure, sorting them again if they
+   * changed since the last scan. The caller must hold the read lock; scans
+   * running together may each sort them, but always get the same timetable.
+   *
+   * @return the travels, in order of departure
+   */
+  private SingleTravel[] getTimetable() {
+    SingleTravel[] sorted = timetable;
+    if (sorted == null) {
+      List<SingleTravel> all = new ArrayList<>();
+      for (DepartureIndex index : travelSearch) {
+        if (index != null) {
+          index.collectAll(LocationRegistry.UNKNOWN, true, all);
+        }
+      }
+      sorted = ConnectionScan.timetable(all);
+      timetable = sorted;
+    }
+    return sorted;
+  }
 
-        generateItineraries(newLower, newUpper, st.getDestination(), destination, list,
-            itinCopy);
+  /**
+   * Generates the itineraries that depart from origin and arrive at
+   * destination on the given date.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param origin
+   *          the location to start the sequence
+   * @param destination
+   *          the location to end the sequence
+   * @param limits
+   *          the limits to bound the search by
+   * @param parallel
+   *          whether to split the search across several threads
+   * @return a list of the itineraries that match the specifications
+   */
+  private ItineraryList generateItineraries(Date date, String origin,
+      String destination, SearchLimits limits, boolean parallel) {
+    long start = Metrics.now();
+    // read before searching, so a change during the search makes the result stale
+    long version = seatVersion.get();
+    int originId = LocationRegistry.lookup(origin);
+    int destinationId = LocationRegistry.lookup(destination);
+    if (originId == LocationRegistry.UNKNOWN || destinationId == LocationRegistry.UNKNOWN) {
+      return new ItineraryList(); // no travels go there
+    }
+    List<Object> key = Arrays.<Object>asList(date == null ? null : date.getTime(), originId,
+        destinationId, limits, parallel);
+    ItineraryList cached = itineraryCache.get(key, version);
+    if (cached != null) {
+      ITINERARY_SEARCH_CACHED.recordSince(start);
+      ITINERARY_RESULTS.record(cached.size());
+      return new ItineraryList(cached, cached.isTruncated());
+    }
+    takeBetween(originId, destinationId, limits.getMaxHops());
+    ArrayList<Itinerary> list;
+    boolean truncated;
+    boolean timedOut;
+    int expanded;
+    int pruned;
+    lock.readLock().lock();
+    try {
+      ConnectionGraph.Reach reach = reachOf(destinationId);
+      if (parallel) {
+        ParallelItinerarySearch search = new ParallelItinerarySearch(this, destinationId,
+            reach, limits);
+        list = search.run(date, originId);
+        truncated = search.isTruncated();
+        timedOut = search.isTimedOut();
+        expanded = search.getExpanded();
+        pruned = search.getPruned();
+      } else {
+        ItinerarySearch search = new ItinerarySearch(this, destinationId, reach, limits);
+        list = search.run(date, originId);
+        truncated = search.isTruncated();
+        timedOut = search.isTimedOut();
+        expanded = search.getExpanded();
+        pruned = search.getPruned();
       }
+    } finally {
+      lock.readLock().unlock();
     }
-    // if no travels are found, an itinerary from this location cannot be made
+    (parallel ? ITINERARY_SEARCH_PARALLEL : ITINERARY_SEARCH_EXHAUSTIVE).recordSince(start);
+    ITINERARY_EXPANDED.record(expanded);
+    ITINERARY_PRUNED.record(pruned);
+    ITINERARY_RESULTS.record(list.size());
+    if (truncated) {
+      ITINERARY_TRUNCATED.increment();
+      if (log.isLoggable(Level.FINE)) {
+        log.log(Level.FINE,
+            "Itinerary search from {0} to {1} stopped early after {2} expansions.",
+            new Object[] { origin, destination, expanded });
+      }
+    }
+    ItineraryList ret = new ItineraryList(list, truncated);
+    if (!timedOut) { // a partial list would be served until it expires
+      itineraryCache.put(key, version, new ItineraryList(ret, truncated));
+    }
+    return ret;
+  }
+
+  /**
+   * Gets how every location can reach a destination, computing it from the
+   * connection graph unless it is cached for the current connections. The
+   * caller must hold the read lock.
+   *
+   * @param destinationId
+   *          the location id of the destination
+   * @return the reach of the destination
+   */
+  private ConnectionGraph.Reach reachOf(int destinationId) {
+    long version = connections.getVersion();
+    ConnectionGraph.Reach reach = reachCache.get(destinationId, version);
+    if (reach == null) {
+      reach = connections.reach(destinationId);
+      reachCache.put(destinationId, version, reach);
+    }
+    return reach;
+  }
+
+  /**
+   * Provides a custom reading method for de-serializing.
+   *
+   * @param ois
+   *          the stream to read this object
+   * @throws IOException
+   *           if there is an error in reading
+   * @throws ClassNotFoundException
+   *           if a class is not found
+   */
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    // read all non-transient fields
+    ois.defaultReadObject();
+
+    // the cached results are not saved
+    createCaches();
   }
 }
@@ -0,0 +1,384 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+import csc.travel.LocationRegistry;
+import csc.travel.SingleTravel;
+import csc.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single itinerary search split across several threads. The first levels of
+ * the depth-first search are expanded on the calling thread, and each partial
+ * itinerary is then continued by its own ItinerarySearch on a worker thread.
+ * The results are merged in the order the sequential search would find them.
+ * Each search is used once.
+ */
+class ParallelItinerarySearch {
+  /**
+   * The amount of threads used for searching.
+   */
+  private static final int PARALLELISM = Math.max(1,
+      Runtime.getRuntime().availableProcessors());
+  /**
+   * The most levels to expand before handing the partial itineraries out.
+   */
+  private static final int SPLIT_DEPTH = 2;
+  /**
+   * The amount of partial itineraries wanted per thread, for load balancing.
+   */
+  private static final int TASKS_PER_THREAD = 4;
+
+  /**
+   * The threads shared by all parallel searches.
+   */
+  private static ExecutorService workers = null;
+
+  /**
+   * The database to search in.
+   */
+  private final MainDatabase database;
+  /**
+   * The location id to end the itineraries at.
+   */
+  private final int destinationId;
+  /**
+   * How every location can reach the destination.
+   */
+  private final ConnectionGraph.Reach reach;
+  /**
+   * The limits of each part of this search.
+   */
+  private final SearchLimits limits;
+  /**
+   * The amount of partial itineraries expanded.
+   */
+  private int expanded;
+  /**
+   * The amount of travels not followed because the destination cannot be
+   * reached from them.
+   */
+  private int pruned;
+  /**
+   * Whether a limit was reached, so the results may be incomplete.
+   */
+  private boolean truncated;
+  /**
+   * Whether any part of the search stopped because its time ran out, or the
+   * search was interrupted.
+   */
+  private boolean timedOut;
+
+  /**
+   * Creates a new search.
+   *
+   * @param database
+   *          the database to search in
+   * @param destinationId
+   *          the location id to end the itineraries at
+   * @param reach
+   *          how every location can reach the destination
+   * @param limits
+   *          the limits of this search. Each thread prunes dominated
+   *          itineraries on its own, so pruned results may differ from a
+   *          sequential search.
+   */
+  ParallelItinerarySearch(MainDatabase database, int destinationId,
+      ConnectionGraph.Reach reach, SearchLimits limits) {
+    this.database = database;
+    this.destinationId = destinationId;
+    this.reach = reach;
+    this.limits = limits;
+  }
+
+  /**
+   * Finds the itineraries departing from origin on the given date. The caller
+   * must keep the database from changing until this returns. No part of the
+   * search is still running once this returns, even if it was interrupted.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param originId
+   *          the location id to start the sequence
+   * @return a list of the itineraries found, in the order a sequential search
+   *         finds them
+   */
+  ArrayList<Itinerary> run(Date date, int originId) {
+    List<PartialItinerary> prefixes = split(date, originId);
+
+    // each part of the search gets its own result list, merged in order
+    CountDownLatch finished = new CountDownLatch(prefixes.size());
+    List<Part> parts = new ArrayList<>(prefixes.size());
+    List<Future<ItinerarySearch>> futures = new ArrayList<>(prefixes.size());
+    ExecutorService pool = getWorkers();
+    for (PartialItinerary prefix : prefixes) {
+      Part part = new Part(new ItinerarySearch(database, destinationId, reach, limits),
+          prefix, finished);
+      parts.add(part);
+      futures.add(pool.submit(part));
+    }
+
+    ArrayList<Itinerary> ret = new ArrayList<>();
+    try {
+      for (Future<ItinerarySearch> future : futures) {
+        ItinerarySearch part = future.get();
+        ret.addAll(part.getResults());
+        expanded += part.getExpanded();
+        pruned += part.getPruned();
+        truncated |= part.isTruncated();
+        timedOut |= part.isTimedOut();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      truncated = true;
+      timedOut = true;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Itinerary search failed.", e.getCause());
+    } finally {
+      // the parts read the database, which may change once this returns
+      for (int i = 0; i < parts.size(); i++) {
+        if (!parts.get(i).skip()) {
+          futures.get(i).cancel(true); // stops the search at its next check
+        }
+      }
+      awaitUninterruptibly(finished);
+    }
+
+    if (ret.size() > limits.getMaxResults()) {
+      ret = new ArrayList<>(ret.subList(0, limits.getMaxResults()));
+      truncated = true;
+    }
+    return ret;
+  }
+
+  /**
+   * Gets whether a limit was reached during the search.
+   *
+   * @return True if the results may be incomplete
+   */
+  boolean isTruncated() {
+    return truncated;
+  }
+
+  /**
+   * Gets whether any part of the search stopped because its time ran out, or
+   * the search was interrupted. Either depends on timing rather than on the
+   * limits, so the same search may find more itineraries next time.
+   *
+   * @return True if the results were cut short by time
+   */
+  boolean isTimedOut() {
+    return timedOut;
+  }
+
+  /**
+   * Gets the amount of partial itineraries expanded during the search.
+   *
+   * @return the amount of expansions
+   */
+  int getExpanded() {
+    return expanded;
+  }
+
+  /**
+   * Gets the amount of travels not followed because the destination cannot be
+   * reached from them, by any part of the search.
+   *
+   * @return the amount of travels pruned
+   */
+  int getPruned() {
+    return pruned;
+  }
+
+  /**
+   * Expands the first levels of the search into partial itineraries, in the
+   * order the sequential search visits them.
+   *
+   * @param date
+   *          the date to start the sequence
+   * @param originId
+   *          the location id to start the sequence
+   * @return the partial itineraries to continue from
+   */
+  private List<PartialItinerary> split(Date date, int originId) {
+    List<PartialItinerary> prefixes = new ArrayList<>();
+    if (reach.getHops(originId) == ConnectionGraph.UNREACHABLE) {
+      return prefixes;
+    }
+    for (SingleTravel st : database.listTravels(date, null, originId,
+        LocationRegistry.UNKNOWN, false)) {
+      if (!isDeadEnd(st, 1)) {
+        prefixes.add(PartialItinerary.start(st));
+      }
+    }
+
+    for (int depth = 1; depth < SPLIT_DEPTH && depth < limits.getMaxHops()
+        && prefixes.size() < PARALLELISM * TASKS_PER_THREAD; depth++) {
+      List<PartialItinerary> next = new ArrayList<>();
+      for (PartialItinerary prefix : prefixes) {
+        if (prefix.getDestinationId() == destinationId) {
+          next.add(prefix); // already complete
+          continue;
+        }
+        long arrival = prefix.getEndTime();
+        Date lower = new Date(arrival + Constants.MIN_STOPOVER);
+        Date upper = new Date(arrival + Constants.MAX_STOPOVER);
+        for (SingleTravel st : database.listTravels(lower, upper, prefix.getDestinationId(),
+            LocationRegistry.UNKNOWN, false)) {
+          if (!prefix.containsOrigin(st.getDestinationId())
+              && !isDeadEnd(st, prefix.size() + 1)) {
+            next.add(prefix.extend(st));
+          }
+        }
+        expanded++;
+      }
+      prefixes = next;
+    }
+    return prefixes;
+  }
+
+  /**
+   * Checks whether the destination cannot be reached after a travel, in time
+   * or within the hops left.
+   *
+   * @param st
+   *          the travel to check
+   * @param hops
+   *          the amount of travels taken, including st
+   * @return True if st should not be followed
+   */
+  private boolean isDeadEnd(SingleTravel st, int hops) {
+    int locationId = st.getDestinationId();
+    if (locationId == destinationId) {
+      return false;
+    }
+    if (!reach.canReach(locationId, st.getEndTime().getTime())) {
+      pruned++;
+      return true;
+    }
+    if (hops + reach.getHops(locationId) > limits.getMaxHops()) {
+      pruned++;
+      truncated = true; // it might reach the destination with more hops
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Waits for every part of the search to finish, keeping the interruption of
+   * the thread for its caller.
+   *
+   * @param finished
+   *          counted down by each part once it finishes or is skipped
+   */
+  private static void awaitUninterruptibly(CountDownLatch finished) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        finished.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets the threads shared by all parallel searches, creating them if needed.
+   *
+   * @return the shared threads
+   */
+  private static synchronized ExecutorService getWorkers() {
+    if (workers == null) {
+      workers = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "itinerary-search");
+          thread.setDaemon(true); // never keep the application alive
+          return thread;
+        }
+      });
+    }
+    return workers;
+  }
+
+  /**
+   * A part of the search, continuing one partial itinerary on a worker thread.
+   * A part that has not started when the search ends is skipped, so that
+   * waiting for every part only waits for the ones running.
+   */
+  private static final class Part implements Callable<ItinerarySearch> {
+    /**
+     * The search continuing the partial itinerary.
+     */
+    private final ItinerarySearch search;
+    /**
+     * The partial itinerary to continue.
+     */
+    private final PartialItinerary prefix;
+    /**
+     * Counted down once this part finishes or is skipped.
+     */
+    private final CountDownLatch finished;
+    /**
+     * Whether this part was started or skipped.
+     */
+    private final AtomicBoolean claimed;
+
+    /**
+     * Creates a part of the search.
+     *
+     * @param search
+     *          the search continuing the partial itinerary
+     * @param prefix
+     *          the partial itinerary to continue
+     * @param finished
+     *          counted down once this part finishes or is skipped
+     */
+    Part(ItinerarySearch search, PartialItinerary prefix, CountDownLatch finished) {
+      this.search = search;
+      this.prefix = prefix;
+      this.finished = finished;
+      this.claimed = new AtomicBoolean();
+    }
+
+    @Override
+    public ItinerarySearch call() {
+      if (!claimed.compareAndSet(false, true)) {
+        return search; // skipped
+      }
+      try {
+        search.run(prefix);
+      } finally {
+        finished.countDown();
+      }
+      return search;
+    }
+
+    /**
+     * Keeps this part from starting, if it has not started yet.
+     *
+     * @return True if this part will not run
+     */
+    boolean skip() {
+      if (claimed.compareAndSet(false, true)) {
+        finished.countDown();
+        return true;
+      }
+      return false;
+    }
+  }
+}
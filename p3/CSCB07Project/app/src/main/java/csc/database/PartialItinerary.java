@@ -0,0 +1,211 @@
+package csc.database;
+
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+
+/**
+ * An immutable itinerary built during a search. Each partial itinerary only
+ * stores its last travel and shares the rest with its parent, so extending one
+ * takes constant time and memory. Locations are compared by their ids from the
+ * LocationRegistry.
+ */
+final class PartialItinerary {
+  /**
+   * The amount of location ids that are kept in the visited bit set.
+   */
+  private static final int VISITED_BITS = Long.SIZE;
+
+  /**
+   * The partial itinerary before the last travel; null if this is the first.
+   */
+  private final PartialItinerary parent;
+  /**
+   * The last travel of this partial itinerary.
+   */
+  private final SingleTravel travel;
+  /**
+   * The location id of the origin of the last travel.
+   */
+  private final int originId;
+  /**
+   * The location id of the destination of the last travel.
+   */
+  private final int destinationId;
+  /**
+   * A bit set of the small location ids that travels originate from.
+   */
+  private final long visited;
+  /**
+   * The amount of travels in this partial itinerary.
+   */
+  private final int hops;
+  /**
+   * The departure time of the first travel, in milliseconds.
+   */
+  private final long start;
+  /**
+   * The total cost of this partial itinerary.
+   */
+  private final double cost;
+
+  /**
+   * Creates a partial itinerary by adding a travel to another.
+   *
+   * @param parent
+   *          the partial itinerary to add to; null to start a new one
+   * @param travel
+   *          the travel to add
+   */
+  private PartialItinerary(PartialItinerary parent, SingleTravel travel) {
+    this.parent = parent;
+    this.travel = travel;
+    this.originId = travel.getOriginId();
+    this.destinationId = travel.getDestinationId();
+    long bit = originId < VISITED_BITS ? 1L << originId : 0L;
+    if (parent == null) {
+      this.visited = bit;
+      this.hops = 1;
+      this.start = travel.getStartTime().getTime();
+      this.cost = travel.getCost();
+    } else {
+      this.visited = parent.visited | bit;
+      this.hops = parent.hops + 1;
+      this.start = parent.start;
+      this.cost = parent.cost + travel.getCost();
+    }
+  }
+
+  /**
+   * Starts a new partial itinerary with a single travel.
+   *
+   * @param travel
+   *          the first travel
+   * @return the partial itinerary
+   */
+  static PartialItinerary start(SingleTravel travel) {
+    return new PartialItinerary(null, travel);
+  }
+
+  /**
+   * Creates a partial itinerary that continues this one with another travel.
+   * This partial itinerary is not changed.
+   *
+   * @param next
+   *          the travel to add; it should depart from the destination of this
+   * @return the longer partial itinerary
+   */
+  PartialItinerary extend(SingleTravel next) {
+    return new PartialItinerary(this, next);
+  }
+
+  /**
+   * Gets whether a travel in this partial itinerary originates at a location.
+   *
+   * @param locationId
+   *          the location id to check
+   * @return True if a travel originates at the location
+   */
+  boolean containsOrigin(int locationId) {
+    if (locationId < VISITED_BITS) {
+      return (visited & (1L << locationId)) != 0;
+    }
+    for (PartialItinerary part = this; part != null; part = part.parent) {
+      if (part.originId == locationId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Gets whether every location a travel of this partial itinerary originates
+   * at is also the origin of a travel of another, so that any travel that can
+   * continue the other can continue this one.
+   *
+   * @param other
+   *          the partial itinerary to compare with
+   * @return True if this visits no location that the other does not
+   */
+  boolean visitsOnlyOriginsOf(PartialItinerary other) {
+    if ((visited & ~other.visited) != 0) {
+      return false;
+    }
+    for (PartialItinerary part = this; part != null; part = part.parent) {
+      if (part.originId >= VISITED_BITS && !other.containsOrigin(part.originId)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the last travel of this partial itinerary.
+   *
+   * @return the last travel
+   */
+  SingleTravel getLast() {
+    return travel;
+  }
+
+  /**
+   * Gets the location id of the destination of this partial itinerary.
+   *
+   * @return the location id
+   */
+  int getDestinationId() {
+    return destinationId;
+  }
+
+  /**
+   * Gets the amount of travels in this partial itinerary.
+   *
+   * @return the amount of travels
+   */
+  int size() {
+    return hops;
+  }
+
+  /**
+   * Gets the departure time of the first travel.
+   *
+   * @return the departure time, in milliseconds
+   */
+  long getStartTime() {
+    return start;
+  }
+
+  /**
+   * Gets the arrival time of the last travel.
+   *
+   * @return the arrival time, in milliseconds
+   */
+  long getEndTime() {
+    return travel.getEndTime().getTime();
+  }
+
+  /**
+   * Gets the total cost of this partial itinerary.
+   *
+   * @return the total cost
+   */
+  double getCost() {
+    return cost;
+  }
+
+  /**
+   * Creates a full itinerary from this partial itinerary.
+   *
+   * @return the itinerary
+   */
+  Itinerary toItinerary() {
+    SingleTravel[] travels = new SingleTravel[hops];
+    for (PartialItinerary part = this; part != null; part = part.parent) {
+      travels[part.hops - 1] = part.travel;
+    }
+    Itinerary itin = new Itinerary();
+    for (SingleTravel st : travels) {
+      itin.add(st);
+    }
+    return itin;
+  }
+}
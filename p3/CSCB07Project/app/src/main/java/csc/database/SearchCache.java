@@ -0,0 +1,166 @@
+package csc.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of search results. Each result is tagged with the version of
+ * the database it was found in, and is only returned while the database is
+ * still at that version and the result is not too old. The least recently used
+ * results are evicted once the cache is full. Safe to use from several threads.
+ *
+ * @param <V>
+ *          the type of the results
+ */
+class SearchCache<V> {
+  /**
+   * The longest time a result is kept, in nanoseconds.
+   */
+  private final long ttl;
+  /**
+   * The cached results by their search, least recently used first.
+   */
+  private final Map<Object, Result<V>> entries;
+  /**
+   * The amount of searches answered from this cache.
+   */
+  private long hits;
+  /**
+   * The amount of searches that had to be run.
+   */
+  private long misses;
+  /**
+   * The amount of results evicted to keep within the size, or dropped for
+   * being too old or out of date.
+   */
+  private long evictions;
+
+  /**
+   * Creates a new empty cache.
+   *
+   * @param size
+   *          the maximum amount of results to keep
+   * @param ttl
+   *          the longest time to keep a result, in milliseconds
+   */
+  SearchCache(final int size, long ttl) {
+    this.ttl = ttl * 1000000L;
+    this.entries = new LinkedHashMap<Object, Result<V>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 6338916458702963401L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Result<V>> eldest) {
+        if (size() > size) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Gets the result of a search, if it is cached for the current version.
+   *
+   * @param key
+   *          the search, with equals and hashCode
+   * @param version
+   *          the current version of the database
+   * @return the result; null if the search has to be run
+   */
+  synchronized V get(Object key, long version) {
+    Result<V> result = entries.get(key);
+    if (result == null) {
+      misses++;
+      return null;
+    }
+    if (result.version != version || System.nanoTime() - result.created > ttl) {
+      entries.remove(key);
+      evictions++;
+      misses++;
+      return null;
+    }
+    hits++;
+    return result.value;
+  }
+
+  /**
+   * Caches the result of a search.
+   *
+   * @param key
+   *          the search, with equals and hashCode
+   * @param version
+   *          the version of the database read before the search was run
+   * @param value
+   *          the result, which must not be changed afterwards
+   */
+  synchronized void put(Object key, long version, V value) {
+    Result<V> newer = entries.get(key);
+    if (newer != null && newer.version > version) {
+      return; // a later search finished first
+    }
+    entries.put(key, new Result<V>(value, version));
+  }
+
+  /**
+   * Gets the amount of searches answered from this cache.
+   *
+   * @return the amount of hits
+   */
+  synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * Gets the amount of searches that had to be run.
+   *
+   * @return the amount of misses
+   */
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  /**
+   * Gets the amount of results evicted for size, age or being out of date.
+   *
+   * @return the amount of evictions
+   */
+  synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * A cached result.
+   *
+   * @param <V>
+   *          the type of the result
+   */
+  private static final class Result<V> {
+    /**
+     * The result.
+     */
+    private final V value;
+    /**
+     * The version of the database the result was found in.
+     */
+    private final long version;
+    /**
+     * When the result was cached, in nanoseconds.
+     */
+    private final long created;
+
+    /**
+     * Creates an entry cached now.
+     *
+     * @param value
+     *          the result
+     * @param version
+     *          the version of the database the result was found in
+     */
+    Result(V value, long version) {
+      this.value = value;
+      this.version = version;
+      this.created = System.nanoTime();
+    }
+  }
+}
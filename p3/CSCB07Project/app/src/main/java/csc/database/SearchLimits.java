@@ -0,0 +1,121 @@
+package csc.database;
+
+import csc.util.Constants;
+
+/**
+ * The bounds placed on an itinerary search. A search that reaches any of these
+ * bounds stops early and returns the itineraries found so far. Limits are
+ * equal when their bounds are, so searches with equal limits share cached
+ * results.
+ */
+public final class SearchLimits {
+  /**
+   * Limits that never stop a search early; every itinerary is found.
+   */
+  public static final SearchLimits UNBOUNDED = new SearchLimits(Integer.MAX_VALUE,
+      Integer.MAX_VALUE, 0L, false);
+
+  /**
+   * Limits suited to searches made while a user is waiting.
+   */
+  public static final SearchLimits INTERACTIVE = new SearchLimits(Constants.SEARCH_MAX_HOPS,
+      Constants.SEARCH_MAX_RESULTS, Constants.SEARCH_TIMEOUT, false);
+
+  /**
+   * The maximum amount of travels in an itinerary.
+   */
+  private final int maxHops;
+  /**
+   * The maximum amount of itineraries to find.
+   */
+  private final int maxResults;
+  /**
+   * The maximum time to search for, in milliseconds; 0 is unlimited.
+   */
+  private final long timeout;
+  /**
+   * Whether to drop partial itineraries that are dominated by another.
+   */
+  private final boolean pruneDominated;
+
+  /**
+   * Creates a new set of search limits.
+   *
+   * @param maxHops
+   *          the maximum amount of travels in an itinerary
+   * @param maxResults
+   *          the maximum amount of itineraries to find
+   * @param timeout
+   *          the maximum time to search for, in milliseconds; 0 is unlimited
+   * @param pruneDominated
+   *          whether to drop a partial itinerary when another one has already
+   *          reached the same location no later and no more expensively. This
+   *          makes dense searches much faster, but may drop some itineraries
+   *          that an exhaustive search would find.
+   */
+  public SearchLimits(int maxHops, int maxResults, long timeout, boolean pruneDominated) {
+    if (maxHops <= 0 || maxResults <= 0 || timeout < 0) {
+      throw new IllegalArgumentException("Search limits should be positive.");
+    }
+    this.maxHops = maxHops;
+    this.maxResults = maxResults;
+    this.timeout = timeout;
+    this.pruneDominated = pruneDominated;
+  }
+
+  /**
+   * Gets the maximum amount of travels in an itinerary.
+   *
+   * @return the maximum amount of travels
+   */
+  public int getMaxHops() {
+    return maxHops;
+  }
+
+  /**
+   * Gets the maximum amount of itineraries to find.
+   *
+   * @return the maximum amount of itineraries
+   */
+  public int getMaxResults() {
+    return maxResults;
+  }
+
+  /**
+   * Gets the maximum time to search for.
+   *
+   * @return the time in milliseconds; 0 is unlimited
+   */
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * Gets whether dominated partial itineraries are dropped.
+   *
+   * @return True if dominated partial itineraries are dropped
+   */
+  public boolean isPruningDominated() {
+    return pruneDominated;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 31 * maxHops + maxResults;
+    result = 31 * result + (int) (timeout ^ (timeout >>> 32));
+    return 31 * result + (pruneDominated ? 1 : 0);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (obj == null || getClass() != obj.getClass()) {
+      return false;
+    }
+    SearchLimits other = (SearchLimits) obj;
+    return maxHops == other.maxHops && maxResults == other.maxResults
+        && timeout == other.timeout && pruneDominated == other.pruneDominated;
+  }
+}
@@ -0,0 +1,104 @@
+package csc.database;
+
+import csc.travel.SingleTravel;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A secondary index grouping travels by a key, such as their origin and day of
+ * departure. The key of a travel must not change while it is indexed. Each
+ * bucket is a set by identity, as equal travels may be stored apart, so that a
+ * travel is removed in constant time however many share its key.
+ *
+ * @param <K>
+ *          the key that travels are grouped by
+ */
+class TravelBuckets<K> {
+  /**
+   * The travels with each key.
+   */
+  private final Map<K, Set<SingleTravel>> buckets;
+
+  /**
+   * Creates a new empty index.
+   */
+  TravelBuckets() {
+    this.buckets = new HashMap<>();
+  }
+
+  /**
+   * Indexes a travel under a key.
+   *
+   * @param key
+   *          the key of the travel
+   * @param travel
+   *          the travel to index
+   */
+  void add(K key, SingleTravel travel) {
+    Set<SingleTravel> bucket = buckets.get(key);
+    if (bucket == null) {
+      // most keys have few travels, so start small
+      bucket = Collections.newSetFromMap(new IdentityHashMap<SingleTravel, Boolean>(4));
+      buckets.put(key, bucket);
+    }
+    bucket.add(travel);
+  }
+
+  /**
+   * Removes a travel from this index.
+   *
+   * @param key
+   *          the key the travel was indexed under
+   * @param travel
+   *          the travel to remove
+   */
+  void remove(K key, SingleTravel travel) {
+    Set<SingleTravel> bucket = buckets.get(key);
+    if (bucket == null) {
+      return;
+    }
+    bucket.remove(travel);
+    if (bucket.isEmpty()) {
+      buckets.remove(key);
+    }
+  }
+
+  /**
+   * Gets the travels indexed under a key.
+   *
+   * @param key
+   *          the key to look up
+   * @return an unmodifiable collection of the travels; empty if there are none
+   */
+  Collection<SingleTravel> get(K key) {
+    Set<SingleTravel> bucket = buckets.get(key);
+    if (bucket == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(bucket);
+  }
+
+  /**
+   * Gets the amount of travels indexed under a key.
+   *
+   * @param key
+   *          the key to look up
+   * @return the amount of travels
+   */
+  int count(K key) {
+    Set<SingleTravel> bucket = buckets.get(key);
+    return bucket == null ? 0 : bucket.size();
+  }
+
+  /**
+   * Removes all travels from this index.
+   */
+  void clear() {
+    buckets.clear();
+  }
+}
@@ -0,0 +1,113 @@
+package csc.database;
+
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+
+/**
+ * A read-only collection of travels that a MainDatabase can be backed by, so
+ * that each travel is only created when it is first needed. Travels are
+ * numbered from 0, and grouped by their origin. The fields of a travel can be
+ * read without creating it; the strings are shared between travels.
+ */
+public interface TravelCatalog {
+
+  /**
+   * Gets the amount of travels in this catalog.
+   *
+   * @return the amount of travels
+   */
+  public int size();
+
+  /**
+   * Finds a travel by its type and id.
+   *
+   * @param type
+   *          the type of the travel
+   * @param id
+   *          the id of the travel
+   * @return the number of the travel; -1 if there is none
+   */
+  public int find(TravelType type, String id);
+
+  /**
+   * Gets the number of the first travel departing from a location. The
+   * travels from a location are numbered consecutively.
+   *
+   * @param origin
+   *          the location, ignoring case
+   * @return the number of the first travel; equal to endFrom if there are none
+   */
+  public int firstFrom(String origin);
+
+  /**
+   * Gets the number after the last travel departing from a location.
+   *
+   * @param origin
+   *          the location, ignoring case
+   * @return the number after the last travel
+   */
+  public int endFrom(String origin);
+
+  /**
+   * Gets the type of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the type
+   */
+  public TravelType getType(int index);
+
+  /**
+   * Gets the origin of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the origin, as the travel has it
+   */
+  public String getOrigin(int index);
+
+  /**
+   * Gets the destination of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the destination, as the travel has it
+   */
+  public String getDestination(int index);
+
+  /**
+   * Gets the provider of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the provider
+   */
+  public String getProvider(int index);
+
+  /**
+   * Gets the departure time of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the departure time, in milliseconds
+   */
+  public long getStartTime(int index);
+
+  /**
+   * Gets the arrival time of a travel without creating it.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the arrival time, in milliseconds
+   */
+  public long getEndTime(int index);
+
+  /**
+   * Creates the travel of a number. A new object is created on every call.
+   *
+   * @param index
+   *          the number of the travel
+   * @return the travel
+   */
+  public SingleTravel getTravel(int index);
+}
@@ -1,13 +1,20 @@
 package csc.database;
 
+import csc.travel.LocationRegistry;
 import csc.travel.SingleTravel;
 import csc.travel.TravelType;
+import csc.util.TimeFormat;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 
 /**
- * Storage of all travels of a specific type in the system.
+ * Storage of all travels of a specific type in the system. Travels are also
+ * indexed by origin, destination, day of departure and provider, so that a
+ * search only visits the travels in its most selective index.
  */
 public class TravelDatabase extends UniqueMap<String, SingleTravel> {
   /**
@@ -18,12 +25,39 @@ public class TravelDatabase extends UniqueMap<String, SingleTravel> {
    * The type of this travel database.
    */
   private final TravelType type;
+  /**
+   * The travels departing from each location on each day, keyed by
+   * dayKey(origin id, day).
+   */
+  private transient TravelBuckets<Long> byOriginDay;
+  /**
+   * The travels arriving at each location that depart on each day, keyed by
+   * dayKey(destination id, day).
+   */
+  private transient TravelBuckets<Long> byDestinationDay;
+  /**
+   * The travels departing from each location, keyed by location id.
+   */
+  private transient TravelBuckets<Integer> byOrigin;
+  /**
+   * The travels arriving at each location, keyed by location id.
+   */
+  private transient TravelBuckets<Integer> byDestination;
+  /**
+   * The travels departing on each day, keyed by day.
+   */
+  private transient TravelBuckets<Integer> byDay;
+  /**
+   * The travels of each provider.
+   */
+  private transient TravelBuckets<String> byProvider;
 
   /**
    * Creates a new empty TravelDatabase.
    */
   public TravelDatabase(TravelType type) {
     this.type = type;
+    createIndexes();
   }
 
   /**
@@ -33,6 +67,51 @@ public class TravelDatabase extends UniqueMap<String, SingleTravel> {
     return type;
   }
 
+  @Override
+  protected void onAdd(SingleTravel travel) {
+    int day = travel.getStartDay();
+    byOriginDay.add(dayKey(travel.getOriginId(), day), travel);
+    byDestinationDay.add(dayKey(travel.getDestinationId(), day), travel);
+    byOrigin.add(travel.getOriginId(), travel);
+    byDestination.add(travel.getDestinationId(), travel);
+    byDay.add(day, travel);
+    byProvider.add(travel.getProvider(), travel);
+  }
+
+  @Override
+  protected void onRemove(SingleTravel travel) {
+    int day = travel.getStartDay();
+    byOriginDay.remove(dayKey(travel.getOriginId(), day), travel);
+    byDestinationDay.remove(dayKey(travel.getDestinationId(), day), travel);
+    byOrigin.remove(travel.getOriginId(), travel);
+    byDestination.remove(travel.getDestinationId(), travel);
+    byDay.remove(day, travel);
+    byProvider.remove(travel.getProvider(), travel);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    createIndexes();
+  }
+
+  /**
+   * Computes the day of departure of every travel again, and indexes them by
+   * it, for when the time zone changes.
+   */
+  void refreshDays() {
+    byOriginDay = new TravelBuckets<>();
+    byDestinationDay = new TravelBuckets<>();
+    byDay = new TravelBuckets<>();
+    for (SingleTravel travel : getValues()) {
+      travel.refreshStartDay();
+      int day = travel.getStartDay();
+      byOriginDay.add(dayKey(travel.getOriginId(), day), travel);
+      byDestinationDay.add(dayKey(travel.getDestinationId(), day), travel);
+      byDay.add(day, travel);
+    }
+  }
+
   /**
    * Returns all travels that depart from origin and arrive at destination on
    * the given date, of this type.
@@ -47,16 +126,137 @@ public class TravelDatabase extends UniqueMap<String, SingleTravel> {
    */
   public ArrayList<SingleTravel> searchTravels(Date date, String origin, String destination,
       boolean includeFull) {
+    return searchTravels(date, origin, destination, null, includeFull);
+  }
+
+  /**
+   * Returns all travels that depart from origin and arrive at destination on
+   * the given date, of this type and by the given provider.
+   *
+   * @param date
+   *          the date to check for; null checks all values
+   * @param origin
+   *          the origin to check for; null checks all values
+   * @param destination
+   *          the destination to check for; a null value will not check it
+   * @param provider
+   *          the provider to check for; a null value will not check it
+   * @return a set of the travels that match the specifications
+   */
+  public ArrayList<SingleTravel> searchTravels(Date date, String origin, String destination,
+      String provider, boolean includeFull) {
     ArrayList<SingleTravel> ret = new ArrayList<>();
-    for (SingleTravel travel : getValues()) {
-      if ((date == null || travel.startsWithin(date))
-          && (origin == null || travel.getOrigin().equalsIgnoreCase(origin))
+    int originId = LocationRegistry.lookup(origin);
+    int destinationId = LocationRegistry.lookup(destination);
+    if ((origin != null && originId == LocationRegistry.UNKNOWN)
+        || (destination != null && destinationId == LocationRegistry.UNKNOWN)) {
+      return ret; // no travels go there
+    }
+    long lower = date == null ? 0 : date.getTime();
+    int day = date == null ? 0 : TimeFormat.toEpochDay(lower);
+    for (SingleTravel travel : plan(date != null, day, originId, destinationId, provider)) {
+      if ((date == null
+          || (travel.getStartDay() == day && travel.getStartTime().getTime() >= lower))
+          && (origin == null || travel.getOriginId() == originId)
           && (includeFull || travel.getAvailableCapacity() > 0)
-          && (destination == null || travel.getDestination().equalsIgnoreCase(destination))) {
+          && (destination == null || travel.getDestinationId() == destinationId)
+          && (provider == null || provider.equals(travel.getProvider()))) {
         ret.add(travel);
       }
     }
     return ret;
   }
 
+  /**
+   * Picks the smallest set of travels that contains every travel matching the
+   * given filters, using the indexes that apply to them.
+   *
+   * @param byDate
+   *          whether the travels are filtered by day
+   * @param day
+   *          the day to filter by
+   * @param originId
+   *          the location id of the origin; UNKNOWN does not filter
+   * @param destinationId
+   *          the location id of the destination; UNKNOWN does not filter
+   * @param provider
+   *          the provider to filter by; null does not filter
+   * @return the travels to check against the filters
+   */
+  private Collection<SingleTravel> plan(boolean byDate, int day, int originId,
+      int destinationId, String provider) {
+    Collection<SingleTravel> best = getValues();
+    if (provider != null && byProvider.count(provider) < best.size()) {
+      best = byProvider.get(provider);
+    }
+    if (byDate) {
+      if (byDay.count(day) < best.size()) {
+        best = byDay.get(day);
+      }
+      if (originId != LocationRegistry.UNKNOWN
+          && byOriginDay.count(dayKey(originId, day)) < best.size()) {
+        best = byOriginDay.get(dayKey(originId, day));
+      }
+      if (destinationId != LocationRegistry.UNKNOWN
+          && byDestinationDay.count(dayKey(destinationId, day)) < best.size()) {
+        best = byDestinationDay.get(dayKey(destinationId, day));
+      }
+    } else {
+      if (originId != LocationRegistry.UNKNOWN && byOrigin.count(originId) < best.size()) {
+        best = byOrigin.get(originId);
+      }
+      if (destinationId != LocationRegistry.UNKNOWN
+          && byDestination.count(destinationId) < best.size()) {
+        best = byDestination.get(destinationId);
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Combines a location id and a day into a single index key.
+   *
+   * @param locationId
+   *          the location id
+   * @param day
+   *          the day, as from TimeFormat.toEpochDay
+   * @return the key
+   */
+  private static long dayKey(int locationId, int day) {
+    return ((long) locationId << Integer.SIZE) | (day & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Creates the empty indexes of this database.
+   */
+  private void createIndexes() {
+    byOriginDay = new TravelBuckets<>();
+    byDestinationDay = new TravelBuckets<>();
+    byOrigin = new TravelBuckets<>();
+    byDestination = new TravelBuckets<>();
+    byDay = new TravelBuckets<>();
+    byProvider = new TravelBuckets<>();
+  }
+
+  /**
+   * Provides a custom reading method for de-serializing.
+   *
+   * @param ois
+   *          the stream to read this object
+   * @throws IOException
+   *           if there is an error in reading
+   * @throws ClassNotFoundException
+   *           if a class is not found
+   */
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    // read all non-transient fields
+    ois.defaultReadObject();
+
+    // the indexes use location ids, which are not saved, so build them again
+    createIndexes();
+    for (SingleTravel travel : getValues()) {
+      onAdd(travel);
+    }
+  }
+
 }
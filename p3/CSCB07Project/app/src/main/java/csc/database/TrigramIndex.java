@@ -0,0 +1,147 @@
+package csc.database;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An inverted index from the trigrams (runs of three characters) of a text to
+ * the values with that text, for case-insensitive substring searches. A text
+ * contains a query only if it has every trigram of the query, so a search only
+ * needs to check the values under the rarest trigram of the query. Values are
+ * compared by identity, since their text may be changed before they are
+ * removed.
+ *
+ * @param <V>
+ *          the values that are indexed
+ */
+class TrigramIndex<V> {
+  /**
+   * The length of the runs of characters that are indexed.
+   */
+  private static final int GRAM = 3;
+  /**
+   * The values with each trigram in their text, keyed by trigram().
+   */
+  private final Map<Long, Set<V>> postings;
+  /**
+   * The lower case text that each value is indexed under.
+   */
+  private final Map<V, String> texts;
+
+  /**
+   * Creates a new empty index.
+   */
+  TrigramIndex() {
+    this.postings = new HashMap<>();
+    this.texts = new IdentityHashMap<>();
+  }
+
+  /**
+   * Indexes a value under a text, replacing the text it had.
+   *
+   * @param val
+   *          the value to index
+   * @param text
+   *          the text of the value
+   */
+  void add(V val, String text) {
+    remove(val);
+    String lower = text.toLowerCase();
+    texts.put(val, lower);
+    for (int i = 0; i + GRAM <= lower.length(); i++) {
+      Long key = trigram(lower, i);
+      Set<V> values = postings.get(key);
+      if (values == null) {
+        // most trigrams are rare, so start small
+        values = Collections.newSetFromMap(new IdentityHashMap<V, Boolean>(4));
+        postings.put(key, values);
+      }
+      values.add(val);
+    }
+  }
+
+  /**
+   * Removes a value from this index. Does nothing if it is not indexed.
+   *
+   * @param val
+   *          the value to remove
+   */
+  void remove(V val) {
+    String lower = texts.remove(val);
+    if (lower == null) {
+      return;
+    }
+    for (int i = 0; i + GRAM <= lower.length(); i++) {
+      Long key = trigram(lower, i);
+      Set<V> values = postings.get(key);
+      if (values != null) {
+        values.remove(val);
+        if (values.isEmpty()) {
+          postings.remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes every value from this index.
+   */
+  void clear() {
+    postings.clear();
+    texts.clear();
+  }
+
+  /**
+   * Gets the text that a value is indexed under.
+   *
+   * @param val
+   *          the indexed value
+   * @return the text in lower case; null if the value is not indexed
+   */
+  String getText(V val) {
+    return texts.get(val);
+  }
+
+  /**
+   * Gets the values whose text may contain a query; their text must still be
+   * checked. Queries shorter than a trigram match every value.
+   *
+   * @param lower
+   *          the query in lower case
+   * @return the candidate values; must not be changed
+   */
+  Collection<V> candidates(String lower) {
+    if (lower.length() < GRAM) {
+      return texts.keySet();
+    }
+    Set<V> rarest = null;
+    for (int i = 0; i + GRAM <= lower.length(); i++) {
+      Set<V> values = postings.get(trigram(lower, i));
+      if (values == null) {
+        return Collections.emptySet(); // no text has this trigram
+      }
+      if (rarest == null || values.size() < rarest.size()) {
+        rarest = values;
+      }
+    }
+    return rarest;
+  }
+
+  /**
+   * Packs the trigram at a position of a text into a key.
+   *
+   * @param text
+   *          the text to read
+   * @param start
+   *          the position of the first character of the trigram
+   * @return the key of the trigram
+   */
+  private static Long trigram(String text, int start) {
+    return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16)
+        | text.charAt(start + 2);
+  }
+}
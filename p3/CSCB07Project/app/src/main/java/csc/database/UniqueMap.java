@@ -64,11 +64,13 @@ public abstract class UniqueMap<K extends Comparable<K> & Serializable,
   public V add(V val) {
     V ret = map.get(val.getIdentifier());
     if (ret != null) {
+      onRemove(ret);
       ret.update(val);
     } else {
       map.put(val.getIdentifier(), val);
       ret = val;
     }
+    onAdd(ret);
     return ret;
   }
 
@@ -84,7 +86,10 @@ public abstract class UniqueMap<K extends Comparable<K> & Serializable,
     if (containsId(newId)) {
       return;
     }
-    map.remove(val.getIdentifier());
+    V old = map.remove(val.getIdentifier());
+    if (old != null) {
+      onRemove(old);
+    }
     val.setIdentifier(newId);
     add(val);
   }
@@ -109,7 +114,10 @@ public abstract class UniqueMap<K extends Comparable<K> & Serializable,
    */
   public void remove(K id) {
     if (id != null) {
-      map.remove(id);
+      V old = map.remove(id);
+      if (old != null) {
+        onRemove(old);
+      }
     }
   }
 
@@ -134,6 +142,27 @@ public abstract class UniqueMap<K extends Comparable<K> & Serializable,
     map.clear();
   }
 
+  /**
+   * Called after an object is put into this database, or after an object in it
+   * is updated. Subclasses may override this to maintain their own indexes.
+   *
+   * @param val
+   *          the object that is now in this database
+   */
+  protected void onAdd(V val) {
+  }
+
+  /**
+   * Called after an object is taken out of this database, or before an object
+   * in it is updated. Subclasses may override this to maintain their own
+   * indexes; clear() does not call this.
+   *
+   * @param val
+   *          the object that was in this database
+   */
+  protected void onRemove(V val) {
+  }
+
   @Override
   public Iterator<V> iterator() {
     return map.values().iterator();
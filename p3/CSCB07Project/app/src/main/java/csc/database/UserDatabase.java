@@ -2,16 +2,62 @@ package csc.database;
 
 import csc.users.RegisteredUser;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 
 /**
- * Storage of all registered users in the system.
+ * Storage of all registered users in the system. Users are also indexed by the
+ * trigrams of their names and emails, so that a search only checks the users
+ * that share the rarest trigram of the query.
  */
 public class UserDatabase extends UniqueMap<String, RegisteredUser> {
   /**
    * Serializable implementation.
    */
   private static final long serialVersionUID = -8268532265982086570L;
+  /**
+   * The users by the trigrams of their full names.
+   */
+  private transient TrigramIndex<RegisteredUser> byName;
+  /**
+   * The users by the trigrams of their emails.
+   */
+  private transient TrigramIndex<RegisteredUser> byEmail;
+
+  /**
+   * Creates a new empty UserDatabase.
+   */
+  public UserDatabase() {
+    createIndexes();
+  }
+
+  /**
+   * Creates empty indexes.
+   */
+  private void createIndexes() {
+    this.byName = new TrigramIndex<>();
+    this.byEmail = new TrigramIndex<>();
+  }
+
+  @Override
+  protected void onAdd(RegisteredUser user) {
+    byName.add(user, user.getName());
+    byEmail.add(user, user.getIdentifier());
+  }
+
+  @Override
+  protected void onRemove(RegisteredUser user) {
+    byName.remove(user);
+    byEmail.remove(user);
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    createIndexes();
+  }
 
   /**
    * Returns all users of the given names.
@@ -23,13 +69,41 @@ public class UserDatabase extends UniqueMap<String, RegisteredUser> {
    * @return a set of the users that contain the names provided
    */
   public ArrayList<RegisteredUser> searchUsers(String names, String email) {
+    String lowerNames = names.toLowerCase();
+    String lowerEmail = email.toLowerCase();
+    // only users with the rarest trigram of either query can match
+    Collection<RegisteredUser> candidates = byName.candidates(lowerNames);
+    Collection<RegisteredUser> emailCandidates = byEmail.candidates(lowerEmail);
+    if (emailCandidates.size() < candidates.size()) {
+      candidates = emailCandidates;
+    }
     ArrayList<RegisteredUser> ret = new ArrayList<>();
-    for (RegisteredUser ru : getValues()) {
-      if (ru.getName().toLowerCase().contains(names.toLowerCase())
-          && ru.getIdentifier().toLowerCase().contains(email.toLowerCase())) {
+    for (RegisteredUser ru : candidates) {
+      if (byName.getText(ru).contains(lowerNames) && byEmail.getText(ru).contains(lowerEmail)) {
         ret.add(ru);
       }
     }
     return ret;
   }
+
+  /**
+   * Provides a custom reading method for de-serializing.
+   *
+   * @param ois
+   *          the stream to read this object
+   * @throws IOException
+   *           if there is an error in reading
+   * @throws ClassNotFoundException
+   *           if a class is not found
+   */
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    // read all non-transient fields
+    ois.defaultReadObject();
+
+    // the indexes are not saved, so build them again
+    createIndexes();
+    for (RegisteredUser user : getValues()) {
+      onAdd(user);
+    }
+  }
 }
@@ -0,0 +1,20 @@
+package csc.interfaces;
+
+import java.util.List;
+
+/**
+ * An interface for receiving objects a batch at a time.
+ *
+ * @param <T>
+ *          the type of the objects received
+ */
+public interface BatchConsumer<T> {
+
+  /**
+   * Receives the next batch of objects.
+   *
+   * @param batch
+   *          the objects, in order
+   */
+  public void accept(List<T> batch);
+}
@@ -0,0 +1,352 @@
+package csc.io;
+
+import csc.database.MainDatabase;
+import csc.interfaces.BatchConsumer;
+import csc.interfaces.LineParse;
+import csc.metrics.Metrics;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.UserType;
+import csc.util.Constants;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports large files of users or travels. The file is split into chunks at
+ * line boundaries, and the chunks are parsed on several threads. The lines are
+ * split into fields without regular expressions when the delimiter is a single
+ * plain character. Each chunk becomes one batch, and the batches are handed out
+ * in the order of the file, so a later line updates an earlier one as if it
+ * was uploaded later.
+ */
+public final class BulkImport {
+  /**
+   * The logger for this class.
+   */
+  private static final Logger log = Logger.getLogger(BulkImport.class.getName());
+  /**
+   * The amount of threads used for parsing.
+   */
+  private static final int PARALLELISM = Math.max(1,
+      Runtime.getRuntime().availableProcessors());
+  /**
+   * The most chunks parsed ahead of the batch being handed out, per thread.
+   * Bounds the memory used by parsed objects waiting their turn.
+   */
+  private static final int CHUNKS_PER_THREAD = 2;
+  /**
+   * The characters that have a special meaning in a regular expression.
+   */
+  private static final String REGEX_CHARACTERS = ".$|()[]{}^?*+\\";
+
+  /**
+   * The threads shared by all imports.
+   */
+  private static ExecutorService workers = null;
+
+  /**
+   * Default empty constructor.
+   */
+  private BulkImport() {
+  }
+
+  /**
+   * Imports travels from a file into a database.
+   *
+   * @param file
+   *          the file to import, one travel per line
+   * @param type
+   *          the type of the travels
+   * @param data
+   *          the database to add the travels to
+   * @return the amount of travels read; invalid ones are read but not added
+   */
+  public static int importTravels(File file, TravelType type, final MainDatabase data) {
+    return parse(file, type, new BatchConsumer<SingleTravel>() {
+      @Override
+      public void accept(List<SingleTravel> batch) {
+        data.addTravels(batch);
+      }
+    });
+  }
+
+  /**
+   * Imports users from a file into a database.
+   *
+   * @param file
+   *          the file to import, one user per line
+   * @param type
+   *          the type of the users
+   * @param data
+   *          the database to add the users to
+   * @return the amount of users read
+   */
+  public static int importUsers(File file, UserType type, final MainDatabase data) {
+    return parse(file, type, new BatchConsumer<RegisteredUser>() {
+      @Override
+      public void accept(List<RegisteredUser> batch) {
+        data.addUsers(batch);
+      }
+    });
+  }
+
+  /**
+   * Parses a file line by line on several threads. Lines that cannot be parsed
+   * are logged and skipped, as in InputOperations.parseData.
+   *
+   * @param file
+   *          the file to parse
+   * @param type
+   *          the type of the objects, which parses each line
+   * @param out
+   *          receives the parsed objects, a batch at a time in the order of the
+   *          file, on the calling thread
+   * @return the amount of objects parsed; 0 if the file could not be read
+   */
+  public static <T, E extends LineParse<T>> int parse(File file, final E type,
+      BatchConsumer<T> out) {
+    if (!file.exists()) {
+      return 0;
+    }
+    long started = Metrics.now();
+    int count = 0;
+    Deque<Future<List<T>>> chunks = new ArrayDeque<>();
+    try (FileInputStream in = new FileInputStream(file);
+        FileChannel channel = in.getChannel()) {
+
+      ExecutorService pool = getWorkers();
+      long size = channel.size();
+      for (long start = 0; start < size;) {
+        final long from = start;
+        final long to = endOfLine(channel,
+            Math.min(size, start + Constants.IMPORT_CHUNK_SIZE), size);
+        chunks.add(pool.submit(new Callable<List<T>>() {
+          @Override
+          public List<T> call() throws IOException {
+            return parseChunk(channel.map(FileChannel.MapMode.READ_ONLY, from, to - from),
+                type);
+          }
+        }));
+        start = to;
+        if (chunks.size() >= PARALLELISM * CHUNKS_PER_THREAD) {
+          count += handOut(chunks.removeFirst(), out);
+        }
+      }
+      while (!chunks.isEmpty()) {
+        count += handOut(chunks.removeFirst(), out);
+      }
+    } catch (IOException e) {
+      log.log(Level.SEVERE, e.toString(), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.log(Level.WARNING, "The import was interrupted.", e);
+    } catch (ExecutionException e) {
+      log.log(Level.SEVERE, "Error importing " + file, e.getCause());
+    } finally {
+      for (Future<List<T>> future : chunks) {
+        future.cancel(true);
+      }
+    }
+    InputOperations.recordImport(started, count);
+    return count;
+  }
+
+  /**
+   * Waits for a chunk to be parsed, and hands its objects out.
+   *
+   * @param chunk
+   *          the chunk being parsed
+   * @param out
+   *          receives the parsed objects
+   * @return the amount of objects handed out
+   * @throws InterruptedException
+   *           if the thread was interrupted while waiting
+   * @throws ExecutionException
+   *           if the chunk could not be parsed
+   */
+  private static <T> int handOut(Future<List<T>> chunk, BatchConsumer<T> out)
+      throws InterruptedException, ExecutionException {
+    List<T> batch = chunk.get();
+    if (!batch.isEmpty()) {
+      out.accept(batch);
+    }
+    return batch.size();
+  }
+
+  /**
+   * Finds the end of the line that a position is in.
+   *
+   * @param channel
+   *          the file
+   * @param position
+   *          the position to start looking at
+   * @param size
+   *          the size of the file
+   * @return the position after the next line break; size if there is none
+   * @throws IOException
+   *           if there was an error in reading
+   */
+  private static long endOfLine(FileChannel channel, long position, long size)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(1024);
+    while (position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  /**
+   * Parses the lines of a chunk.
+   *
+   * @param chunk
+   *          the bytes of the chunk, which ends at a line break or the end of
+   *          the file
+   * @param type
+   *          the type of the objects, which parses each line
+   * @return the objects parsed, in order
+   */
+  private static <T> List<T> parseChunk(ByteBuffer chunk, LineParse<T> type) {
+    List<T> ret = new ArrayList<>();
+    Charset charset = Charset.forName(Constants.FILE_ENCODING);
+    String delimiter = type.getDelimiter();
+    boolean plain = delimiter.length() == 1 && REGEX_CHARACTERS.indexOf(delimiter.charAt(0)) < 0;
+    String[] fields = new String[type.getNumArguments()];
+    byte[] line = new byte[256];
+
+    while (chunk.hasRemaining()) {
+      int length = 0;
+      boolean ended = false;
+      while (chunk.hasRemaining() && !ended) {
+        byte next = chunk.get();
+        if (next == '\n') {
+          ended = true;
+        } else {
+          if (length == line.length) {
+            line = Arrays.copyOf(line, length * 2);
+          }
+          line[length++] = next;
+        }
+      }
+      if (length > 0 && line[length - 1] == '\r') {
+        length--; // a Windows line break
+      }
+
+      int found;
+      String[] args;
+      if (plain) {
+        found = split(line, length, (byte) delimiter.charAt(0), charset, fields);
+        args = fields;
+      } else {
+        args = new String(line, 0, length, charset).split(delimiter);
+        found = args.length;
+      }
+      try {
+        // invalid input -- wrong number of arguments
+        if (found == type.getNumArguments()) {
+          ret.add(type.create(args));
+        } else {
+          log.log(Level.WARNING, "A line had {0} arguments, but expected was {1}. Skipping.",
+              new Object[] { found, type.getNumArguments() });
+        }
+      } catch (ParseException | NumberFormatException e) {
+        log.log(Level.SEVERE, "A line had incorrect arguments. Skipping.", e);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * Splits a line into fields at a delimiter, like String.split: trailing
+   * empty fields are not counted, and an empty line is a single empty field.
+   *
+   * @param line
+   *          the bytes of the line
+   * @param length
+   *          the length of the line
+   * @param delimiter
+   *          the delimiter between fields
+   * @param charset
+   *          the encoding of the line
+   * @param fields
+   *          filled with the fields, if there are as many as it can hold
+   * @return the amount of fields in the line
+   */
+  private static int split(byte[] line, int length, byte delimiter, Charset charset,
+      String[] fields) {
+    if (length == 0) {
+      return 1;
+    }
+    // count first, so that lines of the wrong length create no strings
+    int end = length;
+    while (end > 0 && line[end - 1] == delimiter) {
+      end--; // trailing empty fields
+    }
+    int count = end == 0 ? 0 : 1;
+    for (int i = 0; i < end; i++) {
+      if (line[i] == delimiter) {
+        count++;
+      }
+    }
+    if (count != fields.length) {
+      return count;
+    }
+    int start = 0;
+    int field = 0;
+    for (int i = 0; i <= end; i++) {
+      if (i == end || line[i] == delimiter) {
+        fields[field++] = new String(line, start, i - start, charset);
+        start = i + 1;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Gets the threads shared by all imports, creating them if needed.
+   *
+   * @return the shared threads
+   */
+  private static synchronized ExecutorService getWorkers() {
+    if (workers == null) {
+      workers = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "bulk-import");
+          thread.setDaemon(true); // never keep the application alive
+          return thread;
+        }
+      });
+    }
+    return workers;
+  }
+}
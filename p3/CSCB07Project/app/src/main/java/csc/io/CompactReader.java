@@ -0,0 +1,230 @@
+package csc.io;
+
+import csc.database.MainDatabase;
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.UserType;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reads travels and users in the compact binary format written by
+ * CompactWriter.
+ */
+class CompactReader {
+  /**
+   * The stream to read from.
+   */
+  private final DataInput in;
+  /**
+   * The strings read so far, in order of their references.
+   */
+  private final List<String> strings;
+
+  /**
+   * Creates a reader with an empty string table.
+   *
+   * @param in
+   *          the stream to read from
+   */
+  CompactReader(DataInput in) {
+    this.in = in;
+    this.strings = new ArrayList<>();
+  }
+
+  /**
+   * Reads a single byte.
+   *
+   * @return the byte read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  byte readByte() throws IOException {
+    return in.readByte();
+  }
+
+  /**
+   * Reads a non-negative number written by writeVarLong.
+   *
+   * @return the number read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte next = in.readByte();
+      value |= (long) (next & 0x7F) << shift;
+      if (next >= 0) { // the high bit is clear on the last byte
+        return value;
+      }
+    }
+    throw new IOException("Variable-length number is too long.");
+  }
+
+  /**
+   * Reads a number written by writeSignedVarLong.
+   *
+   * @return the number read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  long readSignedVarLong() throws IOException {
+    long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Reads a string written by writeString.
+   *
+   * @return the string read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  String readString() throws IOException {
+    long ref = readVarLong();
+    if (ref == 0) {
+      String str = in.readUTF();
+      strings.add(str);
+      return str;
+    }
+    if (ref > strings.size()) {
+      throw new IOException("Invalid string reference " + ref);
+    }
+    return strings.get((int) ref - 1);
+  }
+
+  /**
+   * Reads an identifier written by writeId.
+   *
+   * @return the identifier read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  String readId() throws IOException {
+    long tag = readVarLong();
+    if ((tag & 1) != 0) {
+      return String.valueOf(tag >>> 1);
+    }
+    if (tag != 0) {
+      throw new IOException("Invalid identifier tag " + tag);
+    }
+    return in.readUTF();
+  }
+
+  /**
+   * Reads a travel written by writeTravel.
+   *
+   * @return the travel read
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  SingleTravel readTravel() throws IOException {
+    TravelType type = readType(TravelType.values());
+    String id = readId();
+    long start = readSignedVarLong();
+    long end = start + readSignedVarLong();
+    String origin = readString();
+    String destination = readString();
+    String provider = readString();
+    double cost = in.readDouble();
+    int capacity = (int) readVarLong();
+    return type.newTravel(id, new Date(start), new Date(end), origin, destination, cost,
+        provider, capacity);
+  }
+
+  /**
+   * Reads a user written by writeUser, and puts them into the database along
+   * with their booked itineraries. An existing user of the same email is
+   * replaced.
+   *
+   * @param data
+   *          the main database to put the user into
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  void readUser(MainDatabase data) throws IOException {
+    UserType type = readType(UserType.values());
+    String email = in.readUTF();
+    String firstNames = in.readUTF();
+    String lastName = in.readUTF();
+    String address = in.readUTF();
+    String creditCard = in.readUTF();
+    String password = in.readUTF();
+    Date expiryDate = new Date(readSignedVarLong());
+    RegisteredUser ru;
+    try {
+      ru = type.newUser(email, firstNames, lastName, address, creditCard, expiryDate);
+    } catch (UnsupportedOperationException e) {
+      throw new IOException("Invalid user type " + type, e);
+    }
+    ru.setPassword(password);
+    data.removeUser(email);
+    data.addUser(ru);
+
+    long count = readVarLong();
+    for (long i = 0; i < count; i++) {
+      Itinerary it = readItinerary(data);
+      if (it != null) {
+        data.restoreItinerary(ru, it);
+      }
+    }
+  }
+
+  /**
+   * Reads an itinerary and validates it.
+   *
+   * @param data
+   *          the main database to associate the itinerary with
+   * @return the read itinerary. Null is returned if it was invalid.
+   * @throws IOException
+   *           if an error occurred during reading
+   */
+  private Itinerary readItinerary(MainDatabase data) throws IOException {
+    long size = readVarLong();
+    // check the itinerary to make sure it is still valid
+    boolean validItinerary = size > 0;
+    Itinerary it = new Itinerary();
+    for (long k = 0; k < size; k++) {
+      TravelType type = readType(TravelType.values());
+      SingleTravel st = data.getTravel(type, readId());
+      if (st == null) { // doesn't exist; do not add itinerary
+        validItinerary = false;
+      } else if (validItinerary) {
+        try {
+          it.add(st);
+        } catch (IllegalArgumentException ignore) {
+          validItinerary = false;
+          // we don't need to log this -- probably a travel expired
+        }
+      }
+    }
+    if (validItinerary) {
+      return it;
+    }
+    return null;
+  }
+
+  /**
+   * Reads the ordinal of an enum constant.
+   *
+   * @param values
+   *          the constants of the enum
+   * @return the constant read
+   * @throws IOException
+   *           if an error occurred during reading, or the ordinal is invalid
+   */
+  private <T> T readType(T[] values) throws IOException {
+    int ordinal = in.readByte();
+    if (ordinal < 0 || ordinal >= values.length) {
+      throw new IOException("Invalid type " + ordinal);
+    }
+    return values[ordinal];
+  }
+}
@@ -0,0 +1,186 @@
+package csc.io;
+
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.users.RegisteredUser;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes travels and users in the compact binary format read by
+ * CompactReader. Numbers are written as variable-length integers, dates as
+ * UNIX timestamps, and repeated strings such as locations and providers as
+ * references to their first occurrence.
+ */
+class CompactWriter {
+  /**
+   * The stream to write to.
+   */
+  private final DataOutput out;
+  /**
+   * The strings written so far, and their references.
+   */
+  private final Map<String, Integer> strings;
+
+  /**
+   * Creates a writer with an empty string table.
+   *
+   * @param out
+   *          the stream to write to
+   */
+  CompactWriter(DataOutput out) {
+    this.out = out;
+    this.strings = new HashMap<>();
+  }
+
+  /**
+   * Writes a single byte.
+   *
+   * @param value
+   *          the byte to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeByte(int value) throws IOException {
+    out.writeByte(value);
+  }
+
+  /**
+   * Writes a non-negative number in as few bytes as needed, seven bits at a
+   * time.
+   *
+   * @param value
+   *          the number to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  /**
+   * Writes a number that may be negative in as few bytes as needed.
+   *
+   * @param value
+   *          the number to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeSignedVarLong(long value) throws IOException {
+    writeVarLong((value << 1) ^ (value >> 63)); // zig-zag: small magnitudes stay small
+  }
+
+  /**
+   * Writes a string, or a reference to it if it was written before.
+   *
+   * @param str
+   *          the string to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeString(String str) throws IOException {
+    Integer ref = strings.get(str);
+    if (ref != null) {
+      writeVarLong(ref);
+    } else {
+      writeVarLong(0);
+      out.writeUTF(str);
+      strings.put(str, strings.size() + 1);
+    }
+  }
+
+  /**
+   * Writes an identifier, which is written as a number if it is one.
+   *
+   * @param id
+   *          the identifier to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeId(String id) throws IOException {
+    if (isNumber(id)) {
+      writeVarLong(Long.parseLong(id) << 1 | 1);
+    } else {
+      writeVarLong(0);
+      out.writeUTF(id);
+    }
+  }
+
+  /**
+   * Writes a travel.
+   *
+   * @param st
+   *          the travel to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeTravel(SingleTravel st) throws IOException {
+    out.writeByte(st.getType().ordinal());
+    writeId(st.getIdentifier());
+    long start = st.getStartTime().getTime();
+    writeSignedVarLong(start);
+    writeSignedVarLong(st.getEndTime().getTime() - start);
+    writeString(st.getOrigin());
+    writeString(st.getDestination());
+    writeString(st.getProvider());
+    out.writeDouble(st.getCost());
+    writeVarLong(st.getCapacity());
+  }
+
+  /**
+   * Writes a user and their booked itineraries. The itineraries are written as
+   * references to their travels.
+   *
+   * @param ru
+   *          the user to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  void writeUser(RegisteredUser ru) throws IOException {
+    out.writeByte(ru.getType().ordinal());
+    out.writeUTF(ru.getIdentifier());
+    out.writeUTF(ru.getFirstNames());
+    out.writeUTF(ru.getLastName());
+    out.writeUTF(ru.getAddress());
+    out.writeUTF(ru.getCreditCard());
+    out.writeUTF(ru.getPassword());
+    writeSignedVarLong(ru.getExpiryTime());
+
+    writeVarLong(ru.getBookedItineraries().size());
+    for (Itinerary it : ru.getBookedItineraries()) {
+      writeVarLong(it.size());
+      for (SingleTravel st : it.getTravels()) {
+        out.writeByte(st.getType().ordinal());
+        writeId(st.getIdentifier());
+      }
+    }
+  }
+
+  /**
+   * Checks whether an identifier is a number that is written the same way
+   * when read back.
+   *
+   * @param id
+   *          the identifier to check
+   * @return True if it can be written as a number
+   */
+  private static boolean isNumber(String id) {
+    // at most 18 digits fit in 62 bits; no leading zeros so it reads back the same
+    if (id.isEmpty() || id.length() > 18 || (id.length() > 1 && id.charAt(0) == '0')) {
+      return false;
+    }
+    for (int i = 0; i < id.length(); i++) {
+      if (id.charAt(i) < '0' || id.charAt(i) > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,64 @@
+package csc.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read through it.
+ */
+class CountingInputStream extends FilterInputStream {
+  /**
+   * The amount of bytes read or skipped so far.
+   */
+  private long count;
+
+  /**
+   * Creates a stream that counts the bytes read from another.
+   *
+   * @param in
+   *          the stream to read from
+   */
+  CountingInputStream(InputStream in) {
+    super(in);
+  }
+
+  /**
+   * Gets the amount of bytes read or skipped so far.
+   *
+   * @return the amount of bytes
+   */
+  long getCount() {
+    return count;
+  }
+
+  @Override
+  public int read() throws IOException {
+    int read = in.read();
+    if (read >= 0) {
+      count++;
+    }
+    return read;
+  }
+
+  @Override
+  public int read(byte[] buffer, int off, int len) throws IOException {
+    int read = in.read(buffer, off, len);
+    if (read > 0) {
+      count += read;
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    long skipped = in.skip(n);
+    count += skipped;
+    return skipped;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false; // a reset would count bytes twice
+  }
+}
@@ -8,6 +8,9 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 import csc.util.Constants;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * A helper class for interacting with the SQLite Database and getting stored
  * data.
@@ -32,9 +35,8 @@ public class DatabaseOperations extends SQLiteOpenHelper {
 
   @Override
   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-    // drop and re-make
-    db.execSQL("DROP TABLE IF EXISTS " + Constants.DATABASE_TABLE);
-    onCreate(db);
+    // the table has not changed since version 1; each entry stores its own
+    // version, so older entries can still be read
   }
 
   /**
@@ -55,18 +57,134 @@ public class DatabaseOperations extends SQLiteOpenHelper {
   }
 
   /**
-   * Gets a last byte array saved in this database.
+   * Opens the last byte array saved in this database for reading. The entry is
+   * read a chunk at a time, so it is never held in memory all at once.
    *
-   * @return the last entry in this database; null if none was found
+   * @return a stream of the last entry in this database; null if none was
+   *         found
    */
-  public byte[] getLastEntry() {
-    try (SQLiteDatabase db = this.getReadableDatabase();
-        Cursor res = db.rawQuery("SELECT * FROM " + Constants.DATABASE_TABLE, null)) {
+  public InputStream openLastEntry() {
+    SQLiteDatabase db = this.getReadableDatabase();
+    try (Cursor res = db.rawQuery("SELECT id, length(" + Constants.DATABASE_COLUMN + ") FROM "
+        + Constants.DATABASE_TABLE + " ORDER BY id DESC LIMIT 1", null)) {
       // get last entry
-      if (res.moveToLast()) {
-        return res.getBlob(res.getColumnIndex(Constants.DATABASE_COLUMN));
+      if (res.moveToFirst()) {
+        InputStream in = new EntryInputStream(db, res.getLong(0), res.getLong(1));
+        db = null; // closed along with the stream
+        return in;
+      }
+    } finally {
+      if (db != null) {
+        db.close();
       }
     }
     return null;
   }
+
+  /**
+   * A stream of an entry in the database, which is read with a query for each
+   * chunk of Constants.SAVE_CHUNK_SIZE bytes.
+   */
+  private static class EntryInputStream extends InputStream {
+    /**
+     * The database to read from; closed along with this stream.
+     */
+    private final SQLiteDatabase db;
+    /**
+     * The id of the entry.
+     */
+    private final long id;
+    /**
+     * The length of the entry in bytes.
+     */
+    private final long length;
+    /**
+     * The amount of bytes of the entry that were fetched so far.
+     */
+    private long fetched;
+    /**
+     * The chunk being read.
+     */
+    private byte[] chunk;
+    /**
+     * The position of the next byte to return from the chunk.
+     */
+    private int pos;
+
+    /**
+     * Creates a stream of an entry.
+     *
+     * @param db
+     *          the database to read from
+     * @param id
+     *          the id of the entry
+     * @param length
+     *          the length of the entry in bytes
+     */
+    EntryInputStream(SQLiteDatabase db, long id, long length) {
+      this.db = db;
+      this.id = id;
+      this.length = length;
+      this.fetched = 0;
+      this.chunk = new byte[0];
+      this.pos = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!fill()) {
+        return -1;
+      }
+      return chunk[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, chunk.length - pos);
+      System.arraycopy(chunk, pos, b, off, count);
+      pos += count;
+      return count;
+    }
+
+    @Override
+    public void close() {
+      db.close();
+    }
+
+    /**
+     * Fetches the next chunk if the current one has been read.
+     *
+     * @return True if there are bytes to read; false at the end of the entry
+     * @throws IOException
+     *           if the entry could not be read
+     */
+    private boolean fill() throws IOException {
+      if (pos < chunk.length) {
+        return true;
+      }
+      if (fetched >= length) {
+        return false;
+      }
+      long size = Math.min(Constants.SAVE_CHUNK_SIZE, length - fetched);
+      // substr counts bytes of a BLOB, starting at 1
+      try (Cursor res = db.rawQuery("SELECT substr(" + Constants.DATABASE_COLUMN + ", "
+          + (fetched + 1) + ", " + size + ") FROM " + Constants.DATABASE_TABLE + " WHERE id = "
+          + id, null)) {
+        chunk = res.moveToFirst() ? res.getBlob(0) : null;
+      }
+      if (chunk == null || chunk.length == 0) {
+        chunk = new byte[0];
+        throw new IOException("The entry " + id + " was changed while reading it.");
+      }
+      fetched += chunk.length;
+      pos = 0;
+      return true;
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package csc.io;
+
+import csc.database.MainDatabase;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the database as it was at one moment, for saving. Taking it only
+ * copies each travel and user, which is quick next to encrypting and writing
+ * them, so the database is free to change again while the copy is written.
+ * The travels of its catalog that were never created are read from the
+ * catalog as they are written, since they cannot have changed.
+ */
+final class DatabaseSnapshot {
+  /**
+   * The current user of the application; may be null.
+   */
+  private final User user;
+  /**
+   * The copied travels of each type.
+   */
+  private final Map<TravelType, List<SingleTravel>> travels;
+  /**
+   * The travels of each type still only in the catalog of the database.
+   */
+  private final Map<TravelType, List<SingleTravel>> catalogTravels;
+  /**
+   * The copied users.
+   */
+  private final List<RegisteredUser> users;
+  /**
+   * The amount of journal records that this snapshot holds the changes of.
+   */
+  private final int journaled;
+
+  /**
+   * Copies a database, while it is kept from changing.
+   *
+   * @param user
+   *          the current user of the application; may be null
+   * @param data
+   *          the database to copy
+   * @param journal
+   *          the journal recording the changes of the database
+   */
+  DatabaseSnapshot(User user, MainDatabase data, Journal journal) {
+    this.user = user;
+    this.travels = new EnumMap<>(TravelType.class);
+    this.catalogTravels = new EnumMap<>(TravelType.class);
+    // the copy of each travel, so that bookings refer to the copies
+    Map<SingleTravel, SingleTravel> copied = new IdentityHashMap<>();
+    data.lockChanges();
+    try {
+      for (TravelType tt : TravelType.values()) {
+        Collection<SingleTravel> live = data.getAllTravels(tt);
+        List<SingleTravel> copies = new ArrayList<>(live.size());
+        for (SingleTravel st : live) {
+          SingleTravel copy = st.copy();
+          copies.add(copy);
+          copied.put(st, copy);
+        }
+        travels.put(tt, copies);
+        catalogTravels.put(tt, data.getCatalogTravels(tt));
+      }
+      Collection<RegisteredUser> live = data.getAllUsers();
+      this.users = new ArrayList<>(live.size());
+      for (RegisteredUser ru : live) {
+        users.add(ru.copy(copied));
+      }
+      // read while changes are kept out, so it matches the copies exactly
+      this.journaled = journal.getPending();
+    } finally {
+      data.unlockChanges();
+    }
+  }
+
+  /**
+   * Gets the current user of the application.
+   *
+   * @return the user; may be null
+   */
+  User getUser() {
+    return user;
+  }
+
+  /**
+   * Gets the travels of a type.
+   *
+   * @param type
+   *          the type of travels
+   * @return the travels
+   */
+  List<SingleTravel> getTravels(TravelType type) {
+    List<SingleTravel> all = new ArrayList<>(travels.get(type));
+    all.addAll(catalogTravels.get(type));
+    return all;
+  }
+
+  /**
+   * Gets the travels of every type.
+   *
+   * @return the travels, by type
+   */
+  List<SingleTravel> getAllTravels() {
+    List<SingleTravel> all = new ArrayList<>();
+    for (TravelType tt : TravelType.values()) {
+      all.addAll(getTravels(tt));
+    }
+    return all;
+  }
+
+  /**
+   * Gets the users.
+   *
+   * @return the copied users
+   */
+  List<RegisteredUser> getUsers() {
+    return users;
+  }
+
+  /**
+   * Gets the amount of journal records that this snapshot holds the changes
+   * of, which can be dropped once it is written.
+   *
+   * @return the amount of records
+   */
+  int getJournaled() {
+    return journaled;
+  }
+}
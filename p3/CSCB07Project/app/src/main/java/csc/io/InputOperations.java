@@ -1,6 +1,9 @@
 package csc.io;
 
 import csc.interfaces.LineParse;
+import csc.metrics.Counter;
+import csc.metrics.Histogram;
+import csc.metrics.Metrics;
 import csc.util.Constants;
 
 import java.io.BufferedReader;
@@ -29,6 +32,18 @@ public final class InputOperations {
    * The logger for this class.
    */
   private static final Logger log = Logger.getLogger(InputOperations.class.getName());
+  /**
+   * The amount of objects imported from files.
+   */
+  private static final Counter IMPORT_ROWS = Metrics.counter("import.rows");
+  /**
+   * The time taken by each import, in nanoseconds.
+   */
+  private static final Histogram IMPORT_TIME = Metrics.histogram("import.nanos");
+  /**
+   * The rate of each import, in objects per second.
+   */
+  private static final Histogram IMPORT_RATE = Metrics.histogram("import.rowsPerSecond");
 
   /**
    * A string containing all possible characters in a password.
@@ -83,6 +98,7 @@ public final class InputOperations {
    */
   public static <T, E extends LineParse<T>> Collection<T> parseData(FileInputStream in,
       E type) {
+    long start = Metrics.now();
     Collection<T> ret = new LinkedHashSet<>();
 
     // open the file for reading with the given path
@@ -108,9 +124,28 @@ public final class InputOperations {
     } catch (IOException e) {
       log.log(Level.SEVERE, e.toString(), e);
     }
+    recordImport(start, ret.size());
     return ret;
   }
 
+  /**
+   * Records the metrics of an import.
+   *
+   * @param start
+   *          the time the import started, from Metrics.now()
+   * @param rows
+   *          the amount of objects imported
+   */
+  static void recordImport(long start, int rows) {
+    if (start == 0L) {
+      return; // metrics were disabled
+    }
+    long nanos = Math.max(1L, System.nanoTime() - start);
+    IMPORT_ROWS.add(rows);
+    IMPORT_TIME.record(nanos);
+    IMPORT_RATE.record(rows * 1000000000L / nanos);
+  }
+
   /**
    * Formats a collection into line-by-line format.
    *
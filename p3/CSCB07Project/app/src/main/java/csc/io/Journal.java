@@ -0,0 +1,573 @@
+package csc.io;
+
+import android.content.Context;
+
+import csc.database.DatabaseListener;
+import csc.database.MainDatabase;
+import csc.project.UserControl;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.User;
+import csc.util.Constants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+
+/**
+ * An append-only journal of the changes made to a MainDatabase since its last
+ * snapshot. Each change is kept as a small record that is encrypted on its own,
+ * so saving costs the size of the changes rather than of the database. Loading
+ * reads the snapshot and then replays the journal on top of it.
+ */
+public class Journal implements DatabaseListener {
+  /**
+   * The logger for this class.
+   */
+  private static final Logger log = Logger.getLogger(Journal.class.getName());
+
+  /**
+   * The record of an added or replaced travel.
+   */
+  private static final byte TRAVEL_ADDED = 0;
+  /**
+   * The record of a removed travel.
+   */
+  private static final byte TRAVEL_REMOVED = 1;
+  /**
+   * The record of a travel changing its id.
+   */
+  private static final byte TRAVEL_RENAMED = 2;
+  /**
+   * The record of an added or changed user, along with their bookings.
+   */
+  private static final byte USER_CHANGED = 3;
+  /**
+   * The record of a removed user.
+   */
+  private static final byte USER_REMOVED = 4;
+  /**
+   * The record of a user changing their email.
+   */
+  private static final byte USER_RENAMED = 5;
+  /**
+   * The record of the current user of the application changing.
+   */
+  private static final byte SESSION = 6;
+  /**
+   * The largest record that is read back, in bytes; anything larger is damage.
+   */
+  private static final int MAX_RECORD_LENGTH = 1 << 24;
+  /**
+   * The version the journal is written in. Records are small enough to be
+   * encrypted whole, so the journal uses the compact format for any later
+   * version of the database.
+   */
+  private static final int VERSION =
+      Constants.DATABASE_VERSION == SaveOperations.SERIALIZED_VERSION
+          ? SaveOperations.SERIALIZED_VERSION : SaveOperations.COMPACT_VERSION;
+
+  /**
+   * The Android context to write the journal file in.
+   */
+  private final Context context;
+  /**
+   * The records that have not been written to the journal file yet.
+   */
+  private final List<byte[]> pending;
+  /**
+   * The salt of the journal file; null if the file has not been started.
+   */
+  private byte[] salt;
+  /**
+   * The amount of records in the journal file.
+   */
+  private int records;
+  /**
+   * Whether the journal file cannot be appended to, such as when a record is
+   * damaged or the file is in an older format, so a snapshot is needed.
+   */
+  private boolean needsSnapshot;
+  /**
+   * The current user as last recorded, in the form of sessionKey.
+   */
+  private String session;
+
+  /**
+   * Creates a journal that has no records.
+   *
+   * @param context
+   *          the Android context to write the journal file in
+   */
+  Journal(Context context) {
+    this.context = context;
+    this.pending = new ArrayList<>();
+    this.salt = null;
+    this.records = 0;
+    this.needsSnapshot = false;
+    this.session = "";
+  }
+
+  @Override
+  public void travelAdded(SingleTravel travel) {
+    record(TRAVEL_ADDED, travel);
+  }
+
+  @Override
+  public void travelRemoved(TravelType type, String id) {
+    record(TRAVEL_REMOVED, (byte) type.ordinal(), id);
+  }
+
+  @Override
+  public void travelRenamed(TravelType type, String oldId, String newId) {
+    record(TRAVEL_RENAMED, (byte) type.ordinal(), oldId, newId);
+  }
+
+  @Override
+  public void userChanged(RegisteredUser user) {
+    record(USER_CHANGED, user);
+  }
+
+  @Override
+  public void userRemoved(String email) {
+    record(USER_REMOVED, email);
+  }
+
+  @Override
+  public void userRenamed(String oldEmail, String newEmail) {
+    record(USER_RENAMED, oldEmail, newEmail);
+  }
+
+  /**
+   * Records the current user of the application if it has changed.
+   *
+   * @param user
+   *          the current user; may be null
+   */
+  void recordSession(User user) {
+    String key = sessionKey(user);
+    if (!key.equals(session)) {
+      session = key;
+      record(SESSION, (byte) (user == null ? -1 : user.getType().ordinal()),
+          user == null ? "" : user.getIdentifier());
+    }
+  }
+
+  /**
+   * Sets the current user of the application without recording it, after it
+   * has been saved in some other way.
+   *
+   * @param user
+   *          the current user; may be null
+   */
+  void setSession(User user) {
+    session = sessionKey(user);
+  }
+
+  /**
+   * Gets whether the changes can be appended to the journal file, rather than
+   * needing a new snapshot.
+   *
+   * @return True if the journal file is intact and not too long
+   */
+  synchronized boolean canAppend() {
+    return !needsSnapshot && records + pending.size() < Constants.JOURNAL_MAX_RECORDS;
+  }
+
+  /**
+   * Encrypts and appends the records that have not been written yet to the
+   * journal file. Only one thread should write the journal at a time.
+   *
+   * @throws IOException
+   *           if there was an error in writing
+   * @throws GeneralSecurityException
+   *           if there was an error in encryption
+   */
+  void flush() throws IOException, GeneralSecurityException {
+    List<byte[]> toWrite;
+    synchronized (this) {
+      if (pending.isEmpty()) {
+        return;
+      }
+      toWrite = new ArrayList<>(pending);
+      pending.clear();
+    }
+
+    boolean append = salt != null;
+    try (FileOutputStream out = context.openFileOutput(Constants.JOURNAL_FILE,
+        append ? Context.MODE_APPEND : Context.MODE_PRIVATE);
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(out))) {
+
+      if (!append) {
+        // un-encrypted header (necessary information for decryption)
+        salt = SaveOperations.generateSalt();
+        writer.write(VERSION);
+        writer.write(salt.length);
+        writer.write(salt);
+      }
+      for (byte[] record : toWrite) {
+        Cipher enc = SaveOperations.getEncryptionCipher(salt, null);
+        byte[] sealed = enc.doFinal(record);
+        writer.writeInt(1 + enc.getIV().length + sealed.length);
+        writer.write(enc.getIV().length);
+        writer.write(enc.getIV());
+        writer.write(sealed);
+      }
+    } catch (IOException | GeneralSecurityException e) {
+      synchronized (this) {
+        needsSnapshot = true; // the records are lost; only a snapshot can save them
+      }
+      throw e;
+    }
+    synchronized (this) {
+      records += toWrite.size();
+    }
+  }
+
+  /**
+   * Gets the amount of records that have not been written yet. Called before
+   * taking a snapshot, since the snapshot will contain all of them.
+   *
+   * @return the amount of records waiting
+   */
+  synchronized int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * Starts the journal again after a snapshot of the whole database is saved.
+   * Records made while the snapshot was taken are kept, since the snapshot may
+   * not contain them; replaying them on the snapshot is harmless.
+   *
+   * @param saved
+   *          the amount of records waiting when the snapshot was started
+   */
+  void reset(int saved) {
+    context.deleteFile(Constants.JOURNAL_FILE);
+    salt = null;
+    synchronized (this) {
+      pending.subList(0, saved).clear();
+      records = 0;
+      needsSnapshot = false;
+    }
+  }
+
+  /**
+   * Replays the journal file on the database of the application. Replay stops
+   * at the first damaged record, such as one cut short by the application
+   * being killed while writing it.
+   *
+   * @param uc
+   *          the application to replay the changes on
+   */
+  void replay(UserControl uc) {
+    try (FileInputStream in = context.openFileInput(Constants.JOURNAL_FILE);
+        DataInputStream reader = new DataInputStream(new BufferedInputStream(in))) {
+
+      int version = reader.read();
+      if (version != SaveOperations.SERIALIZED_VERSION
+          && version != SaveOperations.COMPACT_VERSION) {
+        needsSnapshot = true; // likely changed version
+        return;
+      }
+      // new records are only appended in the current format
+      needsSnapshot = version != VERSION;
+      byte[] fileSalt = new byte[reader.read()];
+      reader.readFully(fileSalt);
+      salt = fileSalt;
+
+      while (true) {
+        int length;
+        try {
+          length = reader.readInt();
+        } catch (EOFException ignore) {
+          break; // no more records
+        }
+        if (length <= 1 || length > MAX_RECORD_LENGTH) {
+          throw new IOException("Invalid journal record length " + length);
+        }
+        byte[] record = new byte[length];
+        reader.readFully(record);
+        int ivLength = record[0] & 0xFF;
+        Cipher dec = SaveOperations.getEncryptionCipher(salt,
+            Arrays.copyOfRange(record, 1, 1 + ivLength));
+        apply(uc, open(version, dec.doFinal(record, 1 + ivLength, length - 1 - ivLength)));
+        records++;
+      }
+    } catch (FileNotFoundException ignore) {
+      // no changes since the snapshot
+    } catch (IOException | GeneralSecurityException | ClassNotFoundException
+        | RuntimeException e) {
+      log.log(Level.WARNING, "The journal is damaged after " + records + " records.", e);
+      needsSnapshot = true;
+    }
+  }
+
+  /**
+   * Applies a single record to the database of the application.
+   *
+   * @param uc
+   *          the application to apply the record to
+   * @param in
+   *          the fields of the decrypted record
+   * @throws IOException
+   *           if there was an error in reading
+   * @throws ClassNotFoundException
+   *           if there was an error in compatibility
+   */
+  private static void apply(UserControl uc, RecordInput in)
+      throws IOException, ClassNotFoundException {
+    MainDatabase data = uc.getDatabase();
+    byte op = in.readByte();
+    switch (op) {
+      case TRAVEL_ADDED:
+        data.addTravel(in.readTravel());
+        break;
+      case TRAVEL_REMOVED:
+        data.removeTravel(TravelType.values()[in.readByte()], in.readString());
+        break;
+      case TRAVEL_RENAMED: {
+        SingleTravel st = data.getTravel(TravelType.values()[in.readByte()], in.readString());
+        String newId = in.readString();
+        if (st != null) {
+          data.changeIdentifier(st, newId);
+        }
+        break;
+      }
+      case USER_CHANGED:
+        in.readUser(data);
+        break;
+      case USER_REMOVED:
+        data.removeUser(in.readString());
+        break;
+      case USER_RENAMED: {
+        RegisteredUser ru = data.getUser(in.readString());
+        String newEmail = in.readString();
+        if (ru != null) {
+          data.changeEmail(ru, newEmail);
+        }
+        break;
+      }
+      case SESSION:
+        SaveOperations.restoreSession(uc, in.readByte(), in.readString());
+        break;
+      default:
+        throw new IOException("Unknown journal record " + op);
+    }
+  }
+
+  /**
+   * Opens a decrypted record for reading.
+   *
+   * @param version
+   *          the version of the journal file
+   * @param record
+   *          the decrypted record
+   * @return the fields of the record
+   * @throws IOException
+   *           if there was an error in reading
+   */
+  private static RecordInput open(int version, byte[] record) throws IOException {
+    if (version == SaveOperations.SERIALIZED_VERSION) {
+      final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(record));
+      return new RecordInput() {
+        @Override
+        public byte readByte() throws IOException {
+          return ois.readByte();
+        }
+
+        @Override
+        public String readString() throws IOException {
+          return ois.readUTF();
+        }
+
+        @Override
+        public SingleTravel readTravel() throws IOException, ClassNotFoundException {
+          return (SingleTravel) ois.readObject();
+        }
+
+        @Override
+        public void readUser(MainDatabase data) throws IOException, ClassNotFoundException {
+          SaveOperations.readUser(ois, data);
+        }
+      };
+    }
+    final CompactReader reader = new CompactReader(
+        new DataInputStream(new ByteArrayInputStream(record)));
+    return new RecordInput() {
+      @Override
+      public byte readByte() throws IOException {
+        return reader.readByte();
+      }
+
+      @Override
+      public String readString() throws IOException {
+        return reader.readString();
+      }
+
+      @Override
+      public SingleTravel readTravel() throws IOException {
+        return reader.readTravel();
+      }
+
+      @Override
+      public void readUser(MainDatabase data) throws IOException {
+        reader.readUser(data);
+      }
+    };
+  }
+
+  /**
+   * Encodes a change as a record waiting to be written.
+   *
+   * @param op
+   *          the kind of record
+   * @param fields
+   *          the fields of the record, each a Byte, String, RegisteredUser or
+   *          other serializable object
+   */
+  private void record(byte op, Object... fields) {
+    byte[] record;
+    try {
+      record = encode(op, fields);
+    } catch (IOException e) {
+      log.log(Level.SEVERE, "Error recording a change.", e);
+      synchronized (this) {
+        needsSnapshot = true;
+      }
+      return;
+    }
+    synchronized (this) {
+      pending.add(record);
+    }
+  }
+
+  /**
+   * Encodes a record in the format of the journal.
+   *
+   * @param op
+   *          the kind of record
+   * @param fields
+   *          the fields of the record, each a Byte, String, SingleTravel or
+   *          RegisteredUser
+   * @return the encoded record
+   * @throws IOException
+   *           if there was an error in writing
+   */
+  private static byte[] encode(byte op, Object... fields) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    if (VERSION == SaveOperations.SERIALIZED_VERSION) {
+      try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+        oos.writeByte(op);
+        for (Object field : fields) {
+          if (field instanceof Byte) {
+            oos.writeByte((Byte) field);
+          } else if (field instanceof String) {
+            oos.writeUTF((String) field);
+          } else if (field instanceof RegisteredUser) {
+            SaveOperations.writeUser(oos, (RegisteredUser) field);
+          } else {
+            oos.writeObject(field);
+          }
+        }
+      }
+    } else {
+      try (DataOutputStream dos = new DataOutputStream(bos)) {
+        CompactWriter writer = new CompactWriter(dos);
+        writer.writeByte(op);
+        for (Object field : fields) {
+          if (field instanceof Byte) {
+            writer.writeByte((Byte) field);
+          } else if (field instanceof String) {
+            writer.writeString((String) field);
+          } else if (field instanceof RegisteredUser) {
+            writer.writeUser((RegisteredUser) field);
+          } else {
+            writer.writeTravel((SingleTravel) field);
+          }
+        }
+      }
+    }
+    return bos.toByteArray();
+  }
+
+  /**
+   * The fields of a record, in the format of the journal file.
+   */
+  private interface RecordInput {
+    /**
+     * Reads a single byte.
+     *
+     * @return the byte read
+     * @throws IOException
+     *           if there was an error in reading
+     */
+    byte readByte() throws IOException;
+
+    /**
+     * Reads a string.
+     *
+     * @return the string read
+     * @throws IOException
+     *           if there was an error in reading
+     */
+    String readString() throws IOException;
+
+    /**
+     * Reads a travel.
+     *
+     * @return the travel read
+     * @throws IOException
+     *           if there was an error in reading
+     * @throws ClassNotFoundException
+     *           if there was an error in compatibility
+     */
+    SingleTravel readTravel() throws IOException, ClassNotFoundException;
+
+    /**
+     * Reads a user and their booked itineraries, and puts them into the
+     * database in place of any user with the same email.
+     *
+     * @param data
+     *          the main database to put the user into
+     * @throws IOException
+     *           if there was an error in reading
+     * @throws ClassNotFoundException
+     *           if there was an error in compatibility
+     */
+    void readUser(MainDatabase data) throws IOException, ClassNotFoundException;
+  }
+
+  /**
+   * Gets a string identifying the current user of the application.
+   *
+   * @param user
+   *          the current user; may be null
+   * @return the key of the user
+   */
+  private static String sessionKey(User user) {
+    if (user == null) {
+      return "";
+    }
+    return user.getType().ordinal() + ":" + user.getIdentifier();
+  }
+}
@@ -0,0 +1,533 @@
+package csc.io;
+
+import csc.database.TravelCatalog;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A TravelCatalog read in place from a memory-mapped file, so that opening it
+ * does not create an object for every travel. The file holds fixed-width
+ * records of the travels, sorted by origin and departure time, then the record
+ * numbers sorted by type and id, a table of the origins, and a pool of the
+ * strings that the records refer to. Travels are public information, so the
+ * file is not encrypted; the users and their bookings stay in the encrypted
+ * snapshot.
+ */
+class MappedCatalog implements TravelCatalog {
+  /**
+   * The first four bytes of a catalog file.
+   */
+  private static final int MAGIC = 0x43534354;
+  /**
+   * The size of the header: the magic number, and the amount of records,
+   * origins and strings.
+   */
+  private static final int HEADER_SIZE = 16;
+  /**
+   * The size of a record of a travel.
+   */
+  private static final int RECORD_SIZE = 48;
+  /**
+   * The offset of the type ordinal in a record.
+   */
+  private static final int TYPE = 0;
+  /**
+   * The offset of the string of the id in a record.
+   */
+  private static final int ID = 4;
+  /**
+   * The offset of the departure time in a record.
+   */
+  private static final int START = 8;
+  /**
+   * The offset of the arrival time in a record.
+   */
+  private static final int END = 16;
+  /**
+   * The offset of the cost in a record.
+   */
+  private static final int COST = 24;
+  /**
+   * The offset of the capacity in a record.
+   */
+  private static final int CAPACITY = 32;
+  /**
+   * The offset of the string of the origin in a record.
+   */
+  private static final int ORIGIN = 36;
+  /**
+   * The offset of the string of the destination in a record.
+   */
+  private static final int DESTINATION = 40;
+  /**
+   * The offset of the string of the provider in a record.
+   */
+  private static final int PROVIDER = 44;
+  /**
+   * The size of an entry of the origin table: the string of the origin in
+   * lower case, and its first record.
+   */
+  private static final int ORIGIN_SIZE = 8;
+  /**
+   * The encoding of the strings.
+   */
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /**
+   * The mapped file.
+   */
+  private final ByteBuffer buffer;
+  /**
+   * The amount of records.
+   */
+  private final int records;
+  /**
+   * The amount of origins.
+   */
+  private final int origins;
+  /**
+   * The amount of strings.
+   */
+  private final int strings;
+  /**
+   * The offset of the record numbers sorted by type and id.
+   */
+  private final int idTable;
+  /**
+   * The offset of the origin table.
+   */
+  private final int originTable;
+  /**
+   * The offset of the offsets of each string, relative to stringData.
+   */
+  private final int stringTable;
+  /**
+   * The offset of the encoded strings.
+   */
+  private final int stringData;
+  /**
+   * The strings decoded so far, so that travels share them.
+   */
+  private final String[] cache;
+
+  /**
+   * Reads a catalog from a buffer and checks that it is well formed.
+   *
+   * @param buffer
+   *          the contents of the catalog file
+   * @throws IOException
+   *           if the catalog is damaged
+   */
+  private MappedCatalog(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a travel catalog.");
+    }
+    this.records = buffer.getInt(4);
+    this.origins = buffer.getInt(8);
+    this.strings = buffer.getInt(12);
+    if (records < 0 || origins < 0 || strings < 0) {
+      throw new IOException("The travel catalog is damaged.");
+    }
+    long offset = HEADER_SIZE + (long) records * RECORD_SIZE;
+    this.idTable = checkOffset(offset);
+    offset += (long) records * 4;
+    this.originTable = checkOffset(offset);
+    offset += (long) origins * ORIGIN_SIZE;
+    this.stringTable = checkOffset(offset);
+    offset += (long) (strings + 1) * 4;
+    this.stringData = checkOffset(offset);
+    this.cache = new String[strings];
+    validate();
+  }
+
+  /**
+   * Maps a catalog file into memory.
+   *
+   * @param file
+   *          the catalog file
+   * @return the catalog
+   * @throws IOException
+   *           if the file could not be read, or is damaged
+   */
+  static MappedCatalog open(File file) throws IOException {
+    try (FileInputStream in = new FileInputStream(file);
+        FileChannel channel = in.getChannel()) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("The travel catalog is too large to map.");
+      }
+      // the mapping stays valid after the channel is closed
+      return new MappedCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Writes a catalog of travels.
+   *
+   * @param out
+   *          the stream to write to
+   * @param travels
+   *          the travels to write
+   * @throws IOException
+   *           if there was an error in writing
+   */
+  static void write(OutputStream out, List<SingleTravel> travels) throws IOException {
+    // fold each origin to lower case once, since travels share the strings
+    final Map<String, String> keys = new HashMap<>();
+    for (SingleTravel st : travels) {
+      if (!keys.containsKey(st.getOrigin())) {
+        keys.put(st.getOrigin(), st.getOrigin().toLowerCase());
+      }
+    }
+    final List<SingleTravel> sorted = new ArrayList<>(travels);
+    Collections.sort(sorted, new Comparator<SingleTravel>() {
+      @Override
+      public int compare(SingleTravel first, SingleTravel second) {
+        int ret = keys.get(first.getOrigin()).compareTo(keys.get(second.getOrigin()));
+        if (ret == 0) {
+          ret = first.getStartTime().compareTo(second.getStartTime());
+        }
+        return ret;
+      }
+    });
+    List<Integer> byId = new ArrayList<>(sorted.size());
+    for (int i = 0; i < sorted.size(); i++) {
+      byId.add(i);
+    }
+    Collections.sort(byId, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer first, Integer second) {
+        return compareId(sorted.get(first), sorted.get(second).getType(),
+            sorted.get(second).getIdentifier());
+      }
+    });
+
+    // the header needs the amount of origins and strings, so pool them first
+    Map<String, Integer> pool = new HashMap<>();
+    List<byte[]> encoded = new ArrayList<>();
+    List<int[]> originTable = new ArrayList<>();
+    for (int i = 0; i < sorted.size(); i++) {
+      SingleTravel st = sorted.get(i);
+      String key = keys.get(st.getOrigin());
+      if (originTable.isEmpty() || !key.equals(keys.get(sorted.get(i - 1).getOrigin()))) {
+        originTable.add(new int[] { intern(key, pool, encoded), i });
+      }
+      intern(st.getIdentifier(), pool, encoded);
+      intern(st.getOrigin(), pool, encoded);
+      intern(st.getDestination(), pool, encoded);
+      intern(st.getProvider(), pool, encoded);
+    }
+
+    try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out))) {
+      dos.writeInt(MAGIC);
+      dos.writeInt(sorted.size());
+      dos.writeInt(originTable.size());
+      dos.writeInt(encoded.size());
+      ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+      for (SingleTravel st : sorted) {
+        record.putInt(TYPE, st.getType().ordinal());
+        record.putInt(ID, pool.get(st.getIdentifier()));
+        record.putLong(START, st.getStartTime().getTime());
+        record.putLong(END, st.getEndTime().getTime());
+        record.putDouble(COST, st.getCost());
+        record.putInt(CAPACITY, st.getCapacity());
+        record.putInt(ORIGIN, pool.get(st.getOrigin()));
+        record.putInt(DESTINATION, pool.get(st.getDestination()));
+        record.putInt(PROVIDER, pool.get(st.getProvider()));
+        dos.write(record.array());
+      }
+      for (int index : byId) {
+        dos.writeInt(index);
+      }
+      for (int[] origin : originTable) {
+        dos.writeInt(origin[0]);
+        dos.writeInt(origin[1]);
+      }
+      int offset = 0;
+      for (byte[] bytes : encoded) {
+        dos.writeInt(offset);
+        offset += bytes.length;
+      }
+      dos.writeInt(offset);
+      for (byte[] bytes : encoded) {
+        dos.write(bytes);
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return records;
+  }
+
+  @Override
+  public int find(TravelType type, String id) {
+    int low = 0;
+    int high = records - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareId(buffer.getInt(idTable + mid * 4), type, id);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return buffer.getInt(idTable + mid * 4);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int firstFrom(String origin) {
+    int index = findOrigin(origin);
+    return index < 0 ? 0 : buffer.getInt(originTable + index * ORIGIN_SIZE + 4);
+  }
+
+  @Override
+  public int endFrom(String origin) {
+    int index = findOrigin(origin);
+    if (index < 0) {
+      return 0;
+    }
+    if (index + 1 < origins) {
+      return buffer.getInt(originTable + (index + 1) * ORIGIN_SIZE + 4);
+    }
+    return records;
+  }
+
+  @Override
+  public TravelType getType(int index) {
+    return TravelType.values()[buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + TYPE)];
+  }
+
+  @Override
+  public String getOrigin(int index) {
+    return string(buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + ORIGIN));
+  }
+
+  @Override
+  public String getDestination(int index) {
+    return string(buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + DESTINATION));
+  }
+
+  @Override
+  public String getProvider(int index) {
+    return string(buffer.getInt(HEADER_SIZE + index * RECORD_SIZE + PROVIDER));
+  }
+
+  @Override
+  public long getStartTime(int index) {
+    return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + START);
+  }
+
+  @Override
+  public long getEndTime(int index) {
+    return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + END);
+  }
+
+  @Override
+  public SingleTravel getTravel(int index) {
+    int base = HEADER_SIZE + index * RECORD_SIZE;
+    TravelType type = TravelType.values()[buffer.getInt(base + TYPE)];
+    return type.newTravel(string(buffer.getInt(base + ID)),
+        new Date(buffer.getLong(base + START)), new Date(buffer.getLong(base + END)),
+        string(buffer.getInt(base + ORIGIN)), string(buffer.getInt(base + DESTINATION)),
+        buffer.getDouble(base + COST), string(buffer.getInt(base + PROVIDER)),
+        buffer.getInt(base + CAPACITY));
+  }
+
+  /**
+   * Finds an origin in the origin table.
+   *
+   * @param origin
+   *          the origin, ignoring case
+   * @return the index of the origin in the table; -1 if it is not there
+   */
+  private int findOrigin(String origin) {
+    String key = origin.toLowerCase();
+    int low = 0;
+    int high = origins - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = string(buffer.getInt(originTable + mid * ORIGIN_SIZE)).compareTo(key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Compares the type and id of a record to the given ones.
+   *
+   * @param index
+   *          the number of the record
+   * @param type
+   *          the type to compare to
+   * @param id
+   *          the id to compare to
+   * @return a negative number, zero, or a positive number as the record is
+   *         before, the same as, or after the given type and id
+   */
+  private int compareId(int index, TravelType type, String id) {
+    int base = HEADER_SIZE + index * RECORD_SIZE;
+    int ret = buffer.getInt(base + TYPE) - type.ordinal();
+    if (ret == 0) {
+      ret = string(buffer.getInt(base + ID)).compareTo(id);
+    }
+    return ret;
+  }
+
+  /**
+   * Compares the type and id of a travel to the given ones, in the same order
+   * as the records are compared.
+   *
+   * @param st
+   *          the travel
+   * @param type
+   *          the type to compare to
+   * @param id
+   *          the id to compare to
+   * @return a negative number, zero, or a positive number as the travel is
+   *         before, the same as, or after the given type and id
+   */
+  private static int compareId(SingleTravel st, TravelType type, String id) {
+    int ret = st.getType().ordinal() - type.ordinal();
+    if (ret == 0) {
+      ret = st.getIdentifier().compareTo(id);
+    }
+    return ret;
+  }
+
+  /**
+   * Gets a string from the pool.
+   *
+   * @param ref
+   *          the number of the string
+   * @return the string
+   */
+  private String string(int ref) {
+    String str = cache[ref];
+    if (str == null) {
+      int start = buffer.getInt(stringTable + ref * 4);
+      byte[] bytes = new byte[buffer.getInt(stringTable + (ref + 1) * 4) - start];
+      for (int i = 0; i < bytes.length; i++) { // absolute reads are safe to share
+        bytes[i] = buffer.get(stringData + start + i);
+      }
+      str = new String(bytes, UTF_8);
+      cache[ref] = str;
+    }
+    return str;
+  }
+
+  /**
+   * Adds a string to the pool if it is not there yet.
+   *
+   * @param str
+   *          the string to add
+   * @param pool
+   *          the number of each string in the pool
+   * @param encoded
+   *          the encoded strings of the pool, in order
+   * @return the number of the string
+   */
+  private static int intern(String str, Map<String, Integer> pool, List<byte[]> encoded) {
+    Integer ref = pool.get(str);
+    if (ref == null) {
+      ref = encoded.size();
+      pool.put(str, ref);
+      encoded.add(str.getBytes(UTF_8));
+    }
+    return ref;
+  }
+
+  /**
+   * Checks that an offset lies within the buffer.
+   *
+   * @param offset
+   *          the offset to check
+   * @return the offset
+   * @throws IOException
+   *           if the offset is past the end of the buffer
+   */
+  private int checkOffset(long offset) throws IOException {
+    if (offset > buffer.limit()) {
+      throw new IOException("The travel catalog is cut short.");
+    }
+    return (int) offset;
+  }
+
+  /**
+   * Checks that every reference in the catalog points inside of it, so that
+   * reading a travel later cannot fail. Only numbers are read; no travels or
+   * strings are created.
+   *
+   * @throws IOException
+   *           if the catalog is damaged
+   */
+  private void validate() throws IOException {
+    int last = 0;
+    for (int i = 0; i <= strings; i++) {
+      int offset = buffer.getInt(stringTable + i * 4);
+      if (offset < last) {
+        throw new IOException("The travel catalog has a damaged string table.");
+      }
+      last = offset;
+    }
+    checkOffset((long) stringData + last);
+    int types = TravelType.values().length;
+    for (int i = 0; i < records; i++) {
+      int base = HEADER_SIZE + i * RECORD_SIZE;
+      int type = buffer.getInt(base + TYPE);
+      int index = buffer.getInt(idTable + i * 4);
+      if (type < 0 || type >= types || index < 0 || index >= records
+          || !isString(buffer.getInt(base + ID)) || !isString(buffer.getInt(base + ORIGIN))
+          || !isString(buffer.getInt(base + DESTINATION))
+          || !isString(buffer.getInt(base + PROVIDER))) {
+        throw new IOException("The travel catalog has a damaged record " + i);
+      }
+    }
+    last = 0;
+    for (int i = 0; i < origins; i++) {
+      int first = buffer.getInt(originTable + i * ORIGIN_SIZE + 4);
+      if (!isString(buffer.getInt(originTable + i * ORIGIN_SIZE)) || first < last
+          || first > records) {
+        throw new IOException("The travel catalog has a damaged origin " + i);
+      }
+      last = first;
+    }
+  }
+
+  /**
+   * Checks whether a number refers to a string of the pool.
+   *
+   * @param ref
+   *          the number to check
+   * @return True if it is the number of a string
+   */
+  private boolean isString(int ref) {
+    return ref >= 0 && ref < strings;
+  }
+}
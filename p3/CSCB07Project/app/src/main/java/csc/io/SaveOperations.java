@@ -3,29 +3,38 @@ package csc.io;
 import android.content.Context;
 
 import csc.database.MainDatabase;
+import csc.metrics.Histogram;
+import csc.metrics.Metrics;
 import csc.project.UserControl;
 import csc.travel.Itinerary;
 import csc.travel.SingleTravel;
 import csc.travel.TravelType;
 import csc.users.GuestUser;
 import csc.users.RegisteredUser;
+import csc.users.User;
 import csc.users.UserType;
 import csc.util.Constants;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
-import java.io.FileInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
 import java.security.GeneralSecurityException;
 import java.security.Key;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,11 +52,59 @@ public class SaveOperations {
    * The logger for this class.
    */
   private static final Logger log = Logger.getLogger(SaveOperations.class.getName());
+  /**
+   * The time taken by each save to the journal, in nanoseconds.
+   */
+  private static final Histogram JOURNAL_SAVE = Metrics.histogram("save.journal.nanos");
+  /**
+   * The time taken by each snapshot save, from copying the database to
+   * writing the file and the database, in nanoseconds.
+   */
+  private static final Histogram SNAPSHOT_SAVE = Metrics.histogram("save.snapshot.nanos");
+  /**
+   * The size of each snapshot saved, not counting its catalog, in bytes.
+   */
+  private static final Histogram SNAPSHOT_BYTES = Metrics.histogram("save.snapshot.bytes");
+  /**
+   * The size of each catalog saved, in bytes.
+   */
+  private static final Histogram CATALOG_BYTES = Metrics.histogram("save.catalog.bytes");
+  /**
+   * The time taken by each load, including replaying the journal, in
+   * nanoseconds.
+   */
+  private static final Histogram LOAD = Metrics.histogram("load.nanos");
+  /**
+   * The size of each snapshot loaded, not counting its catalog, in bytes.
+   */
+  private static final Histogram LOAD_BYTES = Metrics.histogram("load.bytes");
+  /**
+   * The version of saves written with Java serialization.
+   */
+  static final int SERIALIZED_VERSION = 1;
+  /**
+   * The version of saves written with CompactWriter.
+   */
+  static final int COMPACT_VERSION = 2;
+  /**
+   * The version of saves written with CompactWriter, and encrypted in chunks
+   * so that they can be read without holding the whole save in memory.
+   */
+  static final int STREAMED_VERSION = 3;
+  /**
+   * The version of saves written like STREAMED_VERSION, but with the travels
+   * in a separate MappedCatalog file that is read in place.
+   */
+  static final int CATALOG_VERSION = 4;
 
   /**
    * The internal storage database.
    */
   private final DatabaseOperations storage;
+  /**
+   * The journal of the changes since the last snapshot.
+   */
+  private final Journal journal;
 
   /**
    * Initializes the save database with a connection to the Android database.
@@ -57,21 +114,54 @@ public class SaveOperations {
    */
   public SaveOperations(Context context) {
     this.storage = new DatabaseOperations(context);
+    this.journal = new Journal(context);
   }
 
   /**
-   * Serializes the database to a file and a database.
+   * Saves the changes to the database. The changes are appended to the journal
+   * if it is in use; otherwise, or once the journal grows too long, the whole
+   * database is serialized to a file and a database. The database is copied
+   * first, and the copy is written while the database keeps changing. Only one
+   * save runs at a time.
    *
    * @param uc
    *          the application to write
    */
-  public void serializeDatabase(UserControl uc) {
+  public synchronized void serializeDatabase(UserControl uc) {
+    long start = Metrics.now();
+    if (Constants.USE_JOURNAL && journal.canAppend()) {
+      journal.recordSession(uc.getUser());
+      try {
+        journal.flush();
+        JOURNAL_SAVE.recordSince(start);
+        return;
+      } catch (IOException | GeneralSecurityException e) {
+        log.log(Level.SEVERE, "Error writing the journal. Saving a snapshot instead.", e);
+      }
+    }
+
     // truncate the file by default.
     try {
-      byte[] bytes = serializeToBytes(uc);
+      // edits only wait for the copy, which holds exactly the saved changes
+      DatabaseSnapshot snapshot = new DatabaseSnapshot(uc.getUser(), uc.getDatabase(), journal);
+      String catalog = null;
+      if (Constants.DATABASE_VERSION == CATALOG_VERSION) {
+        catalog = writeCatalog(uc, snapshot);
+        if (Metrics.isEnabled()) {
+          CATALOG_BYTES.record(uc.getFileStreamPath(catalog).length());
+        }
+      }
+      byte[] bytes = serializeToBytes(snapshot, catalog, Constants.DATABASE_VERSION);
 
-      writeBytesToFile(bytes, uc, Constants.SAVE_FILE);
+      boolean written = writeBytesToFile(bytes, uc, Constants.SAVE_FILE);
       storage.insertEntry(bytes);
+      if (written) { // the snapshot has these changes of the journal
+        journal.reset(snapshot.getJournaled());
+        journal.setSession(uc.getUser());
+        deleteCatalogs(uc, catalog);
+      }
+      SNAPSHOT_SAVE.recordSince(start);
+      SNAPSHOT_BYTES.record(bytes.length);
 
     } catch (IOException | GeneralSecurityException e) {
       log.log(Level.SEVERE, "Error serializing.", e);
@@ -87,142 +177,274 @@ public class SaveOperations {
    *          the Android context
    * @param path
    *          the path of the file
+   * @return True if the file was written
    */
-  private static void writeBytesToFile(byte[] data, Context context, String path) {
+  private static boolean writeBytesToFile(byte[] data, Context context, String path) {
     try (FileOutputStream out = context.openFileOutput(path, Context.MODE_PRIVATE);
         BufferedOutputStream writer = new BufferedOutputStream(out)) {
 
       writer.write(data);
+      return true;
     } catch (IOException e) {
       log.log(Level.SEVERE, "Error writing bytes to file.", e);
     }
+    return false;
   }
 
   /**
-   * Converts a MainDatabase into a byte array for serialization.
+   * Writes every travel to a new catalog file. Each snapshot gets its own
+   * catalog, so that the previous snapshot stays readable if this one fails.
    *
    * @param uc
-   *          the database to serialize
+   *          the application to write the catalog for
+   * @param snapshot
+   *          the copy of the database to write the travels of
+   * @return the name of the catalog file
+   * @throws IOException
+   *           if there was an error in writing
+   */
+  static String writeCatalog(UserControl uc, DatabaseSnapshot snapshot)
+      throws IOException {
+    List<SingleTravel> travels = snapshot.getAllTravels();
+    String name = Constants.CATALOG_PREFIX + Long.toHexString(new SecureRandom().nextLong());
+    try (FileOutputStream out = uc.openFileOutput(name, Context.MODE_PRIVATE)) {
+      MappedCatalog.write(out, travels);
+    }
+    return name;
+  }
+
+  /**
+   * Deletes the catalog files that are no longer referred to by the snapshot.
+   * A catalog the database still reads from stays readable, as its mapping
+   * outlives the file.
+   *
+   * @param context
+   *          the Android context
+   * @param keep
+   *          the name of the catalog file to keep; null deletes all of them
+   */
+  private static void deleteCatalogs(Context context, String keep) {
+    for (String name : context.fileList()) {
+      if (name.startsWith(Constants.CATALOG_PREFIX) && !name.equals(keep)) {
+        context.deleteFile(name);
+      }
+    }
+  }
+
+  /**
+   * Converts a copy of the database into a byte array for serialization.
+   *
+   * @param snapshot
+   *          the copy of the database to serialize
+   * @param catalog
+   *          the name of the catalog file holding the travels; null if the
+   *          travels are written in the snapshot
+   * @param version
+   *          the version of the save to write; a catalog is only written with
+   *          CATALOG_VERSION
    * @return a byte array representing the database
    * @throws IOException
    *           if there was an error in closing
    * @throws GeneralSecurityException
    *           if there was an error in encryption
    */
-  private static byte[] serializeToBytes(UserControl uc)
+  static byte[] serializeToBytes(DatabaseSnapshot snapshot, String catalog, int version)
       throws IOException, GeneralSecurityException {
 
-    MainDatabase data = uc.getDatabase();
     try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
         BufferedOutputStream writer = new BufferedOutputStream(bos)) {
 
       byte[] salt = generateSalt();
-      Cipher enc = getEncryptionCipher(salt, null);
       // un-encrypted header (necessary information for decryption)
-      writer.write(Constants.DATABASE_VERSION);
+      writer.write(version);
       writer.write(salt.length);
       writer.write(salt);
+
+      if (version >= STREAMED_VERSION) {
+        // each chunk carries its own IV
+        try (DataOutputStream dos = new DataOutputStream(new SealedOutputStream(writer, salt))) {
+          writeCompact(new CompactWriter(dos), snapshot, catalog);
+        }
+        return bos.toByteArray();
+      }
+      Cipher enc = getEncryptionCipher(salt, null);
       writer.write(enc.getIV().length);
       writer.write(enc.getIV());
-
-      try (ObjectOutputStream oos = new ObjectOutputStream(
-          new CipherOutputStream(writer, enc))) {
-        // if we need any settings, write them here
-        if (uc.getUser() != null) {
-          oos.writeByte(uc.getUser().getType().ordinal());
-          oos.writeUTF(uc.getUser().getIdentifier());
-        } else {
-          oos.writeByte(-1);
-          oos.writeUTF("");
+      if (version == SERIALIZED_VERSION) {
+        try (ObjectOutputStream oos = new ObjectOutputStream(
+            new CipherOutputStream(writer, enc))) {
+          writeSerialized(oos, snapshot);
         }
-
-        // write the travel database
-        oos.writeByte(TravelType.values().length);
-        for (TravelType tt : TravelType.values()) {
-          // we don't directly serialize the collection because
-          // MainDatabase indexes the origins
-          // so each SingleTravel must be added one by one on reading
-          Collection<SingleTravel> travels = data.getAllTravels(tt);
-          oos.writeInt(travels.size());
-          for (SingleTravel st : travels) {
-            oos.writeObject(st);
-          }
+      } else {
+        try (DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new CipherOutputStream(writer, enc)))) {
+          writeCompact(new CompactWriter(dos), snapshot, null);
         }
+      }
+      return bos.toByteArray();
+    }
+  }
 
-        // write the user database
-        oos.writeInt(data.getAllUsers().size());
-        for (RegisteredUser ru : data.getAllUsers()) {
-          // we don't want to directly serialize the itineraries because we want
-          // to strictly check them to make sure they're valid
-          // plus, we can use the existing TravelDatabase to avoid conflicts
-          // with equals() and hashCode() for itineraries
-          oos.writeObject(ru);
-
-          oos.writeInt(ru.getBookedItineraries().size());
-          for (Itinerary it : ru.getBookedItineraries()) {
-            oos.writeInt(it.size());
-            for (SingleTravel st : it.getTravels()) {
-              oos.writeByte(st.getType().ordinal());
-              oos.writeUTF(st.getIdentifier());
-            }
-          }
+  /**
+   * Writes the database with Java serialization.
+   *
+   * @param oos
+   *          the stream to write to
+   * @param snapshot
+   *          the copy of the database to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  private static void writeSerialized(ObjectOutputStream oos, DatabaseSnapshot snapshot)
+      throws IOException {
+    User user = snapshot.getUser();
+    // if we need any settings, write them here
+    if (user != null) {
+      oos.writeByte(user.getType().ordinal());
+      oos.writeUTF(user.getIdentifier());
+    } else {
+      oos.writeByte(-1);
+      oos.writeUTF("");
+    }
+
+    // write the travel database
+    oos.writeByte(TravelType.values().length);
+    for (TravelType tt : TravelType.values()) {
+      // we don't directly serialize the collection because
+      // MainDatabase indexes the origins
+      // so each SingleTravel must be added one by one on reading
+      Collection<SingleTravel> travels = snapshot.getTravels(tt);
+      oos.writeInt(travels.size());
+      for (SingleTravel st : travels) {
+        oos.writeObject(st);
+      }
+    }
+
+    // write the user database
+    oos.writeInt(snapshot.getUsers().size());
+    for (RegisteredUser ru : snapshot.getUsers()) {
+      writeUser(oos, ru);
+    }
+  }
+
+  /**
+   * Writes the database in the compact binary format.
+   *
+   * @param writer
+   *          the writer to write with
+   * @param snapshot
+   *          the copy of the database to write
+   * @param catalog
+   *          the name of the catalog file holding the travels; null writes the
+   *          travels instead
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  private static void writeCompact(CompactWriter writer, DatabaseSnapshot snapshot,
+      String catalog) throws IOException {
+    User user = snapshot.getUser();
+    writer.writeByte(user == null ? -1 : user.getType().ordinal());
+    writer.writeString(user == null ? "" : user.getIdentifier());
+
+    if (catalog != null) {
+      writer.writeString(catalog);
+    } else {
+      for (TravelType tt : TravelType.values()) {
+        Collection<SingleTravel> travels = snapshot.getTravels(tt);
+        writer.writeVarLong(travels.size());
+        for (SingleTravel st : travels) {
+          writer.writeTravel(st);
         }
       }
-      return bos.toByteArray();
+    }
+
+    writer.writeVarLong(snapshot.getUsers().size());
+    for (RegisteredUser ru : snapshot.getUsers()) {
+      writer.writeUser(ru);
+    }
+  }
+
+  /**
+   * Writes a user and their booked itineraries to the stream.
+   *
+   * @param oos
+   *          the stream to write to
+   * @param ru
+   *          the user to write
+   * @throws IOException
+   *           if an error occurred during writing
+   */
+  static void writeUser(ObjectOutput oos, RegisteredUser ru) throws IOException {
+    // we don't want to directly serialize the itineraries because we want
+    // to strictly check them to make sure they're valid
+    // plus, we can use the existing TravelDatabase to avoid conflicts
+    // with equals() and hashCode() for itineraries
+    oos.writeObject(ru);
+
+    oos.writeInt(ru.getBookedItineraries().size());
+    for (Itinerary it : ru.getBookedItineraries()) {
+      oos.writeInt(it.size());
+      for (SingleTravel st : it.getTravels()) {
+        oos.writeByte(st.getType().ordinal());
+        oos.writeUTF(st.getIdentifier());
+      }
     }
   }
 
   /**
    * Deserializes the database from a file. If the file cannot be read, a
-   * database is read from.
+   * database is read from. The save is decoded as it is read, so it is never
+   * held in memory all at once. The journal is then replayed on top of it, and
+   * records any further changes to the database.
    *
    * @param uc
    *          the application to deserialize
    */
   public void deserializeDatabase(UserControl uc) {
-    try {
-      byte[] bytes = readBytesFromFile(uc, Constants.SAVE_FILE);
-      if (bytes == null) {
-        bytes = storage.getLastEntry();
-      }
-      if (bytes != null) {
-        deserializeFromBytes(uc, bytes);
+    long start = Metrics.now();
+    InputStream save = openSave(uc);
+    try (CountingInputStream in = save == null ? null : new CountingInputStream(save)) {
+      if (in != null) {
+        deserializeFromStream(uc, in);
+        LOAD_BYTES.record(in.getCount());
       }
     } catch (IOException | GeneralSecurityException | ClassNotFoundException e) {
       log.log(Level.SEVERE, "Error deserializing.", e);
     }
+
+    journal.replay(uc);
+    journal.setSession(uc.getUser());
+    if (Constants.USE_JOURNAL) {
+      uc.getDatabase().setListener(journal);
+    }
+    LOAD.recordSince(start);
   }
 
   /**
-   * Reads a byte array from the save file.
+   * Opens the save file for reading, or the last entry of the database if the
+   * file cannot be opened.
    *
    * @param context
    *          the Android context
-   * @param path
-   *          the path of the file
-   * @return a byte array of the file's contents; null if an error occurred
+   * @return a stream of the save; null if there was none
    */
-  private static byte[] readBytesFromFile(Context context, String path) {
-    // first check if the file exists
-    try (FileInputStream in = context.openFileInput(path);
-        BufferedInputStream reader = new BufferedInputStream(in)) {
-
-      byte[] bytes = new byte[reader.available()];
-      reader.read(bytes);
-      return bytes;
-    } catch (IOException e) {
-      log.log(Level.SEVERE, "Error reading bytes from file.", e);
+  private InputStream openSave(Context context) {
+    try {
+      return new BufferedInputStream(context.openFileInput(Constants.SAVE_FILE));
+    } catch (FileNotFoundException e) {
+      log.log(Level.WARNING, "Error opening the save file. Reading the database instead.", e);
     }
-    return null;
+    return storage.openLastEntry();
   }
 
   /**
-   * Deserializes a database from a byte array.
+   * Deserializes a database from a stream, adding each travel and user as it
+   * is read.
    *
    * @param uc
    *          the database to input the information into
-   * @param in
-   *          the byte array to read from
+   * @param reader
+   *          the stream to read from
    * @throws IOException
    *           if there was an error in reading
    * @throws GeneralSecurityException
@@ -230,63 +452,163 @@ public class SaveOperations {
    * @throws ClassNotFoundException
    *           if there was an error in compatibility
    */
-  private static void deserializeFromBytes(UserControl uc, byte[] in)
+  static void deserializeFromStream(UserControl uc, InputStream reader)
       throws IOException, GeneralSecurityException, ClassNotFoundException {
-    MainDatabase data = uc.getDatabase();
-    try (ByteArrayInputStream bis = new ByteArrayInputStream(in);
-        BufferedInputStream reader = new BufferedInputStream(bis)) {
+    DataInputStream header = new DataInputStream(reader);
+    int version = header.read();
+    if (version < SERIALIZED_VERSION || version > CATALOG_VERSION) {
+      // abort; likely changed version
+      return;
+    }
+    // un-encrypted header (salt and iv necessary for decryption)
+    byte[] salt = new byte[header.readUnsignedByte()];
+    header.readFully(salt);
 
-      if (reader.read() != Constants.DATABASE_VERSION) {
-        // abort; likely changed version
-        return;
+    if (version >= STREAMED_VERSION) {
+      try (DataInputStream dis = new DataInputStream(new SealedInputStream(reader, salt))) {
+        readCompact(new CompactReader(dis), uc, version == CATALOG_VERSION);
       }
-      // un-encrypted header (salt and iv necessary for decryption)
-      byte[] salt = new byte[reader.read()];
-      if (reader.read(salt) != salt.length) {
-        return;
+      return;
+    }
+    // older saves are sealed as a whole, so the cipher buffers all of it
+    byte[] iv = new byte[header.readUnsignedByte()];
+    header.readFully(iv);
+    Cipher enc = getEncryptionCipher(salt, iv);
+    if (version == SERIALIZED_VERSION) {
+      try (CipherInputStream cis = new CipherInputStream(reader, enc);
+          ObjectInputStream ois = new ObjectInputStream(cis)) {
+        readSerialized(ois, uc);
       }
-      byte[] iv = new byte[reader.read()];
-      if (reader.read(iv) != iv.length) {
-        return;
+    } else {
+      try (CipherInputStream cis = new CipherInputStream(reader, enc);
+          DataInputStream dis = new DataInputStream(new BufferedInputStream(cis))) {
+        readCompact(new CompactReader(dis), uc, false);
       }
-      Cipher enc = getEncryptionCipher(salt, iv);
+    }
+  }
 
-      try (CipherInputStream cis = new CipherInputStream(reader, enc);
-          ObjectInputStream ois = new ObjectInputStream(cis)) {
+  /**
+   * Reads a database written with Java serialization.
+   *
+   * @param ois
+   *          the stream to read from
+   * @param uc
+   *          the application to input the information into
+   * @throws IOException
+   *           if there was an error in reading
+   * @throws ClassNotFoundException
+   *           if there was an error in compatibility
+   */
+  private static void readSerialized(ObjectInputStream ois, UserControl uc)
+      throws IOException, ClassNotFoundException {
+    MainDatabase data = uc.getDatabase();
+    // if we need any settings, read them here
+    final byte type = ois.readByte();
+    final String user = ois.readUTF();
+
+    // read the travel database
+    int count = ois.readByte();
+    List<SingleTravel> travels = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int size = ois.readInt();
+      for (int j = 0; j < size; j++) {
+        travels.add((SingleTravel) ois.readObject());
+      }
+    }
+    data.addTravels(travels);
 
-        // if we need any settings, read them here
-        final byte type = ois.readByte();
-        final String user = ois.readUTF();
-
-        // read the travel database
-        int count = ois.readByte();
-        for (int i = 0; i < count; i++) {
-          int size = ois.readInt();
-          for (int j = 0; j < size; j++) {
-            data.addTravel((SingleTravel) ois.readObject());
-          }
-        }
+    // read the user database
+    count = ois.readInt();
+    for (int i = 0; i < count; i++) {
+      readUser(ois, data);
+    }
+    restoreSession(uc, type, user);
+  }
 
-        // read the user database
-        count = ois.readInt();
-        for (int i = 0; i < count; i++) {
-          RegisteredUser ru = (RegisteredUser) ois.readObject();
-          data.addUser(ru);
-
-          int size = ois.readInt();
-          for (int j = 0; j < size; j++) {
-            Itinerary it = readItinerary(ois, data);
-            if (it != null) {
-              ru.bookItinerary(it);
-            }
-          }
-        }
-        if (type == UserType.Guest.ordinal()) {
-          uc.setUser(new GuestUser());
-        } else if (!user.isEmpty()) {
-          uc.setUser(data.getUser(user));
+  /**
+   * Reads a database written in the compact binary format.
+   *
+   * @param reader
+   *          the reader to read with
+   * @param uc
+   *          the application to input the information into
+   * @param catalog
+   *          whether the travels are in a catalog file rather than the stream
+   * @throws IOException
+   *           if there was an error in reading
+   */
+  private static void readCompact(CompactReader reader, UserControl uc, boolean catalog)
+      throws IOException {
+    MainDatabase data = uc.getDatabase();
+    final byte type = reader.readByte();
+    final String user = reader.readString();
+
+    if (catalog) {
+      // the travels are created as they are needed, starting with the bookings
+      data.setCatalog(MappedCatalog.open(uc.getFileStreamPath(reader.readString())));
+    } else {
+      List<SingleTravel> travels = new ArrayList<>();
+      for (int i = 0; i < TravelType.values().length; i++) {
+        long size = reader.readVarLong();
+        for (long j = 0; j < size; j++) {
+          travels.add(reader.readTravel());
         }
       }
+      data.addTravels(travels);
+    }
+
+    long count = reader.readVarLong();
+    for (long i = 0; i < count; i++) {
+      reader.readUser(data);
+    }
+    restoreSession(uc, type, user);
+  }
+
+  /**
+   * Reads a user and their booked itineraries from the stream, and puts them
+   * into the database. An existing user of the same email is replaced.
+   *
+   * @param ois
+   *          the stream to read from
+   * @param data
+   *          the main database to put the user into
+   * @throws IOException
+   *           if an error occurred during reading
+   * @throws ClassNotFoundException
+   *           if there was an error in compatibility
+   */
+  static void readUser(ObjectInput ois, MainDatabase data)
+      throws IOException, ClassNotFoundException {
+    RegisteredUser ru = (RegisteredUser) ois.readObject();
+    data.removeUser(ru.getIdentifier());
+    data.addUser(ru);
+
+    int size = ois.readInt();
+    for (int j = 0; j < size; j++) {
+      Itinerary it = readItinerary(ois, data);
+      if (it != null) {
+        data.restoreItinerary(ru, it);
+      }
+    }
+  }
+
+  /**
+   * Sets the current user of the application to the one that was saved.
+   *
+   * @param uc
+   *          the application to set the user of
+   * @param type
+   *          the ordinal of the type of the user; -1 if there was none
+   * @param user
+   *          the email of the user
+   */
+  static void restoreSession(UserControl uc, byte type, String user) {
+    if (type == UserType.Guest.ordinal()) {
+      uc.setUser(new GuestUser());
+    } else if (!user.isEmpty()) {
+      uc.setUser(uc.getDatabase().getUser(user));
+    } else {
+      uc.setUser(null);
     }
   }
 
@@ -340,7 +662,7 @@ public class SaveOperations {
    * @throws IOException
    *           when the encoding is invalid
    */
-  private static Cipher getEncryptionCipher(byte[] salt, byte[] iv)
+  static Cipher getEncryptionCipher(byte[] salt, byte[] iv)
       throws GeneralSecurityException, IOException {
 
     // key is a static password + random salt, iv is random
@@ -362,7 +684,7 @@ public class SaveOperations {
    *
    * @return a byte array of the salt
    */
-  private static byte[] generateSalt() {
+  static byte[] generateSalt() {
     byte[] salt = new byte[Constants.CIPHER_SALT_LENGTH];
     SecureRandom rand = new SecureRandom();
     rand.nextBytes(salt);
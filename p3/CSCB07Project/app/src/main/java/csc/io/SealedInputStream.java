@@ -0,0 +1,148 @@
+package csc.io;
+
+import csc.util.Constants;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+
+/**
+ * An input stream that decrypts the chunks written by SealedOutputStream one
+ * at a time, so that no more than a chunk is held in memory. Each chunk is
+ * authenticated before any of its bytes are returned.
+ */
+class SealedInputStream extends InputStream {
+  /**
+   * The most bytes a chunk can take besides its contents: the length of the
+   * IV, the IV, and the authentication tag.
+   */
+  private static final int MAX_OVERHEAD = 512;
+
+  /**
+   * The stream to read the encrypted chunks from.
+   */
+  private final DataInputStream in;
+  /**
+   * The salt of the encryption key.
+   */
+  private final byte[] salt;
+  /**
+   * The encrypted chunk being read, reused between chunks.
+   */
+  private byte[] sealed;
+  /**
+   * The decrypted chunk being read, reused between chunks.
+   */
+  private byte[] buffer;
+  /**
+   * The amount of decrypted bytes in the buffer.
+   */
+  private int count;
+  /**
+   * The position of the next byte to return from the buffer.
+   */
+  private int pos;
+  /**
+   * The amount of chunks read so far.
+   */
+  private int chunks;
+
+  /**
+   * Creates a stream that decrypts with the key of the given salt.
+   *
+   * @param in
+   *          the stream to read the encrypted chunks from
+   * @param salt
+   *          the salt of the encryption key
+   */
+  SealedInputStream(InputStream in, byte[] salt) {
+    this.in = new DataInputStream(in);
+    this.salt = salt;
+    this.sealed = new byte[0];
+    this.buffer = new byte[0];
+    this.count = 0;
+    this.pos = 0;
+    this.chunks = 0;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return buffer[pos++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    int length = Math.min(len, count - pos);
+    System.arraycopy(buffer, pos, b, off, length);
+    pos += length;
+    return length;
+  }
+
+  @Override
+  public int available() {
+    return count - pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /**
+   * Decrypts the next chunk if the buffer has been read.
+   *
+   * @return True if there are bytes to read; false at the end of the stream
+   * @throws IOException
+   *           if there was an error in reading, or a chunk was damaged
+   */
+  private boolean fill() throws IOException {
+    while (pos == count) {
+      int length;
+      try {
+        length = in.readInt();
+      } catch (EOFException ignore) {
+        return false; // no more chunks
+      }
+      if (length <= 1 || length > Constants.SAVE_CHUNK_SIZE + MAX_OVERHEAD) {
+        throw new IOException("Invalid chunk length " + length + " in chunk " + chunks);
+      }
+      if (sealed.length < length) {
+        sealed = new byte[length];
+      }
+      in.readFully(sealed, 0, length);
+      int ivLength = sealed[0] & 0xFF;
+      if (1 + ivLength > length) {
+        throw new IOException("Invalid IV length " + ivLength + " in chunk " + chunks);
+      }
+      try {
+        Cipher dec = SaveOperations.getEncryptionCipher(salt,
+            Arrays.copyOfRange(sealed, 1, 1 + ivLength));
+        dec.updateAAD(SealedOutputStream.position(chunks));
+        int size = dec.getOutputSize(length - 1 - ivLength);
+        if (buffer.length < size) {
+          buffer = new byte[size];
+        }
+        count = dec.doFinal(sealed, 1 + ivLength, length - 1 - ivLength, buffer, 0);
+      } catch (GeneralSecurityException e) {
+        throw new IOException("Error decrypting chunk " + chunks, e);
+      }
+      pos = 0;
+      chunks++;
+    }
+    return true;
+  }
+}
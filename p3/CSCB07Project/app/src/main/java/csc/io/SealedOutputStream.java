@@ -0,0 +1,131 @@
+package csc.io;
+
+import csc.util.Constants;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+
+/**
+ * An output stream that encrypts what is written to it in chunks of
+ * Constants.SAVE_CHUNK_SIZE bytes, so that it can be decrypted a chunk at a
+ * time by SealedInputStream. Each chunk has its own IV, and is bound to its
+ * position in the stream so that chunks cannot be reordered.
+ */
+class SealedOutputStream extends OutputStream {
+  /**
+   * The stream to write the encrypted chunks to.
+   */
+  private final DataOutputStream out;
+  /**
+   * The salt of the encryption key.
+   */
+  private final byte[] salt;
+  /**
+   * The bytes of the chunk being written.
+   */
+  private final byte[] buffer;
+  /**
+   * The amount of bytes in the buffer.
+   */
+  private int count;
+  /**
+   * The amount of chunks written so far.
+   */
+  private int chunks;
+  /**
+   * Whether this stream was closed.
+   */
+  private boolean closed;
+
+  /**
+   * Creates a stream that encrypts with the key of the given salt.
+   *
+   * @param out
+   *          the stream to write the encrypted chunks to
+   * @param salt
+   *          the salt of the encryption key
+   */
+  SealedOutputStream(OutputStream out, byte[] salt) {
+    this.out = new DataOutputStream(out);
+    this.salt = salt;
+    this.buffer = new byte[Constants.SAVE_CHUNK_SIZE];
+    this.count = 0;
+    this.chunks = 0;
+    this.closed = false;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (count == buffer.length) {
+      seal();
+    }
+    buffer[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == buffer.length) {
+        seal();
+      }
+      int length = Math.min(len, buffer.length - count);
+      System.arraycopy(b, off, buffer, count, length);
+      count += length;
+      off += length;
+      len -= length;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      if (count > 0) {
+        seal();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Encrypts the buffer and writes it as the next chunk.
+   *
+   * @throws IOException
+   *           if there was an error in writing or encryption
+   */
+  private void seal() throws IOException {
+    try {
+      Cipher enc = SaveOperations.getEncryptionCipher(salt, null);
+      enc.updateAAD(position(chunks));
+      byte[] sealed = enc.doFinal(buffer, 0, count);
+      out.writeInt(1 + enc.getIV().length + sealed.length);
+      out.write(enc.getIV().length);
+      out.write(enc.getIV());
+      out.write(sealed);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Error encrypting a chunk.", e);
+    }
+    chunks++;
+    count = 0;
+  }
+
+  /**
+   * Gets the data that binds a chunk to its position in the stream.
+   *
+   * @param index
+   *          the index of the chunk
+   * @return the additional authenticated data of the chunk
+   */
+  static byte[] position(int index) {
+    return new byte[] { (byte) (index >>> 24), (byte) (index >>> 16), (byte) (index >>> 8),
+        (byte) index };
+  }
+}
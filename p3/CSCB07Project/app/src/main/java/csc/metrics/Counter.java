@@ -0,0 +1,57 @@
+package csc.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A count of events, such as rows imported. Counts only change while metrics
+ * are enabled.
+ */
+public final class Counter {
+  /**
+   * The count.
+   */
+  private final AtomicLong count = new AtomicLong();
+
+  /**
+   * Creates a counter at zero. Counters are created through Metrics.
+   */
+  Counter() {
+  }
+
+  /**
+   * Counts one event.
+   */
+  public void increment() {
+    if (Metrics.isEnabled()) {
+      count.incrementAndGet();
+    }
+  }
+
+  /**
+   * Counts several events.
+   *
+   * @param amount
+   *          the amount of events
+   */
+  public void add(long amount) {
+    if (Metrics.isEnabled()) {
+      count.addAndGet(amount);
+    }
+  }
+
+  /**
+   * Gets the count.
+   *
+   * @return the amount of events counted
+   */
+  public long get() {
+    return count.get();
+  }
+
+  /**
+   * Sets the count back to zero.
+   */
+  void reset() {
+    count.set(0);
+  }
+}
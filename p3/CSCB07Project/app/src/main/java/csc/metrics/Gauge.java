@@ -0,0 +1,15 @@
+package csc.metrics;
+
+/**
+ * A value that is read when a snapshot is taken, such as the size of an index.
+ */
+public interface Gauge {
+
+  /**
+   * Gets the current value. Called from the thread taking the snapshot, so it
+   * should be quick and should not wait for the locks of what it measures.
+   *
+   * @return the current value
+   */
+  public long getValue();
+}
@@ -0,0 +1,139 @@
+package csc.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A distribution of values, such as latencies in nanoseconds, kept in fixed
+ * buckets like an HdrHistogram. Values below 32 have a bucket each; above
+ * that, each power of two is split into 16 buckets, so a value is known to
+ * within about 6%. Every positive long fits, in less than a thousand buckets,
+ * and recording never allocates. Values only change while metrics are
+ * enabled.
+ */
+public final class Histogram {
+  /**
+   * The amount of sub-buckets each power of two is split into.
+   */
+  private static final int SUB_BUCKETS = 16;
+  /**
+   * log2(SUB_BUCKETS).
+   */
+  private static final int SUB_BUCKET_BITS = 4;
+  /**
+   * The values below this have a bucket each.
+   */
+  private static final int LINEAR = SUB_BUCKETS * 2;
+  /**
+   * The amount of buckets needed for every positive long.
+   */
+  static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+
+  /**
+   * The amount of values recorded in each bucket.
+   */
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  /**
+   * The sum of every value recorded.
+   */
+  private final AtomicLong sum = new AtomicLong();
+  /**
+   * The largest value recorded.
+   */
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Creates an empty histogram. Histograms are created through Metrics.
+   */
+  Histogram() {
+  }
+
+  /**
+   * Gets the bucket a value is recorded in.
+   *
+   * @param value
+   *          the value, at least 0
+   * @return the index of the bucket
+   */
+  static int bucketOf(long value) {
+    if (value < LINEAR) {
+      return (int) value;
+    }
+    // shift so that the value has SUB_BUCKET_BITS + 1 bits left
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  /**
+   * Gets the largest value that is recorded in a bucket.
+   *
+   * @param bucket
+   *          the index of the bucket
+   * @return the largest value of the bucket
+   */
+  static long highestOf(int bucket) {
+    if (bucket < LINEAR) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long sub = bucket % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Records a value. Negative values are recorded as 0.
+   *
+   * @param value
+   *          the value to record
+   */
+  public void record(long value) {
+    if (!Metrics.isEnabled()) {
+      return;
+    }
+    long recorded = Math.max(0L, value);
+    buckets.incrementAndGet(bucketOf(recorded));
+    sum.addAndGet(recorded);
+    long largest = max.get();
+    while (recorded > largest && !max.compareAndSet(largest, recorded)) {
+      largest = max.get();
+    }
+  }
+
+  /**
+   * Records the nanoseconds passed since a time from Metrics.now().
+   *
+   * @param start
+   *          the time the timing started; 0 if metrics were disabled then, in
+   *          which case nothing is recorded
+   */
+  public void recordSince(long start) {
+    if (start != 0L) {
+      record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Takes a snapshot of this histogram. Values recorded while the snapshot is
+   * taken may be partly missing from it.
+   *
+   * @return the snapshot
+   */
+  public HistogramSnapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return new HistogramSnapshot(counts, sum.get(), max.get());
+  }
+
+  /**
+   * Removes every value recorded.
+   */
+  void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0);
+    }
+    sum.set(0);
+    max.set(0);
+  }
+}
@@ -0,0 +1,109 @@
+package csc.metrics;
+
+/**
+ * The values of a Histogram at one time.
+ */
+public final class HistogramSnapshot {
+  /**
+   * The amount of values in each bucket.
+   */
+  private final long[] counts;
+  /**
+   * The amount of values.
+   */
+  private final long count;
+  /**
+   * The sum of the values.
+   */
+  private final long sum;
+  /**
+   * The largest value.
+   */
+  private final long max;
+
+  /**
+   * Creates a snapshot.
+   *
+   * @param counts
+   *          the amount of values in each bucket, which is kept
+   * @param sum
+   *          the sum of the values
+   * @param max
+   *          the largest value
+   */
+  HistogramSnapshot(long[] counts, long sum, long max) {
+    long total = 0;
+    for (long bucket : counts) {
+      total += bucket;
+    }
+    this.counts = counts;
+    this.count = total;
+    this.sum = sum;
+    this.max = max;
+  }
+
+  /**
+   * Gets the amount of values recorded.
+   *
+   * @return the amount of values
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the sum of the values recorded.
+   *
+   * @return the sum of the values
+   */
+  public long getSum() {
+    return sum;
+  }
+
+  /**
+   * Gets the largest value recorded.
+   *
+   * @return the largest value; 0 if there are none
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Gets the mean of the values recorded.
+   *
+   * @return the mean; 0 if there are none
+   */
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Gets the value that a percentage of the values are at or below, to within
+   * the precision of the histogram.
+   *
+   * @param percentile
+   *          the percentage, from 0 to 100
+   * @return the value at the percentile; 0 if there are no values
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+    long seen = 0;
+    for (int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+      if (seen >= rank) {
+        return Math.min(Histogram.highestOf(i), max);
+      }
+    }
+    return max;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d", count, getMean(),
+        getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), max);
+  }
+}
@@ -0,0 +1,49 @@
+package csc.metrics;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reports metrics to the log, one line per metric. Histograms that have no
+ * values yet are left out.
+ */
+public class LogReporter implements MetricsReporter {
+  /**
+   * The logger for this class.
+   */
+  private static final Logger log = Logger.getLogger(LogReporter.class.getName());
+
+  /**
+   * The level to log at.
+   */
+  private final Level level;
+
+  /**
+   * Creates a reporter that logs at a level.
+   *
+   * @param level
+   *          the level to log at
+   */
+  public LogReporter(Level level) {
+    this.level = level;
+  }
+
+  @Override
+  public void report(MetricsSnapshot snapshot) {
+    if (!log.isLoggable(level)) {
+      return;
+    }
+    for (Map.Entry<String, Long> entry : snapshot.getCounters().entrySet()) {
+      log.log(level, "{0}: {1}", new Object[] { entry.getKey(), entry.getValue() });
+    }
+    for (Map.Entry<String, HistogramSnapshot> entry : snapshot.getHistograms().entrySet()) {
+      if (entry.getValue().getCount() > 0) {
+        log.log(level, "{0}: {1}", new Object[] { entry.getKey(), entry.getValue() });
+      }
+    }
+    for (Map.Entry<String, Long> entry : snapshot.getGauges().entrySet()) {
+      log.log(level, "{0}: {1}", new Object[] { entry.getKey(), entry.getValue() });
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package csc.metrics;
+
+import csc.util.Constants;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The registry of every metric in the application. Metrics are created once
+ * by name, usually into static fields of the class they measure, and are
+ * recorded from any thread. While metrics are disabled, recording only reads
+ * a flag, and no clock is read.
+ */
+public final class Metrics {
+  /**
+   * The logger for this class.
+   */
+  private static final Logger log = Logger.getLogger(Metrics.class.getName());
+  /**
+   * The counters, by name.
+   */
+  private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+  /**
+   * The histograms, by name.
+   */
+  private static final ConcurrentMap<String, Histogram> histograms =
+      new ConcurrentHashMap<>();
+  /**
+   * The gauges, by name.
+   */
+  private static final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+  /**
+   * The reporters to send snapshots to.
+   */
+  private static final List<MetricsReporter> reporters = new CopyOnWriteArrayList<>();
+  /**
+   * Whether metrics are recorded.
+   */
+  private static volatile boolean enabled = Constants.METRICS_ENABLED;
+
+  /**
+   * Default empty constructor.
+   */
+  private Metrics() {
+  }
+
+  /**
+   * Checks whether metrics are recorded.
+   *
+   * @return True if metrics are recorded
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts or stops recording metrics. The values already recorded are kept.
+   *
+   * @param enabled
+   *          whether to record metrics
+   */
+  public static void setEnabled(boolean enabled) {
+    Metrics.enabled = enabled;
+  }
+
+  /**
+   * Reads the clock to start timing something, if metrics are recorded.
+   *
+   * @return the current time in nanoseconds; 0 if metrics are disabled
+   */
+  public static long now() {
+    return enabled ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Gets the counter of a name, creating it if needed.
+   *
+   * @param name
+   *          the name of the counter
+   * @return the counter
+   */
+  public static Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      Counter created = new Counter();
+      counter = counters.putIfAbsent(name, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  }
+
+  /**
+   * Gets the histogram of a name, creating it if needed.
+   *
+   * @param name
+   *          the name of the histogram
+   * @return the histogram
+   */
+  public static Histogram histogram(String name) {
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      Histogram created = new Histogram();
+      histogram = histograms.putIfAbsent(name, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Sets the gauge of a name, replacing any gauge of the same name.
+   *
+   * @param name
+   *          the name of the gauge
+   * @param gauge
+   *          the gauge; null removes it
+   */
+  public static void gauge(String name, Gauge gauge) {
+    if (gauge == null) {
+      gauges.remove(name);
+    } else {
+      gauges.put(name, gauge);
+    }
+  }
+
+  /**
+   * Adds a reporter to send every report to.
+   *
+   * @param reporter
+   *          the reporter to add
+   */
+  public static void addReporter(MetricsReporter reporter) {
+    reporters.add(reporter);
+  }
+
+  /**
+   * Stops sending reports to a reporter.
+   *
+   * @param reporter
+   *          the reporter to remove
+   */
+  public static void removeReporter(MetricsReporter reporter) {
+    reporters.remove(reporter);
+  }
+
+  /**
+   * Takes a snapshot of every metric. Metrics recorded while the snapshot is
+   * taken may be missing from it.
+   *
+   * @return the snapshot
+   */
+  public static MetricsSnapshot snapshot() {
+    Map<String, Long> counterValues = new TreeMap<>();
+    for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+      counterValues.put(entry.getKey(), entry.getValue().get());
+    }
+    Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+    for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+      histogramValues.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    Map<String, Long> gaugeValues = new TreeMap<>();
+    for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+      gaugeValues.put(entry.getKey(), entry.getValue().getValue());
+    }
+    return new MetricsSnapshot(System.currentTimeMillis(), counterValues, histogramValues,
+        gaugeValues);
+  }
+
+  /**
+   * Sends a snapshot to every reporter. Does nothing if metrics are disabled
+   * or there are no reporters.
+   */
+  public static void report() {
+    if (!enabled || reporters.isEmpty()) {
+      return;
+    }
+    MetricsSnapshot snapshot = snapshot();
+    for (MetricsReporter reporter : reporters) {
+      try {
+        reporter.report(snapshot);
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Error reporting metrics.", e);
+      }
+    }
+  }
+
+  /**
+   * Sets every counter and histogram back to zero.
+   */
+  public static void reset() {
+    for (Counter counter : counters.values()) {
+      counter.reset();
+    }
+    for (Histogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package csc.metrics;
+
+/**
+ * Sends snapshots of the metrics somewhere, such as a log or a server.
+ */
+public interface MetricsReporter {
+
+  /**
+   * Reports a snapshot of the metrics. Called on the thread asking for the
+   * report.
+   *
+   * @param snapshot
+   *          the snapshot to report
+   */
+  public void report(MetricsSnapshot snapshot);
+}
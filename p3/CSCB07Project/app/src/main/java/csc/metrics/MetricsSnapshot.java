@@ -0,0 +1,117 @@
+package csc.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The values of every metric at one time, sorted by name.
+ */
+public final class MetricsSnapshot {
+  /**
+   * When the snapshot was taken, in milliseconds since the epoch.
+   */
+  private final long time;
+  /**
+   * The counts of the counters, by name.
+   */
+  private final Map<String, Long> counters;
+  /**
+   * The histograms, by name.
+   */
+  private final Map<String, HistogramSnapshot> histograms;
+  /**
+   * The values of the gauges, by name.
+   */
+  private final Map<String, Long> gauges;
+
+  /**
+   * Creates a snapshot.
+   *
+   * @param time
+   *          when the snapshot was taken, in milliseconds since the epoch
+   * @param counters
+   *          the counts of the counters, by name, which is kept
+   * @param histograms
+   *          the histograms, by name, which is kept
+   * @param gauges
+   *          the values of the gauges, by name, which is kept
+   */
+  MetricsSnapshot(long time, Map<String, Long> counters,
+      Map<String, HistogramSnapshot> histograms, Map<String, Long> gauges) {
+    this.time = time;
+    this.counters = Collections.unmodifiableMap(counters);
+    this.histograms = Collections.unmodifiableMap(histograms);
+    this.gauges = Collections.unmodifiableMap(gauges);
+  }
+
+  /**
+   * Gets when the snapshot was taken.
+   *
+   * @return the time, in milliseconds since the epoch
+   */
+  public long getTime() {
+    return time;
+  }
+
+  /**
+   * Gets the counts of every counter.
+   *
+   * @return the counts, by name
+   */
+  public Map<String, Long> getCounters() {
+    return counters;
+  }
+
+  /**
+   * Gets every histogram.
+   *
+   * @return the histograms, by name
+   */
+  public Map<String, HistogramSnapshot> getHistograms() {
+    return histograms;
+  }
+
+  /**
+   * Gets the values of every gauge.
+   *
+   * @return the values, by name
+   */
+  public Map<String, Long> getGauges() {
+    return gauges;
+  }
+
+  /**
+   * Gets the count of a counter.
+   *
+   * @param name
+   *          the name of the counter
+   * @return the count; 0 if there is no such counter
+   */
+  public long getCounter(String name) {
+    Long count = counters.get(name);
+    return count == null ? 0 : count;
+  }
+
+  /**
+   * Gets a histogram.
+   *
+   * @param name
+   *          the name of the histogram
+   * @return the histogram; null if there is no such histogram
+   */
+  public HistogramSnapshot getHistogram(String name) {
+    return histograms.get(name);
+  }
+
+  /**
+   * Gets the value of a gauge.
+   *
+   * @param name
+   *          the name of the gauge
+   * @return the value; 0 if there is no such gauge
+   */
+  public long getGauge(String name) {
+    Long value = gauges.get(name);
+    return value == null ? 0 : value;
+  }
+}
@@ -1,14 +1,20 @@
 package csc.project;
 
 import android.app.Application;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
 
 import csc.database.MainDatabase;
+import csc.interfaces.BatchConsumer;
 import csc.interfaces.LineParse;
+import csc.io.BulkImport;
 import csc.io.InputOperations;
 import csc.io.SaveOperations;
+import csc.metrics.LogReporter;
+import csc.metrics.Metrics;
 import csc.project.R.string;
 import csc.users.RegisteredUser;
 import csc.users.User;
@@ -16,6 +22,8 @@ import csc.util.Constants;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -43,6 +51,10 @@ public class UserControl extends Application {
    * The preferences of this app.
    */
   private SharedPreferences pref = null;
+  /**
+   * Whether a background save was asked for and has not started yet.
+   */
+  private final AtomicBoolean saveQueued = new AtomicBoolean(false);
 
   @Override
   public void onCreate() {
@@ -58,29 +70,45 @@ public class UserControl extends Application {
       return; // already initialized
     }
     database = new MainDatabase();
+    database.registerMetrics();
+    // metrics are logged after each save, while they are enabled
+    Metrics.addReporter(new LogReporter(Level.INFO));
     storage = new SaveOperations(this);
     storage.deserializeDatabase(this);
     pref = getSharedPreferences(getString(string.pref_key), Context.MODE_PRIVATE);
+    // dates are read in the time zone kept by TimeFormat
+    registerReceiver(new BroadcastReceiver() {
+      @Override
+      public void onReceive(Context context, Intent intent) {
+        database.refreshTimeZone();
+      }
+    }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED));
   }
 
   /**
-   * Starts a background service for saving data.
+   * Starts a background service for saving data. Saves asked for before the
+   * queued one starts are coalesced into it, since it saves their changes too.
    */
   public void save() {
     if (storage == null) {
       return; // not initialized
     }
-    startService(new Intent(this, SaveService.class));
+    if (saveQueued.compareAndSet(false, true)) {
+      startService(new Intent(this, SaveService.class));
+    }
   }
 
   /**
    * Saves data directly to the file. Does nothing if this is not initialized.
+   * Changes made once this has started are saved by the next save.
    */
   public void saveData() {
     if (storage == null) {
       return; // not initialized
     }
+    saveQueued.set(false);
     storage.serializeDatabase(this);
+    Metrics.report();
   }
 
   /**
@@ -99,6 +127,24 @@ public class UserControl extends Application {
         new File(getDir(Constants.SAVE_DIR, Context.MODE_PRIVATE), path).getPath(), type);
   }
 
+  /**
+   * Parses a large file on several threads, handing the objects out a batch at
+   * a time in the order of the file.
+   *
+   * @param path
+   *          the path to the file
+   * @param type
+   *          the type of the objects
+   * @param out
+   *          receives the parsed objects
+   * @return the amount of objects parsed
+   */
+  public <T, E extends LineParse<T>> int importData(String path, E type,
+      BatchConsumer<T> out) {
+    return BulkImport.parse(
+        new File(getDir(Constants.SAVE_DIR, Context.MODE_PRIVATE), path), type, out);
+  }
+
   /**
    * Gets the shared preferences of this application.
    *
@@ -173,6 +219,7 @@ public class UserControl extends Application {
     if (ru != null) {
       if (ru.getPassword().isEmpty()) {
         ru.setPassword(password);
+        database.addUser(ru); // refresh serialized
       }
       if (password.equals(ru.getPassword())) {
         return ru;
@@ -5,14 +5,19 @@ import android.os.Bundle;
 import android.support.v4.app.FragmentTransaction;
 import android.view.View;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Spinner;
 
+import csc.database.ItineraryList;
+import csc.database.MainDatabase;
+import csc.database.SearchLimits;
 import csc.project.BaseActivity;
 import csc.project.R;
 import csc.project.UserControl;
 import csc.project.view.ItineraryFragment;
 import csc.project.view.ItineraryInteractionListener;
+import csc.project.view.LocationAdapter;
 import csc.travel.Itinerary;
 import csc.travel.Travel;
 import csc.travel.TravelComparator;
@@ -43,12 +48,12 @@ public class SearchItineraryActivity extends BaseActivity
   /**
    * The field for the origin.
    */
-  private EditText idOrigin = null;
+  private AutoCompleteTextView idOrigin = null;
 
   /**
    * The field for the destination.
    */
-  private EditText idDest = null;
+  private AutoCompleteTextView idDest = null;
 
   /**
    * The comparator choice.
@@ -63,8 +68,13 @@ public class SearchItineraryActivity extends BaseActivity
     user = getIntent().getStringExtra(Constants.USER_KEY);
 
     idDate = (EditText) findViewById(R.id.date);
-    idOrigin = (EditText) findViewById(R.id.email);
-    idDest = (EditText) findViewById(R.id.name);
+    idOrigin = (AutoCompleteTextView) findViewById(R.id.email);
+    idDest = (AutoCompleteTextView) findViewById(R.id.name);
+
+    // suggest the known locations as they are typed
+    MainDatabase database = ((UserControl) getApplicationContext()).getDatabase();
+    idOrigin.setAdapter(new LocationAdapter(this, database));
+    idDest.setAdapter(new LocationAdapter(this, database));
 
     // populate the entries
     spinner = (Spinner) findViewById(R.id.spinner4);
@@ -129,7 +139,14 @@ public class SearchItineraryActivity extends BaseActivity
     // tt = null means no comparison
 
     UserControl uc = (UserControl) getApplicationContext();
-    ArrayList<Itinerary> list = uc.getDatabase().searchItineraries(date, origin, dest, tt);
+    ItineraryList list;
+    if (tt == null) {
+      list = uc.getDatabase().searchItinerariesParallel(date, origin, dest, null,
+          SearchLimits.INTERACTIVE);
+    } else { // only the first results are needed when sorted
+      list = uc.getDatabase().searchTopItineraries(date, origin, dest, tt,
+          SearchLimits.INTERACTIVE);
+    }
     if (list.isEmpty()) {
       idOrigin.setError(getString(R.string.error_none));
       idOrigin.requestFocus();
@@ -138,6 +155,10 @@ public class SearchItineraryActivity extends BaseActivity
       FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
       ft.setTransition(FragmentTransaction.TRANSIT_FRAGMENT_OPEN);
       ft.replace(R.id.layout, frag).commit();
+      if (list.isTruncated()) { // a limit was reached, so some may be missing
+        idOrigin.setError(getString(R.string.search_truncated));
+        idOrigin.requestFocus();
+      }
     }
   }
 
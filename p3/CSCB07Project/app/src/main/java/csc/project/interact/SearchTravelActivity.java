@@ -5,12 +5,15 @@ import android.os.Bundle;
 import android.support.v4.app.FragmentTransaction;
 import android.view.View;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Spinner;
 
+import csc.database.MainDatabase;
 import csc.project.BaseActivity;
 import csc.project.R;
 import csc.project.UserControl;
+import csc.project.view.LocationAdapter;
 import csc.project.view.TravelFragment;
 import csc.project.view.TravelInteractionListener;
 import csc.travel.SingleTravel;
@@ -40,12 +43,12 @@ public class SearchTravelActivity extends BaseActivity implements TravelInteract
   /**
    * The field for the origin.
    */
-  private EditText idOrigin = null;
+  private AutoCompleteTextView idOrigin = null;
 
   /**
    * The field for the destination.
    */
-  private EditText idDest = null;
+  private AutoCompleteTextView idDest = null;
 
   /**
    * The comparator choice.
@@ -63,8 +66,13 @@ public class SearchTravelActivity extends BaseActivity implements TravelInteract
     setContentView(R.layout.activity_search_travel);
 
     idDate = (EditText) findViewById(R.id.date);
-    idOrigin = (EditText) findViewById(R.id.email);
-    idDest = (EditText) findViewById(R.id.name);
+    idOrigin = (AutoCompleteTextView) findViewById(R.id.email);
+    idDest = (AutoCompleteTextView) findViewById(R.id.name);
+
+    // suggest the known locations as they are typed
+    MainDatabase database = ((UserControl) getApplicationContext()).getDatabase();
+    idOrigin.setAdapter(new LocationAdapter(this, database));
+    idDest.setAdapter(new LocationAdapter(this, database));
 
     // populate the entries
     spinner = (Spinner) findViewById(R.id.spinner4);
@@ -75,13 +75,17 @@ public class ViewItineraryActivity extends BaseActivity
     if (user == null || itin == null) {
       return;
     }
+    UserControl uc = (UserControl) getApplicationContext();
     if (user.hasBooked(itin)) {
-      user.removeItinerary(itin);
-    } else {
-      user.bookItinerary(itin);
+      uc.getDatabase().removeItinerary(user, itin);
+    } else if (!uc.getDatabase().bookItinerary(user, itin)) {
+      // taken by someone else since the itinerary was shown
+      Button button = (Button) findViewById(R.id.button4);
+      button.setError(getString(R.string.error_itin_full));
+      return;
     }
     // commit changes
-    ((UserControl) getApplicationContext()).save();
+    uc.save();
 
     finish();
   }
@@ -8,15 +8,18 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
+import android.widget.AutoCompleteTextView;
 import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 
+import csc.database.MainDatabase;
 import csc.project.R;
 import csc.project.UserControl;
 import csc.project.interact.SearchItineraryActivity;
 import csc.project.interact.SearchTravelActivity;
 import csc.project.login.LoginActivity;
+import csc.project.view.LocationAdapter;
 import csc.travel.TravelComparator;
 import csc.travel.TravelType;
 import csc.util.Constants;
@@ -40,12 +43,12 @@ public class MainFragment extends Fragment {
   /**
    * The field for the origin.
    */
-  private EditText idOrigin = null;
+  private AutoCompleteTextView idOrigin = null;
 
   /**
    * The field for the destination.
    */
-  private EditText idDest = null;
+  private AutoCompleteTextView idDest = null;
 
   /**
    * The comparator choice.
@@ -84,8 +87,13 @@ public class MainFragment extends Fragment {
     newly.setText(getString(R.string.hello_msg));
 
     idDate = (EditText) rootView.findViewById(R.id.date);
-    idOrigin = (EditText) rootView.findViewById(R.id.email);
-    idDest = (EditText) rootView.findViewById(R.id.name);
+    idOrigin = (AutoCompleteTextView) rootView.findViewById(R.id.email);
+    idDest = (AutoCompleteTextView) rootView.findViewById(R.id.name);
+
+    // suggest the known locations as they are typed
+    MainDatabase database = ((UserControl) getActivity().getApplicationContext()).getDatabase();
+    idOrigin.setAdapter(new LocationAdapter(getActivity(), database));
+    idDest.setAdapter(new LocationAdapter(getActivity(), database));
 
     // populate the entries
     spinner = (Spinner) rootView.findViewById(R.id.spinner6);
@@ -1,5 +1,6 @@
 package csc.project.main;
 
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
@@ -10,6 +11,8 @@ import android.widget.EditText;
 import android.widget.Spinner;
 import android.widget.TextView;
 
+import csc.database.AddCounts;
+import csc.interfaces.BatchConsumer;
 import csc.project.R;
 import csc.project.UserControl;
 import csc.travel.SingleTravel;
@@ -17,7 +20,7 @@ import csc.travel.TravelType;
 import csc.users.RegisteredUser;
 import csc.users.UserType;
 
-import java.util.Collection;
+import java.util.List;
 
 /**
  * Fragment to upload user or travel info.
@@ -99,39 +102,47 @@ public class UploadFragment extends Fragment {
   }
 
   /**
-   * Uploads users from the given file path.
+   * Uploads users from the given file path. The file is imported in the
+   * background, and the summary is shown once it is done.
    * 
    * @param path
    *          the path of the file.
    */
-  public void uploadUser(String path) {
-    UserType ut = UserType.getByIndex(userSpinner.getSelectedItemPosition());
+  public void uploadUser(final String path) {
+    final UserType ut = UserType.getByIndex(userSpinner.getSelectedItemPosition());
     if (ut == null || !ut.isUsable() || path == null) {
       userOutput.setText(getString(R.string.invalid_param));
       return;
     }
-    UserControl uc = (UserControl) getActivity().getApplicationContext();
-    Collection<RegisteredUser> parsedData = uc.parseData(path, ut);
-
-    if (parsedData.isEmpty()) {
-      userOutput.setText(getString(R.string.empty_file));
-      return;
-    }
-    // make a string based on each result
-
-    StringBuilder sb = new StringBuilder();
-    for (RegisteredUser ru : parsedData) {
-      sb.append(ru.getIdentifier());
-      if (uc.getDatabase().getUser(ru.getIdentifier()) != null) {
-        sb.append(getString(R.string.updated));
-      } else {
-        sb.append(getString(R.string.added));
+    final UserControl uc = (UserControl) getActivity().getApplicationContext();
+    userOutput.setText(getString(R.string.upload_running));
+    new AsyncTask<Void, Void, AddCounts>() {
+      @Override
+      protected AddCounts doInBackground(Void... params) {
+        final AddCounts counts = new AddCounts();
+        int parsed = uc.importData(path, ut, new BatchConsumer<RegisteredUser>() {
+          @Override
+          public void accept(List<RegisteredUser> batch) {
+            counts.addAll(uc.getDatabase().addUsers(batch));
+          }
+        });
+        return parsed == 0 ? null : counts;
       }
-      uc.getDatabase().addUser(ru);
-      sb.append('\n');
-    }
 
-    userOutput.setText(sb.toString());
+      @Override
+      protected void onPostExecute(AddCounts counts) {
+        if (!isAdded()) {
+          return; // the fragment was left during the import
+        }
+        if (counts == null) {
+          userOutput.setText(getString(R.string.empty_file));
+          return;
+        }
+        // a line per user would be too long for large files
+        userOutput.setText(getString(R.string.upload_summary, counts.getAdded(),
+            counts.getUpdated(), counts.getUnchanged(), counts.getSkipped()));
+      }
+    }.execute();
   }
 
   /**
@@ -142,42 +153,47 @@ public class UploadFragment extends Fragment {
   }
 
   /**
-   * Action for when the upload travel file is pressed.
+   * Action for when the upload travel file is pressed. The file is imported in
+   * the background, and the summary is shown once it is done.
    * 
    * @param path
    *          the path to get the file from
    */
-  public void uploadTravel(String path) {
-    TravelType tt = TravelType.getByIndex(travelSpinner.getSelectedItemPosition());
+  public void uploadTravel(final String path) {
+    final TravelType tt = TravelType.getByIndex(travelSpinner.getSelectedItemPosition());
     if (tt == null || !tt.isUsable() || path == null) {
       travelOutput.setText(getString(R.string.invalid_param));
       return;
     }
-    UserControl uc = (UserControl) getActivity().getApplicationContext();
-    Collection<SingleTravel> parsedData = uc.parseData(path, tt);
+    final UserControl uc = (UserControl) getActivity().getApplicationContext();
+    travelOutput.setText(getString(R.string.upload_running));
+    new AsyncTask<Void, Void, AddCounts>() {
+      @Override
+      protected AddCounts doInBackground(Void... params) {
+        final AddCounts counts = new AddCounts();
+        int parsed = uc.importData(path, tt, new BatchConsumer<SingleTravel>() {
+          @Override
+          public void accept(List<SingleTravel> batch) {
+            // a travel given again in a later batch is counted as updated or unchanged
+            counts.addAll(uc.getDatabase().addTravels(batch));
+          }
+        });
+        return parsed == 0 ? null : counts;
+      }
 
-    if (parsedData.isEmpty()) {
-      travelOutput.setText(getString(R.string.empty_file));
-      return;
-    }
-    // make a string based on each result
-    StringBuilder sb = new StringBuilder();
-    for (SingleTravel st : parsedData) {
-      sb.append(st.getIdentifier());
-      if (st.isInvalid()) {
-        sb.append(getString(R.string.invalid_skip));
-      } else {
-        if (uc.getDatabase().getTravel(tt, st.getIdentifier()) != null) {
-          sb.append(getString(R.string.updated));
-        } else {
-          sb.append(getString(R.string.added));
+      @Override
+      protected void onPostExecute(AddCounts counts) {
+        if (!isAdded()) {
+          return; // the fragment was left during the import
+        }
+        if (counts == null) {
+          travelOutput.setText(getString(R.string.empty_file));
+          return;
         }
-        uc.getDatabase().addTravel(st);
+        // a line per travel would be too long for large files
+        travelOutput.setText(getString(R.string.upload_summary, counts.getAdded(),
+            counts.getUpdated(), counts.getUnchanged(), counts.getSkipped()));
       }
-      sb.append('\n');
-    }
-
-    travelOutput.setText(sb.toString());
-
+    }.execute();
   }
 }
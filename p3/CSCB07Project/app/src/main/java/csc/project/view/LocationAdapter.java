@@ -0,0 +1,64 @@
+package csc.project.view;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+
+import csc.database.MainDatabase;
+import csc.util.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ArrayAdapter} that suggests the known locations starting with what
+ * was typed, with the busiest locations first.
+ */
+public class LocationAdapter extends ArrayAdapter<String> {
+  /**
+   * The filter that looks up the locations.
+   */
+  private final Filter filter;
+
+  /**
+   * Creates a new adapter.
+   *
+   * @param context
+   *          the Android context
+   * @param database
+   *          the database to get the locations of
+   */
+  public LocationAdapter(Context context, final MainDatabase database) {
+    super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<String>());
+    this.filter = new Filter() {
+      @Override
+      protected FilterResults performFiltering(CharSequence constraint) {
+        // runs off the UI thread
+        FilterResults results = new FilterResults();
+        if (constraint != null) {
+          List<String> found = database.completeLocation(constraint.toString(),
+              Constants.COMPLETION_SIZE);
+          results.values = found;
+          results.count = found.size();
+        }
+        return results;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      protected void publishResults(CharSequence constraint, FilterResults results) {
+        setNotifyOnChange(false);
+        clear();
+        if (results.values != null) {
+          addAll((List<String>) results.values);
+        }
+        notifyDataSetChanged();
+      }
+    };
+  }
+
+  @Override
+  public Filter getFilter() {
+    return filter;
+  }
+}
@@ -7,6 +7,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -64,11 +65,15 @@ public class Itinerary extends Travel implements Iterable<SingleTravel> {
    *          the travel to add to this itinerary
    */
   public void add(SingleTravel toAdd) {
+    // seats are claimed when booking, since they may be taken after this
+    if (toAdd == null) {
+      throw new IllegalArgumentException("Travels should exist");
+    }
     // it's invalid if the time and location aren't after the end of this path
-    if (toAdd == null || toAdd.isFull()
-        || (!travel.isEmpty()
-            && (toAdd.getStartTime().before(getEndTime()) || containsOrigin(toAdd.getOrigin())
-                || !toAdd.getOrigin().equalsIgnoreCase(getDestination())))) {
+    if (!travel.isEmpty()
+        && (toAdd.getStartTime().before(getEndTime())
+            || toAdd.getOriginId() != getLast().getDestinationId()
+            || containsOrigin(toAdd.getOrigin()))) {
       throw new IllegalArgumentException("Travels should start after " + getEndTime()
           + " and should originate at " + getDestination());
     }
@@ -87,6 +92,22 @@ public class Itinerary extends Travel implements Iterable<SingleTravel> {
         .get(check.getOrigin().toLowerCase()).getIdentifier().equals(check.getIdentifier());
   }
 
+  /**
+   * Gets whether any of several travels is in this itinerary.
+   *
+   * @param check
+   *          the travels to check, compared by identity
+   * @return True if this itinerary contains any of the travels
+   */
+  public boolean containsAnyTravel(Set<SingleTravel> check) {
+    for (SingleTravel st : travel.values()) {
+      if (check.contains(st)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Gets whether a travel origin is in this itinerary.
    *
@@ -125,6 +146,23 @@ public class Itinerary extends Travel implements Iterable<SingleTravel> {
     return new Itinerary(new LinkedHashMap<>(travel));
   }
 
+  /**
+   * Makes a copy of this Itinerary made of copies of its travels.
+   *
+   * @param copies
+   *          the copy of each travel, by the travel; a travel without one is
+   *          copied on its own
+   * @return a copy of this Itinerary
+   */
+  public Itinerary copy(Map<SingleTravel, SingleTravel> copies) {
+    LinkedHashMap<String, SingleTravel> copied = new LinkedHashMap<>();
+    for (Map.Entry<String, SingleTravel> entry : travel.entrySet()) {
+      SingleTravel copy = copies.get(entry.getValue());
+      copied.put(entry.getKey(), copy == null ? entry.getValue().copy() : copy);
+    }
+    return new Itinerary(copied);
+  }
+
   /**
    * Gets the travels in this itinerary.
    *
@@ -171,13 +209,57 @@ public class Itinerary extends Travel implements Iterable<SingleTravel> {
   }
 
   /**
-   * Adds users to each travel in this itinerary. Does nothing if already
-   * booked.
+   * Claims a seat on every travel in this itinerary, or on none of them: if a
+   * travel is full, the seats claimed so far are given back.
+   *
+   * @return True if a seat was claimed on every travel
+   */
+  public boolean book() {
+    int claimed = 0;
+    for (SingleTravel travels : getTravels()) {
+      if (!travels.addUser()) {
+        break;
+      }
+      claimed++;
+    }
+    if (claimed == size()) {
+      return true;
+    }
+    for (SingleTravel travels : getTravels()) { // roll back
+      if (claimed-- == 0) {
+        break;
+      }
+      travels.removeUser();
+    }
+    return false;
+  }
+
+  /**
+   * Claims a seat on every travel in this itinerary for a booking that was
+   * saved, even on travels that are full.
+   */
+  public void restore() {
+    for (SingleTravel travels : getTravels()) {
+      travels.restoreUser();
+    }
+  }
+
+  /**
+   * Gets whether this itinerary is still sequential: each travel starts after
+   * the previous one ends, where the previous one arrives.
+   *
+   * @return True if the travels still connect
    */
-  public void book() {
+  public boolean isSequential() {
+    SingleTravel previous = null;
     for (SingleTravel travels : getTravels()) {
-      travels.addUser();
+      if (previous != null && (travels.getStartTime().before(previous.getEndTime())
+          || travels.getOriginId() != previous.getDestinationId())) {
+        return false;
+      }
+      previous = travels;
     }
+    return true;
   }
 
   /**
@@ -0,0 +1,77 @@
+package csc.travel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A registry that gives each location a small integer id, ignoring case. Names
+ * are folded to lower case once, when a travel is added, and all later
+ * comparisons use the ids. Ids are dense, start at 1 and are only valid for the
+ * life of the process; they are never saved. Safe to use from several threads.
+ */
+public final class LocationRegistry {
+  /**
+   * The id returned for a location that has never been registered.
+   */
+  public static final int UNKNOWN = 0;
+
+  /**
+   * The id of each location, by its lower case name.
+   */
+  private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+  /**
+   * The last id assigned.
+   */
+  private static final AtomicInteger last = new AtomicInteger(UNKNOWN);
+
+  /**
+   * Default empty constructor.
+   */
+  private LocationRegistry() {
+  }
+
+  /**
+   * Gets the id of a location, registering the location if needed.
+   *
+   * @param location
+   *          the location to look up
+   * @return the id of the location
+   */
+  public static int register(String location) {
+    String key = location.toLowerCase();
+    Integer id = ids.get(key);
+    if (id == null) {
+      Integer created = last.incrementAndGet();
+      id = ids.putIfAbsent(key, created);
+      if (id == null) { // no other thread registered it first
+        id = created;
+      }
+    }
+    return id;
+  }
+
+  /**
+   * Gets the id of a location without registering it.
+   *
+   * @param location
+   *          the location to look up; null returns UNKNOWN
+   * @return the id of the location; UNKNOWN if it was never registered
+   */
+  public static int lookup(String location) {
+    if (location == null) {
+      return UNKNOWN;
+    }
+    Integer id = ids.get(location.toLowerCase());
+    return id == null ? UNKNOWN : id;
+  }
+
+  /**
+   * Gets the highest id registered so far.
+   *
+   * @return the highest id; UNKNOWN if none were registered
+   */
+  public static int maxId() {
+    return last.get();
+  }
+}
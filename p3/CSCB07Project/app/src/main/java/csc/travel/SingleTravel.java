@@ -2,18 +2,32 @@ package csc.travel;
 
 import csc.interfaces.Identifiable;
 import csc.interfaces.Updatable;
+import csc.users.RegisteredUser;
+import csc.util.TimeFormat;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * A class that represents a single travel.
  */
 public abstract class SingleTravel extends Travel
-    implements Identifiable<String, TravelType>, Updatable<SingleTravel> {
+    implements Identifiable<String, TravelType>, Updatable<SingleTravel>, Cloneable {
   /**
    * Serializable implementation.
    */
   private static final long serialVersionUID = 4953963860520338679L;
+  /**
+   * Updates the number of users atomically, so that seats are counted right
+   * when several threads book at once.
+   */
+  private static final AtomicIntegerFieldUpdater<SingleTravel> NUM_USERS =
+      AtomicIntegerFieldUpdater.newUpdater(SingleTravel.class, "numUsers");
   /**
    * The id (unique number) of this travel.
    */
@@ -30,6 +44,11 @@ public abstract class SingleTravel extends Travel
    * The end time of this travel.
    */
   private Date end;
+  /**
+   * The day that this travel starts on, kept to avoid date arithmetic when
+   * searching.
+   */
+  private transient int startDay;
   /**
    * The origin location of this travel.
    */
@@ -38,14 +57,28 @@ public abstract class SingleTravel extends Travel
    * The destination location of this travel.
    */
   private String destination;
+  /**
+   * The registered id of the origin; UNKNOWN until first needed.
+   */
+  private transient int originId;
+  /**
+   * The registered id of the destination; UNKNOWN until first needed.
+   */
+  private transient int destinationId;
   /**
    * The capacity for this travel.
    */
   private int capacity;
   /**
-   * The number of users who have booked this travel.
+   * The number of users who have booked this travel. Bookings change it
+   * through NUM_USERS.
    */
-  private int numUsers;
+  private volatile int numUsers;
+  /**
+   * The users who booked an itinerary with this travel, once for each such
+   * itinerary; null if there are none. Rebuilt as bookings are loaded.
+   */
+  private transient List<RegisteredUser> bookings;
   /**
    * The provider for this travel.
    */
@@ -79,6 +112,7 @@ public abstract class SingleTravel extends Travel
     this.id = id;
     this.type = type;
     this.start = start;
+    this.startDay = TimeFormat.toEpochDay(start.getTime());
     this.end = end;
     this.origin = origin;
     this.destination = destination;
@@ -117,6 +151,11 @@ public abstract class SingleTravel extends Travel
     return end;
   }
 
+  @Override
+  public int getStartDay() {
+    return startDay;
+  }
+
   @Override
   public String getOrigin() {
     return origin;
@@ -127,6 +166,30 @@ public abstract class SingleTravel extends Travel
     return destination;
   }
 
+  /**
+   * Gets the id of the origin of this travel from the LocationRegistry.
+   *
+   * @return the id of the origin
+   */
+  public int getOriginId() {
+    if (originId == LocationRegistry.UNKNOWN) {
+      originId = LocationRegistry.register(origin);
+    }
+    return originId;
+  }
+
+  /**
+   * Gets the id of the destination of this travel from the LocationRegistry.
+   *
+   * @return the id of the destination
+   */
+  public int getDestinationId() {
+    if (destinationId == LocationRegistry.UNKNOWN) {
+      destinationId = LocationRegistry.register(destination);
+    }
+    return destinationId;
+  }
+
   /**
    * Sets the provider.
    * 
@@ -155,6 +218,14 @@ public abstract class SingleTravel extends Travel
    */
   public void setStartTime(Date start) {
     this.start = start;
+    this.startDay = TimeFormat.toEpochDay(start.getTime());
+  }
+
+  /**
+   * Computes the day of departure again, for when the time zone changes.
+   */
+  public void refreshStartDay() {
+    this.startDay = TimeFormat.toEpochDay(start.getTime());
   }
 
   /**
@@ -185,6 +256,7 @@ public abstract class SingleTravel extends Travel
    */
   public void setOrigin(String origin) {
     this.origin = origin;
+    this.originId = LocationRegistry.UNKNOWN;
   }
 
   /**
@@ -195,6 +267,7 @@ public abstract class SingleTravel extends Travel
    */
   public void setDestination(String destination) {
     this.destination = destination;
+    this.destinationId = LocationRegistry.UNKNOWN;
   }
 
   /**
@@ -216,13 +289,28 @@ public abstract class SingleTravel extends Travel
   }
 
   /**
-   * Adds a user to the total number of users booking this travel. Does nothing
-   * if this travel is full.
+   * Claims a seat of this travel for a user. Does nothing if this travel is
+   * full. Never blocks, so many users can book a popular travel at once.
+   *
+   * @return True if a seat was claimed
    */
-  public void addUser() {
-    if (!isFull()) {
-      numUsers++;
-    }
+  public boolean addUser() {
+    int booked;
+    do {
+      booked = numUsers;
+      if (booked >= capacity) {
+        return false;
+      }
+    } while (!NUM_USERS.compareAndSet(this, booked, booked + 1));
+    return true;
+  }
+
+  /**
+   * Claims a seat of this travel for a booking that was saved, even if this
+   * travel is full, as the seat was free when it was booked.
+   */
+  public void restoreUser() {
+    NUM_USERS.incrementAndGet(this);
   }
 
   /**
@@ -230,16 +318,82 @@ public abstract class SingleTravel extends Travel
    * nothing if this travel is empty.
    */
   public void removeUser() {
-    if (numUsers >= 0) {
-      numUsers--;
+    int booked;
+    do {
+      booked = numUsers;
+      if (booked <= 0) {
+        return;
+      }
+    } while (!NUM_USERS.compareAndSet(this, booked, booked - 1));
+  }
+
+  /**
+   * Makes a copy of this travel, as it is now. The copy has no bookings.
+   *
+   * @return a copy of this travel
+   */
+  public SingleTravel copy() {
+    try {
+      SingleTravel copy = (SingleTravel) clone();
+      copy.bookings = null;
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e); // Cloneable is implemented
     }
   }
 
   /**
-   * Resets the user count of this travel.
+   * Resets the user count and the bookings of this travel.
    */
   public void resetUsers() {
     numUsers = 0;
+    bookings = null;
+  }
+
+  /**
+   * Records that a user booked an itinerary with this travel.
+   *
+   * @param user
+   *          the user who booked
+   */
+  public void addBooking(RegisteredUser user) {
+    if (bookings == null) {
+      bookings = new ArrayList<>(1);
+    }
+    bookings.add(user);
+  }
+
+  /**
+   * Records that a user removed an itinerary with this travel.
+   *
+   * @param user
+   *          the user who removed the itinerary
+   */
+  public void removeBooking(RegisteredUser user) {
+    if (bookings == null) {
+      return;
+    }
+    for (int i = 0; i < bookings.size(); i++) {
+      if (bookings.get(i) == user) {
+        bookings.remove(i);
+        break;
+      }
+    }
+    if (bookings.isEmpty()) {
+      bookings = null;
+    }
+  }
+
+  /**
+   * Gets the users who booked an itinerary with this travel.
+   *
+   * @return a copy of the users, once for each itinerary they booked
+   */
+  public List<RegisteredUser> getBookings() {
+    if (bookings == null) {
+      return Collections.emptyList();
+    }
+    return new ArrayList<>(bookings);
   }
 
   /**
@@ -267,15 +421,18 @@ public abstract class SingleTravel extends Travel
    */
   public boolean isInvalid() {
     return getEndTime().before(getStartTime()) || getCapacity() < 0
-        || getOrigin().equalsIgnoreCase(getDestination());
+        || getOriginId() == getDestinationId();
   }
 
   @Override
   public void update(SingleTravel other) {
     this.start = other.start;
+    this.startDay = other.startDay;
     this.end = other.end;
     this.origin = other.origin;
     this.destination = other.destination;
+    this.originId = other.originId;
+    this.destinationId = other.destinationId;
     this.cost = other.cost;
     this.capacity = other.capacity;
     this.provider = other.provider;
@@ -286,6 +443,24 @@ public abstract class SingleTravel extends Travel
     return toString(true);
   }
 
+  /**
+   * Provides a custom reading method for de-serializing.
+   *
+   * @param ois
+   *          the stream to read this object
+   * @throws IOException
+   *           if there is an error in reading
+   * @throws ClassNotFoundException
+   *           if a class is not found
+   */
+  private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+    // read all non-transient fields
+    ois.defaultReadObject();
+
+    // the start day depends on the time zone, so it is not saved
+    this.startDay = TimeFormat.toEpochDay(start.getTime());
+  }
+
   /**
    * Formats this travel into a string representation.
    *
@@ -68,6 +68,16 @@ public abstract class Travel implements Serializable {
     return cost;
   }
 
+  /**
+   * Gets the day that the travel departs on, as the amount of days since
+   * 1970-01-01 in the default time zone.
+   *
+   * @return the day of departure
+   */
+  public int getStartDay() {
+    return TimeFormat.toEpochDay(getStartTime().getTime());
+  }
+
   /**
    * Get the travel time (in milliseconds) of the travel.
    *
@@ -131,12 +141,12 @@ public abstract class Travel implements Serializable {
    * @return True if this travel starts in between dateLower and dateUpper
    */
   public boolean startsWithin(Date dateLower, Date dateUpper) {
-    if (getStartTime().after(dateLower) || getStartTime().equals(dateLower)) {
+    long start = getStartTime().getTime();
+    if (start >= dateLower.getTime()) {
       if (dateUpper != null) {
-        return getStartTime().before(dateUpper) || getStartTime().equals(dateUpper);
+        return start <= dateUpper.getTime();
       } else {
-        return TimeFormat.DATE.formatDate(getStartTime())
-            .equals(TimeFormat.DATE.formatDate(dateLower));
+        return getStartDay() == TimeFormat.toEpochDay(dateLower.getTime());
       }
     }
     return false;
@@ -5,6 +5,7 @@ import csc.util.TimeFormat;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -13,38 +14,30 @@ import java.util.List;
 public enum TravelType implements LineParse<SingleTravel> {
   Flight(8) {
     @Override
-    public SingleTravel create(String... args) throws ParseException {
-      // Number,DepartureDateTime,ArrivalDateTime,Airline,Origin,Destination,Price,NumSeats
-      return new Flight(this, args[0], TimeFormat.DATE_TIME.parseString(args[1]),
-          TimeFormat.DATE_TIME.parseString(args[2]), args[4], args[5],
-          Double.parseDouble(args[6]), args[3], Integer.parseInt(args[7]));
+    public SingleTravel newTravel(String id, Date start, Date end, String origin,
+        String destination, double cost, String provider, int capacity) {
+      return new Flight(this, id, start, end, origin, destination, cost, provider, capacity);
     }
   },
   Railroad(8) {
     @Override
-    public SingleTravel create(String... args) throws ParseException {
-      // Number,DepartureDateTime,ArrivalDateTime,Airline,Origin,Destination,Price,NumSeats
-      return new Railroad(this, args[0], TimeFormat.DATE_TIME.parseString(args[1]),
-          TimeFormat.DATE_TIME.parseString(args[2]), args[4], args[5],
-          Double.parseDouble(args[6]), args[3], Integer.parseInt(args[7]));
+    public SingleTravel newTravel(String id, Date start, Date end, String origin,
+        String destination, double cost, String provider, int capacity) {
+      return new Railroad(this, id, start, end, origin, destination, cost, provider, capacity);
     }
   },
   Coach(8) {
     @Override
-    public SingleTravel create(String... args) throws ParseException {
-      // Number,DepartureDateTime,ArrivalDateTime,Airline,Origin,Destination,Price,NumSeats
-      return new Coach(this, args[0], TimeFormat.DATE_TIME.parseString(args[1]),
-          TimeFormat.DATE_TIME.parseString(args[2]), args[4], args[5],
-          Double.parseDouble(args[6]), args[3], Integer.parseInt(args[7]));
+    public SingleTravel newTravel(String id, Date start, Date end, String origin,
+        String destination, double cost, String provider, int capacity) {
+      return new Coach(this, id, start, end, origin, destination, cost, provider, capacity);
     }
   },
   Ferry(8) {
     @Override
-    public SingleTravel create(String... args) throws ParseException {
-      // Number,DepartureDateTime,ArrivalDateTime,Airline,Origin,Destination,Price,NumSeats
-      return new Ferry(this, args[0], TimeFormat.DATE_TIME.parseString(args[1]),
-          TimeFormat.DATE_TIME.parseString(args[2]), args[4], args[5],
-          Double.parseDouble(args[6]), args[3], Integer.parseInt(args[7]));
+    public SingleTravel newTravel(String id, Date start, Date end, String origin,
+        String destination, double cost, String provider, int capacity) {
+      return new Ferry(this, id, start, end, origin, destination, cost, provider, capacity);
     }
   };
 
@@ -63,6 +56,38 @@ public enum TravelType implements LineParse<SingleTravel> {
     this.numArgs = numArgs;
   }
 
+  @Override
+  public SingleTravel create(String... args) throws ParseException {
+    // Number,DepartureDateTime,ArrivalDateTime,Airline,Origin,Destination,Price,NumSeats
+    return newTravel(args[0], TimeFormat.DATE_TIME.parseString(args[1]),
+        TimeFormat.DATE_TIME.parseString(args[2]), args[4], args[5],
+        Double.parseDouble(args[6]), args[3], Integer.parseInt(args[7]));
+  }
+
+  /**
+   * Creates a travel of this type from its fields.
+   *
+   * @param id
+   *          the given travel id
+   * @param start
+   *          the departure date and time
+   * @param end
+   *          the arrival date and time
+   * @param origin
+   *          the given origin
+   * @param destination
+   *          the given destination
+   * @param cost
+   *          the given cost
+   * @param provider
+   *          the given provider
+   * @param capacity
+   *          the given capacity
+   * @return the travel
+   */
+  public abstract SingleTravel newTravel(String id, Date start, Date end, String origin,
+      String destination, double cost, String provider, int capacity);
+
   @Override
   public int getNumArguments() {
     return numArgs;
@@ -10,12 +10,15 @@ import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * An abstract class for registered users (in the database).
  */
 
-public abstract class RegisteredUser extends User implements Updatable<RegisteredUser> {
+public abstract class RegisteredUser extends User
+    implements Updatable<RegisteredUser>, Cloneable {
   /**
    * Serializable implementation.
    */
@@ -114,16 +117,40 @@ public abstract class RegisteredUser extends User implements Updatable<Registere
   }
 
   /**
-   * Books an itinerary for this user.
+   * Books an itinerary for this user, claiming a seat on every travel of it.
+   * Nothing is booked if any travel is full.
    *
    * @param it
    *          the itinerary to book.
+   * @return True if the itinerary was booked; false if a travel was full or it
+   *         was booked already
    */
-  public void bookItinerary(Itinerary it) {
-    if (!hasBooked(it)) {
-      booked.add(it);
-      it.book();
+  public boolean bookItinerary(Itinerary it) {
+    if (hasBooked(it) || !it.book()) {
+      return false;
+    }
+    addBooked(it);
+    return true;
+  }
+
+  /**
+   * Adds an itinerary whose seats were already claimed to the bookings of this
+   * user.
+   *
+   * @param it
+   *          the itinerary, claimed with Itinerary.book
+   * @return True if it was added; false if it was booked already, in which
+   *         case the seats are still claimed
+   */
+  public boolean addBooked(Itinerary it) {
+    if (hasBooked(it)) {
+      return false;
+    }
+    booked.add(it);
+    for (SingleTravel st : it) {
+      st.addBooking(this);
     }
+    return true;
   }
 
   /**
@@ -135,7 +162,7 @@ public abstract class RegisteredUser extends User implements Updatable<Registere
   public void removeItinerary(Itinerary it) {
     if (hasBooked(it)) {
       booked.remove(it);
-      it.unbook();
+      unbook(it);
     }
   }
 
@@ -151,11 +178,64 @@ public abstract class RegisteredUser extends User implements Updatable<Registere
       Itinerary it = itinIterator.next();
       if (it.containsTravel(st)) {
         itinIterator.remove();
-        it.unbook();
+        unbook(it);
+      }
+    }
+  }
+
+  /**
+   * Removes any itineraries with any of several travels, in a single pass over
+   * the itineraries.
+   *
+   * @param travels
+   *          the travels to remove, compared by identity
+   */
+  public void removeTravels(Set<SingleTravel> travels) {
+    Iterator<Itinerary> itinIterator = booked.iterator();
+    while (itinIterator.hasNext()) {
+      Itinerary it = itinIterator.next();
+      if (it.containsAnyTravel(travels)) {
+        itinIterator.remove();
+        unbook(it);
       }
     }
   }
 
+  /**
+   * Frees the seats of an itinerary that this user no longer has booked.
+   *
+   * @param it
+   *          the itinerary that was removed
+   */
+  private void unbook(Itinerary it) {
+    it.unbook();
+    for (SingleTravel st : it) {
+      st.removeBooking(this);
+    }
+  }
+
+  /**
+   * Makes a copy of this user, as it is now. The copy has its own booked
+   * itineraries, made of copies of the travels, so that later changes to the
+   * travels do not change what the copy has booked.
+   *
+   * @param copies
+   *          the copy of each travel, by the travel
+   * @return a copy of this user
+   */
+  public RegisteredUser copy(Map<SingleTravel, SingleTravel> copies) {
+    try {
+      RegisteredUser copy = (RegisteredUser) clone();
+      copy.booked = new ArrayList<>(booked.size());
+      for (Itinerary it : booked) {
+        copy.booked.add(it.copy(copies));
+      }
+      return copy;
+    } catch (CloneNotSupportedException e) {
+      throw new AssertionError(e); // Cloneable is implemented
+    }
+  }
+
   /**
    * Gets the first names of this user.
    *
@@ -241,6 +321,15 @@ public abstract class RegisteredUser extends User implements Updatable<Registere
     return TimeFormat.DATE.formatDate(expiryDate);
   }
 
+  /**
+   * Gets the expiry date of this user.
+   *
+   * @return the expiryDate as a UNIX timestamp
+   */
+  public long getExpiryTime() {
+    return expiryDate.getTime();
+  }
+
   /**
    * Sets the expiry date of this user.
    *
@@ -6,6 +6,7 @@ import csc.util.TimeFormat;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -14,26 +15,23 @@ import java.util.List;
 public enum UserType implements LineParse<RegisteredUser> {
   Guest(Privileges.GUEST_LEVEL, -1), Client(Privileges.CLIENT_LEVEL, 6) {
     @Override
-    public RegisteredUser create(String... args) throws ParseException {
-      // LastName,FirstNames,Email,Address,CreditCardNumber,ExpiryDate
-      return new Client(args[2], this, args[1], args[0], args[3], args[4],
-          TimeFormat.DATE.parseString(args[5]));
+    public RegisteredUser newUser(String email, String firstNames, String lastName,
+        String address, String creditCard, Date expiryDate) {
+      return new Client(email, this, firstNames, lastName, address, creditCard, expiryDate);
     }
   },
   Moderator(Privileges.MOD_LEVEL, 6) {
     @Override
-    public RegisteredUser create(String... args) throws ParseException {
-      // LastName,FirstNames,Email,Address,CreditCardNumber,ExpiryDate
-      return new Moderator(args[2], this, args[1], args[0], args[3], args[4],
-          TimeFormat.DATE.parseString(args[5]));
+    public RegisteredUser newUser(String email, String firstNames, String lastName,
+        String address, String creditCard, Date expiryDate) {
+      return new Moderator(email, this, firstNames, lastName, address, creditCard, expiryDate);
     }
   },
   Administrator(Privileges.ADMIN_LEVEL, 6) {
     @Override
-    public RegisteredUser create(String... args) throws ParseException {
-      // LastName,FirstNames,Email,Address,CreditCardNumber,ExpiryDate
-      return new Administrator(args[2], this, args[1], args[0], args[3], args[4],
-          TimeFormat.DATE.parseString(args[5]));
+    public RegisteredUser newUser(String email, String firstNames, String lastName,
+        String address, String creditCard, Date expiryDate) {
+      return new Administrator(email, this, firstNames, lastName, address, creditCard, expiryDate);
     }
 
   };
@@ -97,6 +95,33 @@ public enum UserType implements LineParse<RegisteredUser> {
 
   @Override
   public RegisteredUser create(String... args) throws ParseException {
+    if (!isUsable()) {
+      throw new UnsupportedOperationException("This type does not support creation.");
+    }
+    // LastName,FirstNames,Email,Address,CreditCardNumber,ExpiryDate
+    return newUser(args[2], args[1], args[0], args[3], args[4],
+        TimeFormat.DATE.parseString(args[5]));
+  }
+
+  /**
+   * Creates a user of this type from their fields.
+   *
+   * @param email
+   *          The email of this user.
+   * @param firstNames
+   *          The first names of this user.
+   * @param lastName
+   *          The last name of this user.
+   * @param address
+   *          The address of this user.
+   * @param creditCard
+   *          The credit card number of this user.
+   * @param expiryDate
+   *          The expiry date of the credit card.
+   * @return the user
+   */
+  public RegisteredUser newUser(String email, String firstNames, String lastName,
+      String address, String creditCard, Date expiryDate) {
     // default -- if not specified
     throw new UnsupportedOperationException("This type does not support creation.");
   }
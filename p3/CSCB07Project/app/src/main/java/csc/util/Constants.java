@@ -25,6 +25,45 @@ public final class Constants {
    */
   public static final long MAX_STOPOVER = 6L * 60L * 60L * 1000L;
 
+  /**
+   * The maximum amount of travels in an itinerary found by interactive
+   * searches.
+   */
+  public static final int SEARCH_MAX_HOPS = 6;
+
+  /**
+   * The maximum amount of itineraries found by interactive searches.
+   */
+  public static final int SEARCH_MAX_RESULTS = 1000;
+
+  /**
+   * The maximum time spent by interactive itinerary searches, in milliseconds.
+   */
+  public static final long SEARCH_TIMEOUT = 2L * 1000L;
+
+  /**
+   * The maximum amount of locations suggested while typing an origin or a
+   * destination.
+   */
+  public static final int COMPLETION_SIZE = 8;
+
+  /**
+   * The maximum amount of search results kept for repeated searches.
+   */
+  public static final int SEARCH_CACHE_SIZE = 32;
+
+  /**
+   * The longest time a search result is kept for repeated searches, in
+   * milliseconds.
+   */
+  public static final long SEARCH_CACHE_TTL = 5L * 60L * 1000L;
+
+  /**
+   * Whether metrics are recorded from the start. They can also be turned on
+   * and off while running.
+   */
+  public static final boolean METRICS_ENABLED = false;
+
   /**
    * Indicates the encoding of files. (UTF-8, US-ASCII, etc.)
    */
@@ -41,6 +80,23 @@ public final class Constants {
    */
   public static final String SAVE_FILE = "passwords.txt";
 
+  /**
+   * The file name to use for the journal of changes since the last save.
+   */
+  public static final String JOURNAL_FILE = "journal.txt";
+
+  /**
+   * Whether saving appends changes to the journal, rather than writing the
+   * whole database every time.
+   */
+  public static final boolean USE_JOURNAL = true;
+
+  /**
+   * The amount of records in the journal before the whole database is saved
+   * again and the journal is emptied.
+   */
+  public static final int JOURNAL_MAX_RECORDS = 512;
+
   /**
    * The name of the directory to read files from.
    */
@@ -57,9 +113,31 @@ public final class Constants {
   public static final String DATABASE_COLUMN = "serialized";
 
   /**
-   * The version of the database.
+   * The version of the database, which selects the format it is saved in.
+   * Version 1 uses Java serialization, and version 2 a compact binary format.
+   * Version 3 uses the compact format encrypted in chunks, so that it can be
+   * read without holding the whole save in memory. Version 4 also keeps the
+   * travels in a memory-mapped catalog file, which is read in place. Saves of
+   * any version can be read.
+   */
+  public static final int DATABASE_VERSION = 4;
+
+  /**
+   * The start of the names of the travel catalog files.
+   */
+  public static final String CATALOG_PREFIX = "catalog-";
+
+  /**
+   * The amount of bytes in each encrypted chunk of a save, which bounds the
+   * memory used to read it.
+   */
+  public static final int SAVE_CHUNK_SIZE = 1 << 16;
+
+  /**
+   * The amount of bytes of an uploaded file parsed by each task of a bulk
+   * import, which is also about the size of each batch added to the database.
    */
-  public static final int DATABASE_VERSION = 1;
+  public static final int IMPORT_CHUNK_SIZE = 1 << 22;
 
   /**
    * The encryption key to use for internally loading and saving data. Must be
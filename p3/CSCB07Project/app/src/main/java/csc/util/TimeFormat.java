@@ -4,27 +4,74 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * A class for formatting dates and times into strings.
+ * A class for formatting dates and times into strings. Safe to use from
+ * several threads.
  */
 public enum TimeFormat {
   DATE("yyyy-MM-dd"), TIME("HH:mm"), DATE_TIME("yyyy-MM-dd HH:mm");
 
   /**
-   * The format to use when parsing times and dates.
+   * The amount of milliseconds in a day.
    */
-  private final SimpleDateFormat format;
+  private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+  /**
+   * The default time zone, kept since TimeZone.getDefault makes a copy of it
+   * on every call. Refreshed by refreshTimeZone.
+   */
+  private static volatile TimeZone zone = TimeZone.getDefault();
+
+  /**
+   * The string to format dates into.
+   */
+  private final String pattern;
+  /**
+   * The format to use when parsing times and dates, one for each thread since
+   * SimpleDateFormat is not thread-safe. Replaced when the time zone changes.
+   */
+  private volatile ThreadLocal<SimpleDateFormat> format;
 
   /**
    * Creates a TimeFormat from the given string.
    *
-   * @param format
+   * @param pattern
    *          the string to format dates into
    */
-  private TimeFormat(String format) {
-    this.format = new SimpleDateFormat(format, Locale.getDefault());
+  private TimeFormat(String pattern) {
+    this.pattern = pattern;
+    this.format = newFormat();
+  }
+
+  /**
+   * Creates the formats of each thread, in the current time zone.
+   *
+   * @return the formats
+   */
+  private ThreadLocal<SimpleDateFormat> newFormat() {
+    return new ThreadLocal<SimpleDateFormat>() {
+      @Override
+      protected SimpleDateFormat initialValue() {
+        SimpleDateFormat ret = new SimpleDateFormat(pattern, Locale.getDefault());
+        ret.setTimeZone(zone);
+        return ret;
+      }
+    };
+  }
+
+  /**
+   * Reads the default time zone again, for when the time zone of the device
+   * changes. Dates formatted or parsed afterwards use the new time zone. The
+   * days that travels are indexed by are not changed; see
+   * MainDatabase.refreshTimeZone.
+   */
+  public static void refreshTimeZone() {
+    zone = TimeZone.getDefault();
+    for (TimeFormat tf : values()) {
+      tf.format = tf.newFormat();
+    }
   }
 
   /**
@@ -35,7 +82,7 @@ public enum TimeFormat {
    * @return a string representation of the Date
    */
   public String formatDate(Date date) {
-    return format.format(date);
+    return format.get().format(date);
   }
 
   /**
@@ -48,7 +95,25 @@ public enum TimeFormat {
    *           if the string is in the wrong format
    */
   public Date parseString(String str) throws ParseException {
-    return format.parse(str);
+    return format.get().parse(str);
+  }
+
+  /**
+   * Gets the day that a UNIX timestamp is on in the default time zone, as the
+   * amount of days since 1970-01-01. Two timestamps are on the same day exactly
+   * when DATE formats them into the same string.
+   *
+   * @param millis
+   *          the timestamp to check
+   * @return the day of the timestamp
+   */
+  public static int toEpochDay(long millis) {
+    long local = millis + zone.getOffset(millis);
+    long day = local / DAY_MILLIS;
+    if (local % DAY_MILLIS < 0) { // round towards negative infinity
+      day--;
+    }
+    return (int) day;
   }
 
   /**
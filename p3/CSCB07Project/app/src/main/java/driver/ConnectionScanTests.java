@@ -0,0 +1,236 @@
+package driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import csc.database.MainDatabase;
+import csc.database.SearchLimits;
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.travel.TravelType;
+import csc.util.TimeFormat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Compares the timetable scans, searchFastestItinerary and
+ * searchParetoItineraries, with the exhaustive itinerary search on random
+ * networks.
+ */
+public class ConnectionScanTests {
+
+  public static final int TIMEOUT = 60000;
+
+  private static final String[] CITIES = { "A", "B", "C", "D", "E", "F", "G", "H" };
+  private static final int DAYS = 3;
+  private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+  private static final SearchLimits[] LIMITS = { SearchLimits.UNBOUNDED,
+      new SearchLimits(2, 1000, 0, false) };
+
+  @Test(timeout = TIMEOUT)
+  public void testFastestMatchesExhaustiveSearch() throws Exception {
+    for (long seed = 1; seed <= 6; seed++) {
+      MainDatabase md = randomDatabase(seed);
+      for (Date date : dates()) {
+        for (String origin : CITIES) {
+          for (String destination : CITIES) {
+            if (origin.equals(destination)) {
+              continue;
+            }
+            for (SearchLimits limits : LIMITS) {
+              List<Itinerary> all = md.searchItineraries(date, origin, destination, null,
+                  limits);
+              Itinerary expected = earliest(all);
+              Itinerary found = md.searchFastestItinerary(date, origin, destination, limits);
+              String msg = "Fastest itinerary from " + origin + " to " + destination + " on "
+                  + TimeFormat.DATE.formatDate(date) + " with seed " + seed;
+              assertEquals(msg, expected == null ? null : label(expected),
+                  found == null ? null : label(found));
+              if (found != null) {
+                assertTrue(msg + " is not a valid itinerary", contains(all, found));
+                assertNoRevisit(msg, found);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testParetoMatchesExhaustiveSearch() throws Exception {
+    for (long seed = 1; seed <= 6; seed++) {
+      MainDatabase md = randomDatabase(seed);
+      for (Date date : dates()) {
+        for (String origin : CITIES) {
+          for (String destination : CITIES) {
+            if (origin.equals(destination)) {
+              continue;
+            }
+            for (SearchLimits limits : LIMITS) {
+              List<Itinerary> all = md.searchItineraries(date, origin, destination, null,
+                  limits);
+              List<Itinerary> found = md.searchParetoItineraries(date, origin, destination,
+                  limits);
+              String msg = "Pareto itineraries from " + origin + " to " + destination + " on "
+                  + TimeFormat.DATE.formatDate(date) + " with seed " + seed;
+              assertEquals(msg, paretoLabels(all), labels(found));
+              assertEquals(msg + " has duplicate labels", found.size(), labels(found).size());
+              for (Itinerary it : found) {
+                assertTrue(msg + " has an invalid itinerary " + it, contains(all, it));
+                assertNoRevisit(msg, it);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testCheaperPathDoesNotHideOneVisitingOtherLocations() throws Exception {
+    // O-N-X is cheaper and later than O-M-X, but only O-M-X can go on to N
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "06:00", "07:00", "O", "M", "50.00"));
+    md.addTravel(flight("2", "08:00", "10:00", "M", "X", "50.00"));
+    md.addTravel(flight("3", "06:00", "07:00", "O", "N", "25.00"));
+    md.addTravel(flight("4", "09:00", "11:00", "N", "X", "25.00"));
+    md.addTravel(flight("5", "13:00", "14:00", "X", "N", "10.00"));
+    md.addTravel(flight("6", "15:00", "16:00", "N", "D", "10.00"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    SearchLimits limits = SearchLimits.UNBOUNDED;
+    List<Itinerary> all = md.searchItineraries(date, "O", "D", null, limits);
+    assertEquals(1, all.size());
+    Itinerary found = md.searchFastestItinerary(date, "O", "D", limits);
+    assertTrue("The fastest itinerary was not found", found != null);
+    assertEquals(label(all.get(0)), label(found));
+    assertEquals(labels(all), labels(md.searchParetoItineraries(date, "O", "D", limits)));
+  }
+
+  /**
+   * Creates a database of 300 random travels between 8 cities over 3 days,
+   * some of them full.
+   */
+  private static MainDatabase randomDatabase(long seed) throws Exception {
+    Random r = new Random(seed);
+    MainDatabase md = new MainDatabase();
+    long base = dates().get(0).getTime();
+    for (int i = 0; i < 300; i++) {
+      String origin = CITIES[r.nextInt(CITIES.length)];
+      String destination = CITIES[r.nextInt(CITIES.length)];
+      if (origin.equals(destination)) {
+        continue;
+      }
+      long start = base + r.nextInt(DAYS * 24 * 60) * 60000L;
+      long end = start + (30 + r.nextInt(300)) * 60000L;
+      TravelType type = TravelType.values()[r.nextInt(TravelType.values().length)];
+      md.addTravel(type.create(String.valueOf(i),
+          TimeFormat.DATE_TIME.formatDate(new Date(start)),
+          TimeFormat.DATE_TIME.formatDate(new Date(end)), "P", origin, destination,
+          (10 + r.nextInt(500)) + ".00", String.valueOf(r.nextInt(3))));
+    }
+    return md;
+  }
+
+  private static SingleTravel flight(String id, String start, String end, String origin,
+      String destination, String cost) throws Exception {
+    return TravelType.Flight.create(id, "2016-10-01 " + start, "2016-10-01 " + end, "P",
+        origin, destination, cost, "5");
+  }
+
+  private static List<Date> dates() throws Exception {
+    List<Date> dates = new ArrayList<>();
+    long base = TimeFormat.DATE.parseString("2016-09-30").getTime();
+    for (int day = 0; day < DAYS; day++) {
+      dates.add(new Date(base + day * DAY_MILLIS));
+    }
+    return dates;
+  }
+
+  /**
+   * Gets what the scans compare itineraries by: arrival, cost and travels.
+   */
+  private static String label(Itinerary it) {
+    return it.getEndTime().getTime() + "/" + Math.round(it.getCost() * 100) + "/" + it.size();
+  }
+
+  private static Set<String> labels(List<Itinerary> itineraries) {
+    Set<String> labels = new TreeSet<>();
+    for (Itinerary it : itineraries) {
+      labels.add(label(it));
+    }
+    return labels;
+  }
+
+  /**
+   * Gets the itinerary arriving the earliest, then the cheapest, then with the
+   * fewest travels.
+   */
+  private static Itinerary earliest(List<Itinerary> itineraries) {
+    Itinerary best = null;
+    for (Itinerary it : itineraries) {
+      if (best == null || it.getEndTime().before(best.getEndTime())
+          || (it.getEndTime().equals(best.getEndTime()) && (it.getCost() < best.getCost()
+              || (it.getCost() == best.getCost() && it.size() < best.size())))) {
+        best = it;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Gets the labels of the itineraries that no other one arrives no later
+   * than, costs no more than and has no more travels than.
+   */
+  private static Set<String> paretoLabels(List<Itinerary> itineraries) {
+    Set<String> labels = new TreeSet<>();
+    for (Itinerary it : itineraries) {
+      boolean dominated = false;
+      for (Itinerary other : itineraries) {
+        boolean noWorse = !other.getEndTime().after(it.getEndTime())
+            && other.getCost() <= it.getCost() && other.size() <= it.size();
+        boolean better = other.getEndTime().before(it.getEndTime())
+            || other.getCost() < it.getCost() || other.size() < it.size();
+        if (noWorse && better) {
+          dominated = true;
+          break;
+        }
+      }
+      if (!dominated) {
+        labels.add(label(it));
+      }
+    }
+    return labels;
+  }
+
+  private static boolean contains(List<Itinerary> itineraries, Itinerary it) {
+    for (Itinerary other : itineraries) {
+      if (other.toString().equals(it.toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks that an itinerary never returns to a location it was at.
+   */
+  private static void assertNoRevisit(String msg, Itinerary it) {
+    Set<String> visited = new HashSet<>();
+    for (SingleTravel st : it) {
+      assertTrue(msg + " revisits " + st.getOrigin(),
+          visited.add(st.getOrigin().toLowerCase()));
+    }
+    assertFalse(msg + " revisits " + it.getDestination(),
+        visited.contains(it.getDestination().toLowerCase()));
+  }
+}
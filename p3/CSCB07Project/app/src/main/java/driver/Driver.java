@@ -1,5 +1,6 @@
 package driver;
 
+import csc.io.BulkImport;
 import csc.io.InputOperations;
 import csc.travel.Travel;
 import csc.travel.TravelComparator;
@@ -8,6 +9,7 @@ import csc.users.RegisteredUser;
 import csc.users.UserType;
 import csc.util.TimeFormat;
 
+import java.io.File;
 import java.text.ParseException;
 import java.util.Comparator;
 import java.util.logging.Level;
@@ -30,8 +32,8 @@ public class Driver {
    *          ExpiryDate is stored in the format YYYY-MM-DD)
    */
   public static void uploadClientInfo(String path) {
-    // parse the data into a collection, then add it to the users
-    TestDatabase.getDatabase().addUsers(InputOperations.parseData(path, UserType.Client));
+    // parse the data in batches, adding each to the users
+    BulkImport.importUsers(new File(path), UserType.Client, TestDatabase.getDatabase());
   }
 
   /**
@@ -46,8 +48,8 @@ public class Driver {
    *          price has exactly two decimal places)
    */
   public static void uploadFlightInfo(String path) {
-    // parse the data into a collection, then add it to the travels
-    TestDatabase.getDatabase().addTravels(InputOperations.parseData(path, TravelType.Flight));
+    // parse the data in batches, adding each to the travels
+    BulkImport.importTravels(new File(path), TravelType.Flight, TestDatabase.getDatabase());
   }
 
   /**
@@ -0,0 +1,229 @@
+package driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import csc.database.ItineraryList;
+import csc.database.MainDatabase;
+import csc.database.SearchLimits;
+import csc.travel.Itinerary;
+import csc.travel.SingleTravel;
+import csc.travel.Travel;
+import csc.travel.TravelComparator;
+import csc.travel.TravelType;
+import csc.users.RegisteredUser;
+import csc.users.UserType;
+import csc.util.TimeFormat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Tests the itinerary searches against each other, the cache of their results,
+ * and booking.
+ */
+public class SearchTests {
+
+  public static final int TIMEOUT = 60000;
+
+  private static final String[] CITIES = { "Aa", "Bb", "Cc", "Dd", "Ee", "Ff" };
+
+  @Test(timeout = TIMEOUT)
+  public void testSearchesAgreeWhenUnbounded() throws Exception {
+    MainDatabase md = randomDatabase(new Random(4), 400);
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    for (String origin : CITIES) {
+      for (String destination : CITIES) {
+        if (origin.equals(destination)) {
+          continue;
+        }
+        String msg = "Itineraries from " + origin + " to " + destination;
+        List<Itinerary> sequential = md.searchItineraries(date, origin, destination, null,
+            SearchLimits.UNBOUNDED);
+        List<Itinerary> parallel = md.searchItinerariesParallel(date, origin, destination,
+            null, SearchLimits.UNBOUNDED);
+        assertEquals(msg, sorted(sequential), sorted(parallel));
+
+        for (TravelComparator order : TravelComparator.values()) {
+          List<Itinerary> all = new ArrayList<>(sequential);
+          Collections.sort(all, order);
+          int count = Math.min(5, all.size());
+          List<Itinerary> top = md.searchTopItineraries(date, origin, destination, order,
+              new SearchLimits(Integer.MAX_VALUE, 5, 0, false));
+          assertEquals(msg + " by " + order, count, top.size());
+          for (int i = 0; i < count; i++) { // ties may come in any order
+            assertEquals(msg + " by " + order, 0, order.compare(all.get(i), top.get(i)));
+            assertTrue(msg + " by " + order, sequential.contains(top.get(i)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testSearchFillingItsLimitIsNotTruncated() throws Exception {
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Cc", "10.00", "5"));
+    md.addTravel(flight("2", "05:00", "06:00", "Aa", "Bb", "10.00", "5"));
+    md.addTravel(flight("3", "07:00", "08:00", "Bb", "Cc", "10.00", "5"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    SearchLimits two = new SearchLimits(Integer.MAX_VALUE, 2, 0, false);
+    SearchLimits one = new SearchLimits(Integer.MAX_VALUE, 1, 0, false);
+
+    ItineraryList all = md.searchItineraries(date, "Aa", "Cc", null, two);
+    assertEquals(2, all.size());
+    assertFalse("A search that found every itinerary was truncated", all.isTruncated());
+    assertFalse(md.searchItinerariesParallel(date, "Aa", "Cc", null, two).isTruncated());
+    ItineraryList first = md.searchItineraries(date, "Aa", "Cc", null, one);
+    assertEquals(1, first.size());
+    assertTrue("A search that left an itinerary out was not truncated",
+        first.isTruncated());
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testCachedSearchSeesChangedTravel() throws Exception {
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "10.00", "5"));
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "10.00", "5"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    assertEquals(20.0, md.searchItineraries(date, "Aa", "Cc").get(0).getCost(), 0.001);
+    assertEquals(20.0, md.searchItineraries(date, "Aa", "Cc").get(0).getCost(), 0.001);
+    assertTrue("The second search was not cached", md.getSearchCacheHits() > 0);
+
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "30.00", "5"));
+    assertEquals(40.0, md.searchItineraries(date, "Aa", "Cc").get(0).getCost(), 0.001);
+    md.removeTravel(TravelType.Flight, "2");
+    assertTrue(md.searchItineraries(date, "Aa", "Cc").isEmpty());
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testCachedSearchSeesChangedSeats() throws Exception {
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "10.00", "1"));
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "10.00", "5"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    RegisteredUser ru = client(md, "u@x.com");
+    List<Itinerary> found = md.searchItineraries(date, "Aa", "Cc");
+    assertEquals(1, md.searchItineraries(date, "Aa", "Cc").size());
+    assertEquals(1, md.searchTopItineraries(date, "Aa", "Cc", TravelComparator.Total_Cost, 1)
+        .size());
+
+    assertTrue(md.bookItinerary(ru, found.get(0)));
+    assertTrue("A full travel was still searched",
+        md.searchItineraries(date, "Aa", "Cc").isEmpty());
+    assertTrue("A full travel was still searched",
+        md.searchTopItineraries(date, "Aa", "Cc", TravelComparator.Total_Cost, 1).isEmpty());
+
+    md.removeItinerary(ru, found.get(0));
+    assertEquals(1, md.searchItineraries(date, "Aa", "Cc").size());
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testTravelsMoveDayWithTimeZone() throws Exception {
+    TimeZone saved = TimeZone.getDefault();
+    try {
+      TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+      MainDatabase md = new MainDatabase();
+      md.refreshTimeZone();
+      md.addTravel(flight("1", "23:30", "23:50", "Aa", "Bb", "10.00", "5"));
+      Date first = TimeFormat.DATE.parseString("2016-10-01");
+      assertEquals(1, md.searchTravels(first, "Aa", "Bb", TravelType.Flight, null).size());
+
+      // 23:30 UTC is 01:30 the next day two hours east
+      TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+      md.refreshTimeZone();
+      assertTrue("A cached search used the old time zone",
+          md.searchTravels(first, "Aa", "Bb", TravelType.Flight, null).isEmpty());
+      Date second = TimeFormat.DATE.parseString("2016-10-02");
+      assertEquals(1, md.searchTravels(second, "Aa", "Bb", TravelType.Flight, null).size());
+    } finally {
+      TimeZone.setDefault(saved);
+      TimeFormat.refreshTimeZone();
+    }
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testBookingRollsBackWhenTravelIsFull() throws Exception {
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "10.00", "2"));
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "10.00", "1"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    Itinerary it = md.searchItineraries(date, "Aa", "Cc").get(0);
+    RegisteredUser first = client(md, "u@x.com");
+    RegisteredUser second = client(md, "v@x.com");
+    assertTrue(md.bookItinerary(first, it));
+
+    Itinerary again = new Itinerary(md.getTravel(TravelType.Flight, "1"));
+    again.add(md.getTravel(TravelType.Flight, "2"));
+    assertFalse("The full travel was booked", md.bookItinerary(second, again));
+    assertEquals("The seat of the first travel was not given back", 1,
+        md.getTravel(TravelType.Flight, "1").getAvailableCapacity());
+    assertEquals(0, md.getTravel(TravelType.Flight, "2").getAvailableCapacity());
+    assertTrue(second.getBookedItineraries().isEmpty());
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testBookingRollsBackWhenTravelIsRemoved() throws Exception {
+    MainDatabase md = new MainDatabase();
+    md.addTravel(flight("1", "05:00", "06:00", "Aa", "Bb", "10.00", "2"));
+    md.addTravel(flight("2", "07:00", "08:00", "Bb", "Cc", "10.00", "2"));
+    Date date = TimeFormat.DATE.parseString("2016-10-01");
+    Itinerary it = md.searchItineraries(date, "Aa", "Cc").get(0);
+    SingleTravel first = md.getTravel(TravelType.Flight, "1");
+    SingleTravel second = md.getTravel(TravelType.Flight, "2");
+    md.removeTravel(TravelType.Flight, "2");
+
+    RegisteredUser ru = client(md, "u@x.com");
+    assertFalse("A removed travel was booked", md.bookItinerary(ru, it));
+    assertEquals(2, first.getAvailableCapacity());
+    assertEquals(2, second.getAvailableCapacity());
+    assertTrue(ru.getBookedItineraries().isEmpty());
+  }
+
+  private static MainDatabase randomDatabase(Random r, int count) throws Exception {
+    MainDatabase md = new MainDatabase();
+    for (int i = 0; i < count; i++) {
+      String origin = CITIES[r.nextInt(CITIES.length)];
+      String destination = CITIES[r.nextInt(CITIES.length)];
+      if (origin.equals(destination)) {
+        continue;
+      }
+      int hour = r.nextInt(40);
+      TravelType type = TravelType.values()[r.nextInt(TravelType.values().length)];
+      md.addTravel(type.create(String.valueOf(i),
+          String.format("2016-10-0%d %02d:00", 1 + hour / 20, hour % 20),
+          String.format("2016-10-0%d %02d:30", 1 + hour / 20, hour % 20 + 2),
+          "P" + r.nextInt(3), origin, destination, (10 + r.nextInt(90)) + ".00",
+          String.valueOf(1 + r.nextInt(3))));
+    }
+    return md;
+  }
+
+  private static SingleTravel flight(String id, String start, String end, String origin,
+      String destination, String cost, String seats) throws Exception {
+    return TravelType.Flight.create(id, "2016-10-01 " + start, "2016-10-01 " + end, "P",
+        origin, destination, cost, seats);
+  }
+
+  private static RegisteredUser client(MainDatabase md, String email) throws Exception {
+    md.addUser(UserType.Client.create("Last", "First", email, "Address", "1234",
+        "2020-01-01"));
+    return md.getUser(email);
+  }
+
+  private static List<String> sorted(List<? extends Travel> travels) {
+    List<String> ret = new ArrayList<>();
+    for (Travel travel : travels) {
+      ret.add(travel.toString());
+    }
+    Collections.sort(ret);
+    return ret;
+  }
+}